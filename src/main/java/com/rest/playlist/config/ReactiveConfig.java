@@ -0,0 +1,26 @@
+package com.rest.playlist.config;
+
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.service.ReactiveSongService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * ReactiveConfig class creates the ReactiveSongService of the reactive API, started with
+ * spring.main.web-application-type=reactive : the service calls run on playlist.reactive.blocking-threads threads,
+ * with at most playlist.reactive.max-queued calls waiting per thread.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReactiveSongService reactiveSongService(ISongService songService,
+                                                   @Value("${playlist.reactive.blocking-threads:50}") int blockingThreads,
+                                                   @Value("${playlist.reactive.max-queued:100000}") int maxQueued) {
+        return new ReactiveSongService(songService, Schedulers.newBoundedElastic(blockingThreads, maxQueued, "song-blocking"));
+    }
+}
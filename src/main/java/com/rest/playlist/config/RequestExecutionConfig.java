@@ -0,0 +1,60 @@
+package com.rest.playlist.config;
+
+import com.rest.playlist.web.resource.CompletedFutureReturnValueHandler;
+import com.rest.playlist.web.resource.SongRequestExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RequestExecutionConfig class creates the SongRequestExecutor of the SongResource endpoints :
+ * blocking (default), or async when playlist.async.enabled is true, with at most playlist.async.max-concurrency
+ * requests running and playlist.async.max-queued requests waiting. The futures of the blocking executor are
+ * completed when the endpoints return them : CompletedFutureReturnValueHandler writes their value right away, so the
+ * blocking mode handles the request synchronously, without Spring MVC async processing.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RequestExecutionConfig {
+
+    @Bean(destroyMethod = "close")
+    public SongRequestExecutor songRequestExecutor(@Value("${playlist.async.enabled:false}") boolean enabled,
+                                                   @Value("${playlist.async.max-concurrency:200}") int maxConcurrency,
+                                                   @Value("${playlist.async.max-queued:1000}") int maxQueued,
+                                                   @Value("${playlist.async.virtual-threads:true}") boolean virtualThreads) {
+        if (!enabled) {
+            return SongRequestExecutor.blocking();
+        }
+        return SongRequestExecutor.async(maxConcurrency, maxQueued, virtualThreads);
+    }
+
+    /**
+     * Puts CompletedFutureReturnValueHandler before the default handlers, which start async processing for every
+     * CompletableFuture. Only in the blocking mode : an async request always gets the async processing, even when
+     * its work completed before the endpoint returned.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "playlist.async.enabled", havingValue = "false", matchIfMissing = true)
+    public static BeanPostProcessor completedFutureReturnValueHandler() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof RequestMappingHandlerAdapter) {
+                    RequestMappingHandlerAdapter adapter = (RequestMappingHandlerAdapter) bean;
+                    List<HandlerMethodReturnValueHandler> handlers = new ArrayList<>(adapter.getReturnValueHandlers());
+                    handlers.add(0, new CompletedFutureReturnValueHandler(adapter.getReturnValueHandlers()));
+                    adapter.setReturnValueHandlers(handlers);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.rest.playlist.config;
+
+import com.rest.playlist.repository.JdbcSongRepository;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.repository.SongStorage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * StorageConfig class creates the SongRepository selected by playlist.repository.type :
+ * memory (default), a SongCatalog backed by a SongStorage in playlist.storage.directory when
+ * playlist.storage.enabled is true (the directory has no default), or jdbc, a JdbcSongRepository
+ * on the spring.datasource database.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "playlist.repository.type", havingValue = "memory", matchIfMissing = true)
+    public SongCatalog songCatalog(@Value("${playlist.storage.enabled:false}") boolean enabled,
+                                   @Value("${playlist.storage.directory:}") String directory,
+                                   @Value("${playlist.storage.fsync:group}") SongStorage.FsyncMode fsyncMode,
+                                   @Value("${playlist.storage.snapshot-every:100000}") long snapshotEvery,
+                                   @Value("${playlist.storage.hydration-wait:30s}") Duration hydrationWait) throws IOException {
+        if (!enabled) {
+            return new SongCatalog();
+        }
+        if (directory.trim().isEmpty()) {
+            throw new IllegalStateException("playlist.storage.directory must be set when playlist.storage.enabled is true");
+        }
+        return new SongCatalog(new SongStorage(Paths.get(directory), fsyncMode, snapshotEvery), hydrationWait);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "playlist.repository.type", havingValue = "jdbc")
+    public JdbcSongRepository jdbcSongRepository(DataSource dataSource,
+                                                 @Value("${playlist.repository.jdbc.batch-size:500}") int batchSize) {
+        return new JdbcSongRepository(dataSource, batchSize);
+    }
+}
@@ -0,0 +1,54 @@
+package com.rest.playlist.config;
+
+import com.rest.playlist.trace.OtlpFileSpanExporter;
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.SpanExporter;
+import com.rest.playlist.web.resource.SongTraceFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * TracingConfig class traces playlist.trace.sample-rate of the /api/songs requests (0 : none, the default, 1 : all)
+ * and appends their spans to playlist.trace.file as OTLP/JSON lines, at most playlist.trace.max-queued traces
+ * waiting to be written. The file has no default, it must be an absolute path when tracing is on, and is rotated
+ * at playlist.trace.max-file-size. The reactive API is not traced.
+ */
+@Configuration
+public class TracingConfig {
+
+    /**
+     * Closed with the context, which stops the tracing.
+     */
+    @Bean
+    public SpanExporter spanExporter(@Value("${playlist.trace.sample-rate:0}") double sampleRate,
+                                     @Value("${playlist.trace.file:}") String file,
+                                     @Value("${playlist.trace.max-file-size:100MB}") DataSize maxFileSize,
+                                     @Value("${playlist.trace.max-queued:1000}") int maxQueued,
+                                     @Value("${spring.application.name:playlist}") String serviceName) {
+        SpanExporter exporter = SpanExporter.NONE;
+        if (sampleRate > 0) {
+            Path path = Paths.get(file.trim());
+            if (!path.isAbsolute()) {
+                throw new IllegalStateException("playlist.trace.file must be an absolute path when playlist.trace.sample-rate is above 0");
+            }
+            exporter = new OtlpFileSpanExporter(path, maxFileSize.toBytes(), serviceName, maxQueued);
+        }
+        SongTracer.configure(sampleRate, exporter);
+        return exporter;
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<SongTraceFilter> songTraceFilter() {
+        FilterRegistrationBean<SongTraceFilter> registration = new FilterRegistrationBean<>(new SongTraceFilter());
+        registration.addUrlPatterns("/api/songs", "/api/songs/*");
+        return registration;
+    }
+}
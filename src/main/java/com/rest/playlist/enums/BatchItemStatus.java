@@ -0,0 +1,10 @@
+package com.rest.playlist.enums;
+
+public enum BatchItemStatus {
+    CREATED,
+    UPDATED,
+    DELETED,
+    INVALID,
+    CONFLICT,
+    NOT_FOUND
+}
@@ -0,0 +1,8 @@
+package com.rest.playlist.enums;
+
+public enum SongChangeType {
+    CREATED,
+    UPDATED,
+    DELETED,
+    RESET
+}
@@ -1,45 +1,60 @@
 package com.rest.playlist.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.rest.playlist.enums.SongCategory;
 import lombok.*;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
-import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Song class is an immutable value : a change is a new Song (toBuilder) that the repository swaps in,
+ * so a song being read or serialized never changes underneath.
+ */
 @Getter
-@Setter
 public class Song {
 
-    private static final AtomicInteger count = new AtomicInteger(0);
-
-    private int id;
+    /**
+     * 0 until the song is created : the repository gives it its id.
+     */
+    private final int id;
 
     @NotBlank(message = "titre ne doit pas être null ou vide")
     @Size(min = 3, max = 50, message = "titre doit être compris entre 3 et 50 caractères")
-    private String title;
+    private final String title;
 
     @NotBlank(message = "description ne doit pas être nulle ou vide")
     @Size(min = 3, max = 50, message = "description doit être compris entre 3 et 50 caractères")
-    private String description;
+    private final String description;
 
     @NotNull(message = "categorie<JAZZ, POP, CLASSICAL> ne doit pas être nulle")
-    private SongCategory category;
+    private final SongCategory category;
 
     @NotBlank(message = "duration ne doit pas être nulle ou vide")
-    private String duration;
+    @Size(max = 32, message = "duration ne doit pas dépasser 32 caractères")
+    private final String duration;
 
     @NotBlank(message = "artistname ne doit pas être null ou vide")
-    private String artistName;
-
-    @Builder
-    private Song(String title, String description, SongCategory category, String duration, String artistName) {
-        this.id = count.incrementAndGet();
+    @Size(max = 255, message = "artistname ne doit pas dépasser 255 caractères")
+    private final String artistName;
+
+    /**
+     * Incremented by the repository each time the song is saved, 1 once created. Read only for clients,
+     * it is also the song ETag.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final long version;
+
+    @Builder(toBuilder = true)
+    private Song(int id, String title, String description, SongCategory category, String duration, String artistName,
+                 long version) {
+        this.id = id;
         this.title = title;
         this.description = description;
         this.category = category;
         this.duration = duration;
         this.artistName = artistName;
+        this.version = version;
     }
 }
@@ -0,0 +1,28 @@
+package com.rest.playlist.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.rest.playlist.enums.BatchItemStatus;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * SongBatchResult class is the outcome of one item of a batch request,
+ * index is the position of the item in the request body.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SongBatchResult {
+
+    private int index;
+    private Integer id;
+    private BatchItemStatus status;
+    private String message;
+
+    @Builder
+    private SongBatchResult(int index, Integer id, BatchItemStatus status, String message) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+}
@@ -0,0 +1,20 @@
+package com.rest.playlist.model;
+
+import lombok.Getter;
+
+/**
+ * SongChange class is the outcome of a save : the song it replaced (null when inserted)
+ * and the song now stored, a copy of the saved song carrying its new version.
+ * A deletion is a SongChange without song after.
+ */
+@Getter
+public class SongChange {
+
+    private final Song before;
+    private final Song after;
+
+    public SongChange(Song before, Song after) {
+        this.before = before;
+        this.after = after;
+    }
+}
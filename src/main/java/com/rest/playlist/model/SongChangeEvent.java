@@ -0,0 +1,24 @@
+package com.rest.playlist.model;
+
+import com.rest.playlist.enums.SongChangeType;
+import lombok.Getter;
+
+/**
+ * SongChangeEvent class is an event of the change feed (GET /api/songs/changes) :
+ * a song created, updated or deleted (the song as it was deleted), or a RESET without song
+ * telling the client to reload the songs before applying the events that follow.
+ * id is the Last-Event-ID a client sends to resume the feed after this event.
+ */
+@Getter
+public class SongChangeEvent {
+
+    private final String id;
+    private final SongChangeType type;
+    private final Song song;
+
+    public SongChangeEvent(String id, SongChangeType type, Song song) {
+        this.id = id;
+        this.type = type;
+        this.song = song;
+    }
+}
@@ -0,0 +1,38 @@
+package com.rest.playlist.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * SongDelta class is the answer to GET /api/songs/delta : the songs saved and the ids of the songs deleted
+ * after a catalog revision, in revision order.
+ * revision is the value to send as "since" on the next call, more tells whether changes were left out by the limit.
+ * When reset is true the deletions since the requested revision are not known any more :
+ * the client drops the songs it holds, then applies this delta and the following ones. A reset lists every song
+ * in id order : while more is true, nextCursor is the value to send as "after" along with revision as "since".
+ */
+@Getter
+public class SongDelta {
+
+    private long revision;
+    private boolean reset;
+    private boolean more;
+    private List<Song> songs;
+    private List<Integer> deletedIds;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer nextCursor;
+
+    @Builder
+    private SongDelta(long revision, boolean reset, boolean more, List<Song> songs, List<Integer> deletedIds,
+                      Integer nextCursor) {
+        this.revision = revision;
+        this.reset = reset;
+        this.more = more;
+        this.songs = songs;
+        this.deletedIds = deletedIds;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,23 @@
+package com.rest.playlist.model;
+
+import com.rest.playlist.enums.BatchItemStatus;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * SongImportRejection class is a rejected row of an import, line is its line number in the imported file.
+ */
+@Getter
+public class SongImportRejection {
+
+    private long line;
+    private BatchItemStatus status;
+    private String message;
+
+    @Builder
+    private SongImportRejection(long line, BatchItemStatus status, String message) {
+        this.line = line;
+        this.status = status;
+        this.message = message;
+    }
+}
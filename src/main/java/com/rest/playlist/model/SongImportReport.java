@@ -0,0 +1,30 @@
+package com.rest.playlist.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * SongImportReport class sums up an import :
+ * rows read, songs created, rows rejected and the first rejected rows with their reason
+ * (rejectionsTruncated tells that more rows were rejected than listed).
+ */
+@Getter
+public class SongImportReport {
+
+    private long rowsRead;
+    private long created;
+    private long rejected;
+    private List<SongImportRejection> rejections;
+    private boolean rejectionsTruncated;
+
+    @Builder
+    private SongImportReport(long rowsRead, long created, long rejected, List<SongImportRejection> rejections, boolean rejectionsTruncated) {
+        this.rowsRead = rowsRead;
+        this.created = created;
+        this.rejected = rejected;
+        this.rejections = rejections;
+        this.rejectionsTruncated = rejectionsTruncated;
+    }
+}
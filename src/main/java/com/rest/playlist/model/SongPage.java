@@ -0,0 +1,23 @@
+package com.rest.playlist.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * SongPage class is one slice of a song list,
+ * nextCursor is the value to send as "after" to get the following slice (null on the last one).
+ */
+@Getter
+public class SongPage {
+
+    private List<Song> songs;
+    private Integer nextCursor;
+
+    @Builder
+    private SongPage(List<Song> songs, Integer nextCursor) {
+        this.songs = songs;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,39 @@
+package com.rest.playlist.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * SongPageRequest class holds the optional paging parameters of the song list endpoints :
+ * page and size for offset paging, after (the opaque cursor returned by a previous page) for keyset paging,
+ * and direction (asc or desc) for the id order.
+ * Without any of them the whole list is returned as before.
+ */
+@Getter
+@Setter
+public class SongPageRequest {
+
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 1000;
+
+    private Integer page;
+    private Integer size;
+    private Integer after;
+    private String direction;
+
+    public boolean isUnpaged() {
+        return page == null && size == null && after == null && direction == null;
+    }
+
+    public int pageSize() {
+        return size == null ? DEFAULT_SIZE : size;
+    }
+
+    public long offset() {
+        return page == null ? 0 : (long) page * pageSize();
+    }
+
+    public boolean isDescending() {
+        return "desc".equalsIgnoreCase(direction);
+    }
+}
@@ -0,0 +1,136 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.trace.SongTracer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * ArtistNameIndex class is a trigram inverted index over Song.artistName.
+ * A case-insensitive substring query is answered by intersecting the posting lists
+ * of the query trigrams, then only the remaining candidate artist names are verified.
+ * Postings reference distinct artist names, not songs, so an artist with many songs is checked once.
+ * Reads are lock-free; add and remove are called under the SongCatalog write lock.
+ */
+final class ArtistNameIndex {
+
+    private static final int GRAM = 3;
+
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> songIdsByArtist = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<String>> artistsByTrigram = new ConcurrentHashMap<>();
+
+    // normalized artist name each song was indexed under, only touched by the writer
+    private final Map<Integer, String> artistById = new HashMap<>();
+
+    void add(int id, String artistName) {
+        String artist = normalize(artistName);
+        artistById.put(id, artist);
+        ConcurrentSkipListSet<Integer> ids = songIdsByArtist.get(artist);
+        if (ids == null) {
+            ids = new ConcurrentSkipListSet<>();
+            ids.add(id);
+            songIdsByArtist.put(artist, ids);
+            for (long trigram : trigrams(artist)) {
+                artistsByTrigram.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(artist);
+            }
+        } else {
+            ids.add(id);
+        }
+    }
+
+    void remove(int id) {
+        String artist = artistById.remove(id);
+        if (artist == null) {
+            return;
+        }
+        ConcurrentSkipListSet<Integer> ids = songIdsByArtist.get(artist);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            songIdsByArtist.remove(artist);
+            for (long trigram : trigrams(artist)) {
+                Set<String> artists = artistsByTrigram.get(trigram);
+                artists.remove(artist);
+                if (artists.isEmpty()) {
+                    artistsByTrigram.remove(trigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return ids of the songs whose artist name contains the query (ignoring case), in ascending order
+     */
+    List<Integer> find(String query) {
+        String searched = normalize(query);
+        List<Integer> ids = new ArrayList<>();
+        int artists = 0;
+        Collection<String> candidates = candidates(searched);
+        for (String artist : candidates) {
+            if (artist.contains(searched)) {
+                Set<Integer> songIds = songIdsByArtist.get(artist);
+                if (songIds != null) {
+                    ids.addAll(songIds);
+                    artists++;
+                }
+            }
+        }
+        if (artists > 1) {
+            Collections.sort(ids);
+        }
+        SongTracer.count("artist.candidates", candidates.size());
+        SongTracer.count("artist.matches", artists);
+        SongTracer.count("songs", ids.size());
+        return ids;
+    }
+
+    private Collection<String> candidates(String searched) {
+        if (searched.length() < GRAM) {
+            // too short to have a trigram: verify every distinct artist name
+            return songIdsByArtist.keySet();
+        }
+
+        List<Set<String>> postings = new ArrayList<>();
+        for (long trigram : trigrams(searched)) {
+            Set<String> artists = artistsByTrigram.get(trigram);
+            if (artists == null) {
+                return Collections.emptyList();
+            }
+            postings.add(artists);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        List<String> candidates = new ArrayList<>();
+        for (String artist : postings.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < postings.size() && inAll; i++) {
+                inAll = postings.get(i).contains(artist);
+            }
+            if (inAll) {
+                candidates.add(artist);
+            }
+        }
+        return candidates;
+    }
+
+    private static Set<Long> trigrams(String value) {
+        Set<Long> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            trigrams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+        return trigrams;
+    }
+
+    static String normalize(String value) {
+        return value.toUpperCase(Locale.ROOT);
+    }
+}
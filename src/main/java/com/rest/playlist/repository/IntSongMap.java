@@ -0,0 +1,144 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.model.Song;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * IntSongMap class is an open-addressing (linear probing) hash map from int id to Song.
+ * Ids are never boxed and get does not allocate, so id lookups stay cheap whatever the catalog size.
+ * get is lock-free and can run concurrently with writers,
+ * put and remove must be called by a single writer at a time (SongCatalog holds its write lock).
+ */
+public final class IntSongMap {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final Object TOMBSTONE = new Object();
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private volatile int size;
+    private int tombstones;
+
+    public Song get(int id) {
+        Table t = table;
+        int i = t.indexOf(id);
+        while (true) {
+            Object value = t.values.get(i);
+            if (value == null) {
+                return null;
+            }
+            if (value != TOMBSTONE && t.keys.get(i) == id) {
+                // the second read guards against the slot being recycled for another id in between,
+                // when it changed the slot is read again : put may have overwritten the song of this id
+                if (t.values.get(i) == value) {
+                    return (Song) value;
+                }
+                continue;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    public Song put(int id, Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song must not be null");
+        }
+        Table t = table;
+        int i = t.indexOf(id);
+        int free = -1;
+        while (true) {
+            Object value = t.values.get(i);
+            if (value == null) {
+                break;
+            }
+            if (value == TOMBSTONE) {
+                if (free < 0) {
+                    free = i;
+                }
+            } else if (t.keys.get(i) == id) {
+                t.values.set(i, song);
+                return (Song) value;
+            }
+            i = (i + 1) & t.mask;
+        }
+
+        if (free >= 0) {
+            tombstones--;
+            i = free;
+        }
+        // publish the key before the value: readers look at the value first
+        t.keys.set(i, id);
+        t.values.set(i, song);
+        size++;
+        if ((size + tombstones) * 2 > t.capacity()) {
+            rehash();
+        }
+        return null;
+    }
+
+    public Song remove(int id) {
+        Table t = table;
+        int i = t.indexOf(id);
+        while (true) {
+            Object value = t.values.get(i);
+            if (value == null) {
+                return null;
+            }
+            if (value != TOMBSTONE && t.keys.get(i) == id) {
+                t.values.set(i, TOMBSTONE);
+                size--;
+                tombstones++;
+                return (Song) value;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        Table old = table;
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 4) {
+            capacity <<= 1;
+        }
+        Table resized = new Table(capacity);
+        for (int i = 0; i < old.capacity(); i++) {
+            Object value = old.values.get(i);
+            if (value != null && value != TOMBSTONE) {
+                int j = resized.indexOf(old.keys.get(i));
+                while (resized.values.get(j) != null) {
+                    j = (j + 1) & resized.mask;
+                }
+                resized.keys.set(j, old.keys.get(i));
+                resized.values.set(j, value);
+            }
+        }
+        tombstones = 0;
+        table = resized;
+    }
+
+    private static final class Table {
+        private final AtomicIntegerArray keys;
+        private final AtomicReferenceArray<Object> values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new AtomicIntegerArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private int indexOf(int id) {
+            int h = id * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
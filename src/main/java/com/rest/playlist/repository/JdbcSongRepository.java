@@ -0,0 +1,538 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JdbcSongRepository class stores the songs in a SONG table, through any JDBC DataSource (embedded H2 by default).
+ * Multi-song writes run in one transaction, the rows they touch are locked first, then written with
+ * batched prepared statements of batchSize rows. A save with an expected version compares it with the locked row.
+ * <p>
+ * Artist names are also stored upper-cased so that case-insensitive lookups do not need a function on the column
+ * (they match anywhere in the name, so they scan the table), and titles normalized like SongKey does, with a unique index on (title_key, category) : a write whose key is used
+ * by another song is rejected by the database even when it races with the insert of that song.
+ * Full-text search matches each word of the query with LIKE and ranks the songs by weighted word hits
+ * (title and artist count twice) in the query itself, so that only the limit best songs are read.
+ * It does not fold accents like SongSearchIndex does.
+ * The column lengths are the ones the Song constraints allow.
+ * <p>
+ * The catalog and category versions are rows of a SONG_VERSION table, incremented in the transaction of each write,
+ * so that every application instance sharing the database reads the same versions.
+ * <p>
+ * New songs get their id from blocks reserved in the SONG_ID table, in a transaction of their own
+ * so that instances sharing the database never wait on each other's writes to get ids. The block is reserved before
+ * the write transaction is opened, so a write never holds more than one connection.
+ */
+public class JdbcSongRepository implements SongRepository {
+
+    private static final String COLUMNS = "id, title, description, category, duration, artist_name, version";
+    private static final String CATALOG_SCOPE = "ALL";
+    private static final String SONG_IDS = "SONG";
+    private static final int ID_BLOCK_SIZE = 100;
+    private static final int IN_CLAUSE_SIZE = 500;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private static final RowMapper<Song> SONG_MAPPER = (rs, rowNum) -> {
+        String category = rs.getString("category");
+        return Song.builder()
+                .id(rs.getInt("id"))
+                .title(rs.getString("title"))
+                .description(rs.getString("description"))
+                .category(category == null ? null : SongCategory.valueOf(category))
+                .duration(rs.getString("duration"))
+                .artistName(rs.getString("artist_name"))
+                .version(rs.getLong("version"))
+                .build();
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate idTransactionTemplate;
+    private final SongIdAllocator ids = new SongIdAllocator(this::reserveIds, ID_BLOCK_SIZE);
+    private final int batchSize;
+
+    public JdbcSongRepository(DataSource dataSource, int batchSize) {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.idTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = batchSize;
+        createSchema();
+    }
+
+    private void createSchema() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS song ("
+                + "id INT PRIMARY KEY, "
+                + "title VARCHAR(255), "
+                + "description VARCHAR(255), "
+                + "category VARCHAR(16), "
+                + "duration VARCHAR(32), "
+                + "artist_name VARCHAR(255), "
+                + "artist_name_upper VARCHAR(255), "
+                + "version BIGINT DEFAULT 1 NOT NULL, "
+                + "title_key VARCHAR(255))");
+        jdbcTemplate.execute("ALTER TABLE song ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 1 NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE song ADD COLUMN IF NOT EXISTS title_key VARCHAR(255)");
+        backfillTitleKeys();
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS song_category_idx ON song (category, id)");
+        // the artist lookups match anywhere in the name, no index can serve them
+        jdbcTemplate.execute("DROP INDEX IF EXISTS song_artist_idx");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS song_title_category_idx");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS song_title_key_idx ON song (title_key, category)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS song_version (scope VARCHAR(16) PRIMARY KEY, version BIGINT NOT NULL)");
+        List<String> scopes = new ArrayList<>();
+        scopes.add(CATALOG_SCOPE);
+        for (SongCategory category : SongCategory.values()) {
+            scopes.add(category.name());
+        }
+        for (String scope : scopes) {
+            jdbcTemplate.update("INSERT INTO song_version (scope, version) SELECT ?, 0 "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM song_version WHERE scope = ?)", scope, scope);
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS song_id (name VARCHAR(16) PRIMARY KEY, next_id INT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO song_id (name, next_id) SELECT ?, (SELECT COALESCE(MAX(id), 0) + 1 FROM song) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM song_id WHERE name = ?)", SONG_IDS, SONG_IDS);
+    }
+
+    /**
+     * SongIdAllocator.BlockStore of the repository, committed whatever becomes of the write that needed the block.
+     */
+    private int reserveIds(int from, int size) {
+        Integer end = idTransactionTemplate.execute(status -> {
+            jdbcTemplate.update("UPDATE song_id SET next_id = GREATEST(next_id, ?) + ? WHERE name = ?", from, size, SONG_IDS);
+            return jdbcTemplate.queryForObject("SELECT next_id FROM song_id WHERE name = ?", Integer.class, SONG_IDS);
+        });
+        return end - size;
+    }
+
+    /**
+     * Fills the title keys of the rows written before the column existed.
+     */
+    private void backfillTitleKeys() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT id, title FROM song WHERE title_key IS NULL AND title IS NOT NULL");
+        jdbcTemplate.batchUpdate("UPDATE song SET title_key = ? WHERE id = ?", rows, batchSize, (ps, row) -> {
+            ps.setString(1, SongKey.normalizeTitle((String) row.get("TITLE")));
+            ps.setInt(2, ((Number) row.get("ID")).intValue());
+        });
+    }
+
+    @Override
+    public List<Song> findAll() {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM song ORDER BY id", SONG_MAPPER);
+    }
+
+    @Override
+    public SongPage findAll(SongPageRequest pageRequest) {
+        return page("", Collections.emptyList(), pageRequest);
+    }
+
+    @Override
+    public List<Song> findByCategory(SongCategory category) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM song WHERE category = ? ORDER BY id",
+                SONG_MAPPER, category.name());
+    }
+
+    @Override
+    public SongPage findByCategory(SongCategory category, SongPageRequest pageRequest) {
+        return page("category = ?", Collections.singletonList(category.name()), pageRequest);
+    }
+
+    @Override
+    public List<Song> findByArtistName(String artistName) {
+        return query("SELECT " + COLUMNS + " FROM song WHERE artist_name_upper LIKE ? ESCAPE '\\' ORDER BY id",
+                containsPattern(artistName));
+    }
+
+    @Override
+    public SongPage findByArtistName(String artistName, SongPageRequest pageRequest) {
+        return page("artist_name_upper LIKE ? ESCAPE '\\'", Collections.singletonList(containsPattern(artistName)), pageRequest);
+    }
+
+    @Override
+    public Stream<Song> stream(SongCategory category) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(STREAM_FETCH_SIZE);
+        if (category == null) {
+            return streaming.queryForStream("SELECT " + COLUMNS + " FROM song ORDER BY id", SONG_MAPPER);
+        }
+        return streaming.queryForStream("SELECT " + COLUMNS + " FROM song WHERE category = ? ORDER BY id",
+                SONG_MAPPER, category.name());
+    }
+
+    @Override
+    public List<Song> search(String query, int limit) {
+        Set<String> words = new LinkedHashSet<>(SongSearchIndex.tokenize(query));
+        if (words.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // the score is computed by the database, so the best songs are returned whatever the number of matches
+        List<String> scores = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        List<Object> scoreArgs = new ArrayList<>();
+        List<Object> conditionArgs = new ArrayList<>();
+        for (String word : words) {
+            String pattern = "%" + escapeLike(word) + "%";
+            scores.add("CASE WHEN LOWER(title) LIKE ? ESCAPE '\\' THEN 2 ELSE 0 END"
+                    + " + CASE WHEN LOWER(artist_name) LIKE ? ESCAPE '\\' THEN 2 ELSE 0 END"
+                    + " + CASE WHEN LOWER(description) LIKE ? ESCAPE '\\' THEN 1 ELSE 0 END");
+            conditions.add("LOWER(title) LIKE ? ESCAPE '\\' OR LOWER(description) LIKE ? ESCAPE '\\' OR LOWER(artist_name) LIKE ? ESCAPE '\\'");
+            Collections.addAll(scoreArgs, pattern, pattern, pattern);
+            Collections.addAll(conditionArgs, pattern, pattern, pattern);
+        }
+        List<Object> args = new ArrayList<>(scoreArgs);
+        args.addAll(conditionArgs);
+        args.add(limit);
+        return query("SELECT " + COLUMNS + ", " + String.join(" + ", scores) + " AS score FROM song WHERE "
+                + String.join(" OR ", conditions) + " ORDER BY score DESC, id LIMIT ?", args.toArray());
+    }
+
+    @Override
+    public Song findById(int id) {
+        List<Song> songs = jdbcTemplate.query("SELECT " + COLUMNS + " FROM song WHERE id = ?", SONG_MAPPER, id);
+        return songs.isEmpty() ? null : songs.get(0);
+    }
+
+    @Override
+    public boolean existsByTitleAndCategory(String title, SongCategory category, int excludedId) {
+        List<Integer> ids = jdbcTemplate.queryForList("SELECT id FROM song WHERE title_key = ? AND category = ? AND id <> ? LIMIT 1",
+                Integer.class, SongKey.normalizeTitle(title), category == null ? null : category.name(), excludedId);
+        return !ids.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM song", Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public int count(SongCategory category) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM song WHERE category = ?", Integer.class, category.name());
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public long version(SongCategory category) {
+        Long version = jdbcTemplate.queryForObject("SELECT version FROM song_version WHERE scope = ?", Long.class,
+                category == null ? CATALOG_SCOPE : category.name());
+        return version == null ? 0 : version;
+    }
+
+    @Override
+    public SongChange save(Song song, long expectedVersion) {
+        return inWriteTransaction(Collections.singletonList(song), status -> {
+            Song current = findAllById(Collections.singletonList(song.getId())).get(song.getId());
+            if (expectedVersion != ANY_VERSION && expectedVersion != (current == null ? 0 : current.getVersion())) {
+                return null;
+            }
+            SongChange written = write(Collections.singletonList(song), Collections.singletonList(ANY_VERSION),
+                    Collections.singletonMap(song.getId(), current)).get(0);
+            if (written == null) {
+                throw new DuplicateKeyException("A song titled \"" + song.getTitle() + "\" already exists in "
+                        + song.getCategory());
+            }
+            return written;
+        });
+    }
+
+    /**
+     * The keys are checked before writing, the unique index only fails the transaction when a concurrent transaction
+     * inserted one of them since : it is then retried, and sees that song.
+     */
+    @Override
+    public List<SongChange> saveAll(List<Song> songs, List<Long> expectedVersions) {
+        if (songs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inWriteTransaction(songs, status ->
+                        write(songs, expectedVersions, findAllById(songs.stream().map(Song::getId).collect(Collectors.toList()))));
+            } catch (DuplicateKeyException e) {
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs write in a transaction once the ids songs may need are reserved : reserving an id block takes a connection
+     * of its own, that writers holding every connection of the pool in their transaction would wait for until they
+     * time out. A write whose reserved ids were taken by concurrent writes is rolled back and run again.
+     */
+    private <T> T inWriteTransaction(Collection<Song> songs, TransactionCallback<T> write) {
+        while (true) {
+            int newSongs = 0;
+            for (Song song : songs) {
+                if (song.getId() == 0) {
+                    newSongs++;
+                } else {
+                    ids.ensureAbove(song.getId());
+                }
+            }
+            ids.ensureAvailable(newSongs);
+            try {
+                return transactionTemplate.execute(write);
+            } catch (IdsTakenException e) {
+                // reserve again
+            }
+        }
+    }
+
+    /**
+     * Writes songs at the version following the one of the current songs, read and locked in the same transaction.
+     * A song whose current song is not at its expected version, or whose key is used by another song, stored
+     * or earlier in songs, is not written and gets a null change.
+     * A song without id gets one once its key is known to be free.
+     */
+    private List<SongChange> write(List<Song> songs, List<Long> expectedVersions, Map<Integer, Song> current) {
+        Map<Integer, Song> stored = new HashMap<>(current);
+        Map<SongKey, Integer> owners = findOwners(songs);
+        List<SongChange> changes = new ArrayList<>(songs.size());
+        List<Song> inserts = new ArrayList<>();
+        List<Song> updates = new ArrayList<>();
+        Set<String> scopes = new HashSet<>();
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            long expectedVersion = expectedVersions.get(i);
+            Song existing = stored.get(song.getId());
+            if (expectedVersion != ANY_VERSION && expectedVersion != (existing == null ? 0 : existing.getVersion())) {
+                changes.add(null);
+                continue;
+            }
+            SongKey key = SongKey.of(song.getTitle(), song.getCategory());
+            Integer owner = owners.get(key);
+            if (owner != null && owner != song.getId()) {
+                changes.add(null);
+                continue;
+            }
+            int id = song.getId();
+            Song replaced = stored.get(id);
+            if (replaced != null) {
+                // the key of the replaced song is released for the songs that follow
+                owners.remove(SongKey.of(replaced.getTitle(), replaced.getCategory()), id);
+            } else if (id == 0) {
+                id = ids.tryNext();
+                if (id == 0) {
+                    throw new IdsTakenException();
+                }
+            }
+            owners.put(key, id);
+            Song next = song.toBuilder()
+                    .id(id)
+                    .version(replaced == null ? 1 : replaced.getVersion() + 1)
+                    .build();
+            stored.put(next.getId(), next);
+            changes.add(new SongChange(replaced, next));
+            (replaced == null ? inserts : updates).add(next);
+            addScopes(scopes, replaced);
+            addScopes(scopes, next);
+        }
+        // updates first, an insert can take the key an update releases
+        jdbcTemplate.batchUpdate("UPDATE song SET title = ?, description = ?, category = ?, "
+                        + "duration = ?, artist_name = ?, artist_name_upper = ?, version = ?, title_key = ? WHERE id = ?",
+                updates, batchSize, (ps, song) -> {
+                    setColumns(ps, song, 1);
+                    ps.setInt(9, song.getId());
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO song (title, description, category, duration, artist_name, "
+                        + "artist_name_upper, version, title_key, id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                inserts, batchSize, (ps, song) -> {
+                    setColumns(ps, song, 1);
+                    ps.setInt(9, song.getId());
+                });
+        incrementVersions(scopes);
+        return changes;
+    }
+
+    @Override
+    public Song remove(int id) {
+        return removeAll(Collections.singletonList(id)).get(0);
+    }
+
+    @Override
+    public List<Song> removeAll(List<Integer> ids) {
+        return transactionTemplate.execute(status -> {
+            Map<Integer, Song> existing = findAllById(ids);
+            jdbcTemplate.batchUpdate("DELETE FROM song WHERE id = ?", new ArrayList<>(existing.keySet()), batchSize,
+                    (ps, id) -> ps.setInt(1, id));
+
+            Set<String> scopes = new HashSet<>();
+            for (Song song : existing.values()) {
+                addScopes(scopes, song);
+            }
+            incrementVersions(scopes);
+
+            List<Song> removed = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                // a song listed twice is only reported as removed once
+                removed.add(id == null ? null : existing.remove(id));
+            }
+            return removed;
+        });
+    }
+
+    /**
+     * Reads and locks the songs with the given ids, until the end of the transaction.
+     */
+    private Map<Integer, Song> findAllById(List<Integer> ids) {
+        Map<Integer, Song> songs = new HashMap<>();
+        List<Integer> distinct = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        for (int from = 0; from < distinct.size(); from += IN_CLAUSE_SIZE) {
+            List<Integer> chunk = distinct.subList(from, Math.min(from + IN_CLAUSE_SIZE, distinct.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            for (Song song : jdbcTemplate.query("SELECT " + COLUMNS + " FROM song WHERE id IN (" + placeholders + ") FOR UPDATE",
+                    SONG_MAPPER, chunk.toArray())) {
+                songs.put(song.getId(), song);
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * Reads which song holds each key of songs.
+     */
+    private Map<SongKey, Integer> findOwners(Collection<Song> songs) {
+        Map<SongKey, Integer> owners = new HashMap<>();
+        List<String> titleKeys = songs.stream()
+                .map(song -> SongKey.normalizeTitle(song.getTitle()))
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        for (int from = 0; from < titleKeys.size(); from += IN_CLAUSE_SIZE) {
+            List<String> chunk = titleKeys.subList(from, Math.min(from + IN_CLAUSE_SIZE, titleKeys.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT id, title_key, category FROM song WHERE title_key IN (" + placeholders + ")", rs -> {
+                String category = rs.getString("category");
+                owners.put(SongKey.of(rs.getString("title_key"), category == null ? null : SongCategory.valueOf(category)),
+                        rs.getInt("id"));
+            }, chunk.toArray());
+        }
+        return owners;
+    }
+
+    private SongPage page(String condition, List<Object> conditionArgs, SongPageRequest pageRequest) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (!condition.isEmpty()) {
+            conditions.add(condition);
+            args.addAll(conditionArgs);
+        }
+        if (pageRequest.getAfter() != null) {
+            conditions.add(pageRequest.isDescending() ? "id < ?" : "id > ?");
+            args.add(pageRequest.getAfter());
+        }
+        int size = pageRequest.pageSize();
+        // one more row than the page tells whether there is a next page
+        args.add(size + 1);
+        args.add(pageRequest.offset());
+        String sql = "SELECT " + COLUMNS + " FROM song"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY id " + (pageRequest.isDescending() ? "DESC" : "ASC")
+                + " LIMIT ? OFFSET ?";
+        List<Song> songs = query(sql, args.toArray());
+
+        Integer nextCursor = null;
+        if (songs.size() > size) {
+            songs = new ArrayList<>(songs.subList(0, size));
+            nextCursor = songs.isEmpty() ? null : songs.get(songs.size() - 1).getId();
+        }
+        return SongPage.builder()
+                .songs(songs)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private static void setColumns(PreparedStatement ps, Song song, int first) throws SQLException {
+        ps.setString(first, song.getTitle());
+        ps.setString(first + 1, song.getDescription());
+        ps.setString(first + 2, song.getCategory() == null ? null : song.getCategory().name());
+        ps.setString(first + 3, song.getDuration());
+        ps.setString(first + 4, song.getArtistName());
+        ps.setString(first + 5, song.getArtistName() == null ? null : song.getArtistName().toUpperCase(Locale.ROOT));
+        ps.setLong(first + 6, song.getVersion());
+        ps.setString(first + 7, SongKey.normalizeTitle(song.getTitle()));
+    }
+
+    private static void addScopes(Set<String> scopes, Song song) {
+        if (song != null) {
+            scopes.add(CATALOG_SCOPE);
+            if (song.getCategory() != null) {
+                scopes.add(song.getCategory().name());
+            }
+        }
+    }
+
+    private void incrementVersions(Set<String> scopes) {
+        if (!scopes.isEmpty()) {
+            jdbcTemplate.update("UPDATE song_version SET version = version + 1 WHERE scope IN ("
+                    + String.join(", ", Collections.nCopies(scopes.size(), "?")) + ")", scopes.toArray());
+        }
+    }
+
+    /**
+     * Runs a song query in a span of the request trace, counting the rows read.
+     */
+    private List<Song> query(String sql, Object... args) {
+        try (Span span = SongTracer.startSpan("jdbc.query")) {
+            span.attribute("db.statement", sql);
+            List<Song> songs = jdbcTemplate.query(sql, SONG_MAPPER, args);
+            SongTracer.count("rows", songs.size());
+            return songs;
+        }
+    }
+
+    private static String containsPattern(String artistName) {
+        return "%" + escapeLike(artistName.toUpperCase(Locale.ROOT)) + "%";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Rolls back a write whose ids were taken by concurrent writes since they were reserved.
+     */
+    private static final class IdsTakenException extends RuntimeException {
+        private IdsTakenException() {
+            super(null, null, false, false);
+        }
+    }
+}
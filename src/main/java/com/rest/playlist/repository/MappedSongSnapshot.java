@@ -0,0 +1,290 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * MappedSongSnapshot class is the on-disk snapshot format of the catalog, read through FileChannel.map
+ * so that songs can be served straight from the file and decoded only when they are accessed.
+ * <pre>
+ * header    magic, version, song count, string count, string data length, CRC32 of the rest of the file (6 ints)
+ * records   one fixed 32 bytes record per song, sorted by id :
+ *           id (int), category ordinal (byte, -1 for null), 3 padding bytes,
+ *           title, description, duration and artistName as string table references (int, -1 for null), version (long)
+ *           (version 2 snapshots have 24 bytes records, without the song version, read as 1)
+ * offsets   string count + 1 ints, string i is the UTF-8 bytes between offsets i and i + 1
+ * strings   the UTF-8 bytes of every distinct string, so a shared artist name or description is stored once
+ * </pre>
+ */
+final class MappedSongSnapshot {
+
+    static final int MAGIC = 0x534e4753;
+    static final int VERSION = 3;
+    private static final int UNVERSIONED_SONGS_VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 32;
+    private static final int UNVERSIONED_SONGS_RECORD_SIZE = 24;
+    private static final SongCategory[] CATEGORIES = SongCategory.values();
+
+    private final Path file;
+    private final ByteBuffer records;
+    private final ByteBuffer offsetBytes;
+    private final IntBuffer offsets;
+    private final ByteBuffer strings;
+    private final int size;
+    private final int stringCount;
+    private final int recordSize;
+    private final int checksum;
+
+    private MappedSongSnapshot(Path file, ByteBuffer records, ByteBuffer offsets, ByteBuffer strings, int size,
+                               int stringCount, int recordSize, int checksum) {
+        this.file = file;
+        this.records = records;
+        this.offsetBytes = offsets;
+        this.offsets = offsets.asIntBuffer();
+        this.strings = strings;
+        this.size = size;
+        this.stringCount = stringCount;
+        this.recordSize = recordSize;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Writes songs, which must be sorted by id, to file.
+     */
+    static void write(FileChannel channel, List<Song> songs) throws IOException {
+        Map<String, Integer> refs = new HashMap<>();
+        List<byte[]> stringBytes = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(songs.size() * RECORD_SIZE);
+        int previousId = Integer.MIN_VALUE;
+        long stringDataLength = 0;
+        for (Song song : songs) {
+            if (song.getId() <= previousId) {
+                throw new IllegalArgumentException("songs must be sorted by id");
+            }
+            previousId = song.getId();
+            records.putInt(song.getId());
+            records.put(song.getCategory() == null ? -1 : (byte) song.getCategory().ordinal());
+            records.put((byte) 0).put((byte) 0).put((byte) 0);
+            for (String value : new String[]{song.getTitle(), song.getDescription(), song.getDuration(), song.getArtistName()}) {
+                if (value == null) {
+                    records.putInt(-1);
+                    continue;
+                }
+                Integer ref = refs.get(value);
+                if (ref == null) {
+                    ref = stringBytes.size();
+                    refs.put(value, ref);
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    stringBytes.add(bytes);
+                    stringDataLength += bytes.length;
+                }
+                records.putInt(ref);
+            }
+            records.putLong(song.getVersion());
+        }
+        if (stringDataLength > Integer.MAX_VALUE) {
+            throw new IllegalStateException("snapshot string table exceeds 2 GB");
+        }
+
+        ByteBuffer offsets = ByteBuffer.allocate((stringBytes.size() + 1) * 4);
+        int offset = 0;
+        for (byte[] bytes : stringBytes) {
+            offsets.putInt(offset);
+            offset += bytes.length;
+        }
+        offsets.putInt(offset);
+
+        CRC32 crc = new CRC32();
+        channel.position(HEADER_SIZE);
+        records.flip();
+        crc.update(records.duplicate());
+        writeFully(channel, records);
+        offsets.flip();
+        crc.update(offsets.duplicate());
+        writeFully(channel, offsets);
+        ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        for (byte[] bytes : stringBytes) {
+            if (chunk.remaining() < bytes.length) {
+                chunk.flip();
+                crc.update(chunk.duplicate());
+                writeFully(channel, chunk);
+                chunk.clear();
+            }
+            if (bytes.length > chunk.capacity()) {
+                crc.update(bytes, 0, bytes.length);
+                writeFully(channel, ByteBuffer.wrap(bytes));
+            } else {
+                chunk.put(bytes);
+            }
+        }
+        chunk.flip();
+        crc.update(chunk.duplicate());
+        writeFully(channel, chunk);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(songs.size()).putInt(stringBytes.size())
+                .putInt(offset).putInt((int) crc.getValue());
+        header.flip();
+        channel.position(0);
+        writeFully(channel, header);
+    }
+
+    /**
+     * Maps file and checks its header and length. Neither the songs nor the checksum are read : reading the whole
+     * file up front would defeat the lazy startup, see verify().
+     */
+    static MappedSongSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IllegalStateException("Truncated song snapshot: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int version = header.getInt(4);
+            if (header.getInt(0) != MAGIC || (version != VERSION && version != UNVERSIONED_SONGS_VERSION)) {
+                throw new IllegalStateException("Not a song snapshot (version " + VERSION + "): " + file);
+            }
+            int recordSize = version == VERSION ? RECORD_SIZE : UNVERSIONED_SONGS_RECORD_SIZE;
+            int size = header.getInt(8);
+            int stringCount = header.getInt(12);
+            int stringDataLength = header.getInt(16);
+            int checksum = header.getInt(20);
+
+            long recordsLength = (long) size * recordSize;
+            long offsetsLength = (stringCount + 1L) * 4;
+            if (recordsLength > Integer.MAX_VALUE
+                    || channel.size() != HEADER_SIZE + recordsLength + offsetsLength + stringDataLength) {
+                throw new IllegalStateException("Truncated or corrupt song snapshot: " + file);
+            }
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, recordsLength);
+            MappedByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + recordsLength, offsetsLength);
+            MappedByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + recordsLength + offsetsLength, stringDataLength);
+            // the mappings stay valid once the channel is closed
+            return new MappedSongSnapshot(file, records, offsets, strings, size, stringCount, recordSize, checksum);
+        }
+    }
+
+    /**
+     * Checks the checksum of the whole file, called by the SongCatalog hydration thread before it decodes the songs.
+     */
+    void verify() {
+        CRC32 crc = new CRC32();
+        crc.update(records.duplicate());
+        crc.update(offsetBytes.duplicate());
+        crc.update(strings.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IllegalStateException("Corrupt song snapshot (checksum mismatch): " + file);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int stringCount() {
+        return stringCount;
+    }
+
+    int idAt(int index) {
+        return records.getInt(index * recordSize);
+    }
+
+    String titleAt(int index) {
+        return string(records.getInt(index * recordSize + 8), null);
+    }
+
+    String artistNameAt(int index) {
+        return string(records.getInt(index * recordSize + 20), null);
+    }
+
+    SongCategory categoryAt(int index) {
+        byte category = records.get(index * recordSize + 4);
+        return category < 0 ? null : CATEGORIES[category];
+    }
+
+    /**
+     * @return the position of id in the snapshot, or a negative value when it is not in it
+     */
+    int indexOf(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = idAt(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    int maxId() {
+        return size == 0 ? 0 : idAt(size - 1);
+    }
+
+    Song get(int id) {
+        int index = indexOf(id);
+        return index < 0 ? null : songAt(index, null);
+    }
+
+    /**
+     * Decodes the song at index. When stringCache is given (one slot per string of the table),
+     * decoded strings are shared between the songs that reference them.
+     */
+    Song songAt(int index, String[] stringCache) {
+        int record = index * recordSize;
+        return Song.builder()
+                .id(idAt(index))
+                .title(string(records.getInt(record + 8), stringCache))
+                .description(string(records.getInt(record + 12), stringCache))
+                .category(categoryAt(index))
+                .duration(string(records.getInt(record + 16), stringCache))
+                .artistName(string(records.getInt(record + 20), stringCache))
+                .version(recordSize == RECORD_SIZE ? records.getLong(record + 24) : 1)
+                .build();
+    }
+
+    private String string(int ref, String[] cache) {
+        if (ref < 0) {
+            return null;
+        }
+        if (cache != null && cache[ref] != null) {
+            return cache[ref];
+        }
+        int start = offsets.get(ref);
+        byte[] bytes = new byte[offsets.get(ref + 1) - start];
+        ByteBuffer view = strings.duplicate();
+        view.position(start);
+        view.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if (cache != null) {
+            cache[ref] = value;
+        }
+        return value;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * MappedSongView class serves the catalog straight from a MappedSongSnapshot while SongCatalog is being hydrated :
+ * the snapshot, overlaid with the journal records replayed after it (a null song meaning deleted).
+ * Songs are decoded from the snapshot only when they are returned.
+ */
+final class MappedSongView {
+
+    private final MappedSongSnapshot snapshot;
+    private final Map<Integer, Song> replayed;
+    private final TreeMap<Integer, Song> replayedSongs = new TreeMap<>();
+    private final int size;
+
+    MappedSongView(MappedSongSnapshot snapshot, Map<Integer, Song> replayed) {
+        this.snapshot = snapshot;
+        this.replayed = replayed;
+        int count = snapshot.size();
+        for (Map.Entry<Integer, Song> entry : replayed.entrySet()) {
+            boolean inSnapshot = snapshot.indexOf(entry.getKey()) >= 0;
+            if (entry.getValue() != null) {
+                replayedSongs.put(entry.getKey(), entry.getValue());
+                if (!inSnapshot) {
+                    count++;
+                }
+            } else if (inSnapshot) {
+                count--;
+            }
+        }
+        this.size = count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Song get(int id) {
+        if (replayed.containsKey(id)) {
+            return replayed.get(id);
+        }
+        return snapshot.get(id);
+    }
+
+    /**
+     * @return the songs of category (all of them when null) in id order, starting after the given id when not null
+     */
+    Iterator<Song> songs(SongCategory category, boolean descending, Integer after) {
+        if (category == null) {
+            return songs(index -> true, song -> true, descending, after);
+        }
+        return songs(index -> snapshot.categoryAt(index) == category, song -> song.getCategory() == category,
+                descending, after);
+    }
+
+    /**
+     * @return the songs whose artist name contains artistName, ignoring case as ArtistNameIndex does, in id order
+     * starting after the given id when not null. Only the artist names are decoded to match them.
+     */
+    Iterator<Song> songsByArtist(String artistName, boolean descending, Integer after) {
+        String searched = ArtistNameIndex.normalize(artistName);
+        Map<String, Boolean> matches = new HashMap<>();
+        return songs(index -> artistMatches(snapshot.artistNameAt(index), searched, matches),
+                song -> artistMatches(song.getArtistName(), searched, matches), descending, after);
+    }
+
+    /**
+     * @return whether a song other than excludedId has key, only its category is scanned
+     */
+    boolean containsKey(SongKey key, int excludedId) {
+        for (Song song : replayedSongs.values()) {
+            if (song.getId() != excludedId && key.equals(SongKey.of(song.getTitle(), song.getCategory()))) {
+                return true;
+            }
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.categoryAt(i) == key.category() && snapshot.idAt(i) != excludedId
+                    && !replayed.containsKey(snapshot.idAt(i)) && key.equals(SongKey.of(snapshot.titleAt(i), key.category()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean artistMatches(String artistName, String searched, Map<String, Boolean> matches) {
+        return artistName != null
+                && matches.computeIfAbsent(artistName, name -> ArtistNameIndex.normalize(name).contains(searched));
+    }
+
+    private Iterator<Song> songs(IntPredicate inSnapshot, Predicate<Song> inOverlay, boolean descending, Integer after) {
+        NavigableMap<Integer, Song> overlay = descending ? replayedSongs.descendingMap() : replayedSongs;
+        if (after != null) {
+            overlay = overlay.tailMap(after, false);
+        }
+        Iterator<Song> overlaySongs = overlay.values().iterator();
+
+        int start;
+        if (after == null) {
+            start = descending ? snapshot.size() - 1 : 0;
+        } else {
+            int position = snapshot.indexOf(after);
+            int insertion = position >= 0 ? position : -position - 1;
+            start = descending ? insertion - 1 : (position >= 0 ? position + 1 : insertion);
+        }
+        int step = descending ? -1 : 1;
+
+        return new Iterator<Song>() {
+            private int snapshotIndex = nextSnapshotIndex(start);
+            private Song overlaySong = nextOverlaySong();
+
+            private int nextSnapshotIndex(int from) {
+                for (int i = from; i >= 0 && i < snapshot.size(); i += step) {
+                    if (inSnapshot.test(i) && !replayed.containsKey(snapshot.idAt(i))) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            private Song nextOverlaySong() {
+                while (overlaySongs.hasNext()) {
+                    Song song = overlaySongs.next();
+                    if (inOverlay.test(song)) {
+                        return song;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return snapshotIndex >= 0 || overlaySong != null;
+            }
+
+            @Override
+            public Song next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                boolean fromSnapshot = overlaySong == null || (snapshotIndex >= 0
+                        && (descending ? snapshot.idAt(snapshotIndex) > overlaySong.getId()
+                        : snapshot.idAt(snapshotIndex) < overlaySong.getId()));
+                if (fromSnapshot) {
+                    Song song = snapshot.songAt(snapshotIndex, null);
+                    snapshotIndex = nextSnapshotIndex(snapshotIndex + step);
+                    return song;
+                }
+                Song song = overlaySong;
+                overlaySong = nextOverlaySong();
+                return song;
+            }
+        };
+    }
+
+    /**
+     * Checks the checksum of the snapshot, see MappedSongSnapshot.verify().
+     */
+    void verify() {
+        snapshot.verify();
+    }
+
+    /**
+     * Decodes every song once, sharing the strings of the snapshot string table between them.
+     */
+    void forEach(Consumer<Song> action) {
+        String[] strings = new String[snapshot.stringCount()];
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (!replayed.containsKey(snapshot.idAt(i))) {
+                action.accept(snapshot.songAt(i, strings));
+            }
+        }
+        replayedSongs.values().forEach(action);
+    }
+}
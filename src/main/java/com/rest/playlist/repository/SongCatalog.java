@@ -0,0 +1,786 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * SongCatalog class is the in-memory SongRepository.
+ * Songs are indexed by id (primitive IntSongMap), by category, by unique SongKey (normalized title, category)
+ * and by artist name trigrams (ArtistNameIndex), so lookups no longer have to scan the whole catalog.
+ * Full-text queries over title, description and artist are served by SongSearchIndex.
+ * Reads are lock-free; writes are serialized so that all the indexes move together.
+ * <p>
+ * When created with a SongStorage, the catalog is recovered from disk and every write is journaled
+ * under the write lock, then applied to the indexes once its journal record is durable : readers, caches and ETags
+ * never see a write that could be lost. In between, the write is pending : the writes that follow are checked
+ * against it (versions, unique keys), and the writer waits for durability without holding the lock,
+ * so that concurrent writes share an fsync. A write whose record can not be made durable is never applied,
+ * and the journal then refuses every later write.
+ * <p>
+ * Recovery from a snapshot neither decodes nor checksums it up front : until a background thread has checked it
+ * and decoded it into the indexes, id, category, artist and full listings and the unique key checks are served from
+ * the mapped snapshot (MappedSongView), by scanning it when there is no index for the query. Full-text queries and
+ * writes wait for the indexes, at most hydrationWait : they then fail with a TransientDataAccessResourceException
+ * (503). Every query fails once the snapshot turned out to be corrupt.
+ * <p>
+ * Songs are immutable : a save swaps in a copy at the next version, checked against the expected version
+ * in the same critical section, so updates are linearizable and readers never see a song being changed.
+ * A song saved without id is created with the next id of a SongIdAllocator, once its key is known to be free.
+ * The catalog and category versions are not stored :
+ * they start from the clock, in microseconds, so that a restarted catalog does not give out versions again.
+ */
+public class SongCatalog implements SongRepository {
+    private static final Logger log = LoggerFactory.getLogger(SongCatalog.class);
+    private static final int ID_BLOCK_SIZE = 1000;
+    static final Duration DEFAULT_HYDRATION_WAIT = Duration.ofSeconds(30);
+
+    private final IntSongMap songsById = new IntSongMap();
+    private final ConcurrentSkipListMap<Integer, Song> orderedSongs = new ConcurrentSkipListMap<>();
+    private final Map<SongCategory, ConcurrentSkipListMap<Integer, Song>> songsByCategory = categoryMaps();
+    // sizes of the songsByCategory maps, whose size() walks the whole map
+    private final Map<SongCategory, AtomicInteger> categorySizes = categorySizes();
+    private final ConcurrentHashMap<SongKey, Integer> idsByKey = new ConcurrentHashMap<>();
+    private final ArtistNameIndex artistNameIndex = new ArtistNameIndex();
+    private final SongSearchIndex searchIndex = new SongSearchIndex();
+
+    // keys each song was indexed under, only touched while holding writeLock
+    private final Map<Integer, SongKey> indexedKeys = new HashMap<>();
+    // journaled writes not applied yet, in journal order, and the latest of them for each id and each key
+    // they take or release : only touched while holding writeLock
+    private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private final Map<Integer, PendingWrite> pendingById = new HashMap<>();
+    private final Map<SongKey, PendingWrite> pendingByKey = new HashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SongStorage storage;
+    private final SongIdAllocator ids;
+
+    private final AtomicLong catalogVersion;
+    private final Map<SongCategory, AtomicLong> categoryVersions = new EnumMap<>(SongCategory.class);
+
+    private final CountDownLatch hydrated = new CountDownLatch(1);
+    private final Duration hydrationWait;
+    private volatile MappedSongView mappedView;
+    private volatile RuntimeException hydrationFailure;
+
+    public SongCatalog() {
+        this.storage = null;
+        this.hydrationWait = Duration.ZERO;
+        this.ids = new SongIdAllocator(SongIdAllocator.inMemory(), ID_BLOCK_SIZE);
+        this.catalogVersion = initialVersions();
+        hydrated.countDown();
+    }
+
+    public SongCatalog(SongStorage storage) throws IOException {
+        this(storage, DEFAULT_HYDRATION_WAIT);
+    }
+
+    /**
+     * @param hydrationWait how long full-text queries and writes wait for a snapshot to be loaded into the indexes
+     */
+    public SongCatalog(SongStorage storage, Duration hydrationWait) throws IOException {
+        this.storage = storage;
+        this.hydrationWait = hydrationWait;
+        this.ids = new SongIdAllocator(storage::reserveIds, ID_BLOCK_SIZE);
+        this.catalogVersion = initialVersions();
+        AtomicReference<MappedSongSnapshot> snapshot = new AtomicReference<>();
+        Map<Integer, Song> replayed = new HashMap<>();
+        int nextId = storage.recover(snapshot::set, song -> {
+            if (snapshot.get() != null) {
+                replayed.put(song.getId(), song);
+            } else {
+                unindex(song.getId());
+                index(song);
+            }
+        }, id -> {
+            if (snapshot.get() != null) {
+                replayed.put(id, null);
+            } else {
+                unindex(id);
+            }
+        });
+        if (nextId > 1) {
+            ids.ensureAbove(nextId - 1);
+        }
+
+        if (snapshot.get() == null) {
+            hydrated.countDown();
+            return;
+        }
+        MappedSongView view = new MappedSongView(snapshot.get(), replayed);
+        mappedView = view;
+        Thread hydration = new Thread(() -> hydrate(view), "song-catalog-hydration");
+        hydration.setDaemon(true);
+        hydration.start();
+    }
+
+    @Override
+    public List<Song> findAll() {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return toList(view.songs(null, false, null));
+        }
+        return new ArrayList<>(orderedSongs.values());
+    }
+
+    @Override
+    public List<Song> findByCategory(SongCategory category) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return toList(view.songs(category, false, null));
+        }
+        return new ArrayList<>(songsByCategory.get(category).values());
+    }
+
+    @Override
+    public List<Song> findByArtistName(String artistName) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return toList(view.songsByArtist(artistName, false, null));
+        }
+        return resolve(findArtistIds(artistName));
+    }
+
+    @Override
+    public SongPage findAll(SongPageRequest pageRequest) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return page(view.songs(null, pageRequest.isDescending(), pageRequest.getAfter()), pageRequest);
+        }
+        return page(orderedSongs, pageRequest);
+    }
+
+    @Override
+    public SongPage findByCategory(SongCategory category, SongPageRequest pageRequest) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return page(view.songs(category, pageRequest.isDescending(), pageRequest.getAfter()), pageRequest);
+        }
+        return page(songsByCategory.get(category), pageRequest);
+    }
+
+    @Override
+    public SongPage findByArtistName(String artistName, SongPageRequest pageRequest) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return page(view.songsByArtist(artistName, pageRequest.isDescending(), pageRequest.getAfter()), pageRequest);
+        }
+        List<Integer> ids = findArtistIds(artistName);
+        int start;
+        if (pageRequest.getAfter() == null) {
+            start = pageRequest.isDescending() ? ids.size() - 1 : 0;
+        } else {
+            int position = Collections.binarySearch(ids, pageRequest.getAfter());
+            if (position >= 0) {
+                start = pageRequest.isDescending() ? position - 1 : position + 1;
+            } else {
+                int insertion = -position - 1;
+                start = pageRequest.isDescending() ? insertion - 1 : insertion;
+            }
+        }
+        int step = pageRequest.isDescending() ? -1 : 1;
+        Iterator<Song> songs = new Iterator<Song>() {
+            private int next = start;
+            private Song song = advance();
+
+            private Song advance() {
+                while (next >= 0 && next < ids.size()) {
+                    Song found = songsById.get(ids.get(next));
+                    next += step;
+                    if (found != null) {
+                        return found;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return song != null;
+            }
+
+            @Override
+            public Song next() {
+                if (song == null) {
+                    throw new NoSuchElementException();
+                }
+                Song current = song;
+                song = advance();
+                return current;
+            }
+        };
+        return page(songs, pageRequest);
+    }
+
+    /**
+     * @return a lazy, weakly consistent stream over the songs in id order, without copying them
+     */
+    @Override
+    public Stream<Song> stream(SongCategory category) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(view.songs(category, false, null),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+        return (category == null ? orderedSongs : songsByCategory.get(category)).values().stream();
+    }
+
+    @Override
+    public List<Song> search(String query, int limit) {
+        awaitHydrated();
+        List<Integer> ids;
+        try (Span span = SongTracer.startSpan("SongSearchIndex.search")) {
+            ids = searchIndex.search(query, limit);
+        }
+        return resolve(ids);
+    }
+
+    @Override
+    public Song findById(int id) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return view.get(id);
+        }
+        return songsById.get(id);
+    }
+
+    @Override
+    public boolean existsByTitleAndCategory(String title, SongCategory category, int excludedId) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return view.containsKey(SongKey.of(title, category), excludedId);
+        }
+        Integer id = idsByKey.get(SongKey.of(title, category));
+        return id != null && id != excludedId;
+    }
+
+    @Override
+    public int size() {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            return view.size();
+        }
+        return songsById.size();
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return storage != null;
+    }
+
+    @Override
+    public int count(SongCategory category) {
+        MappedSongView view = mappedView();
+        if (view != null) {
+            int count = 0;
+            for (Iterator<Song> songs = view.songs(category, false, null); songs.hasNext(); songs.next()) {
+                count++;
+            }
+            return count;
+        }
+        return categorySizes.get(category).get();
+    }
+
+    @Override
+    public long version(SongCategory category) {
+        return (category == null ? catalogVersion : categoryVersions.get(category)).get();
+    }
+
+    @Override
+    public SongChange save(Song song, long expectedVersion) {
+        SongChange change;
+        long sequence;
+        awaitHydrated();
+        writeLock.lock();
+        try {
+            Song current = latest(song.getId());
+            if (expectedVersion != ANY_VERSION && expectedVersion != (current == null ? 0 : current.getVersion())) {
+                return null;
+            }
+            Song stored = nextVersion(song, current);
+            if (stored == null) {
+                throw new DuplicateKeyException("A song titled \"" + song.getTitle() + "\" already exists in "
+                        + song.getCategory());
+            }
+            sequence = put(current, stored);
+            change = new SongChange(current, stored);
+        } finally {
+            writeLock.unlock();
+        }
+        publish(sequence);
+        return change;
+    }
+
+    @Override
+    public List<SongChange> saveAll(List<Song> songs, List<Long> expectedVersions) {
+        List<SongChange> changes = new ArrayList<>(songs.size());
+        long sequence = 0;
+        awaitHydrated();
+        writeLock.lock();
+        try {
+            for (int i = 0; i < songs.size(); i++) {
+                Song song = songs.get(i);
+                Song current = latest(song.getId());
+                long expectedVersion = expectedVersions.get(i);
+                if (expectedVersion != ANY_VERSION && expectedVersion != (current == null ? 0 : current.getVersion())) {
+                    changes.add(null);
+                    continue;
+                }
+                Song stored = nextVersion(song, current);
+                if (stored == null) {
+                    changes.add(null);
+                    continue;
+                }
+                sequence = put(current, stored);
+                changes.add(new SongChange(current, stored));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        publish(sequence);
+        return changes;
+    }
+
+    @Override
+    public Song remove(int id) {
+        Song removed;
+        long sequence = 0;
+        awaitHydrated();
+        writeLock.lock();
+        try {
+            removed = latest(id);
+            if (removed != null) {
+                sequence = delete(removed);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        publish(sequence);
+        return removed;
+    }
+
+    /**
+     * @return for each id, the removed song or null when there was none
+     */
+    @Override
+    public List<Song> removeAll(List<Integer> ids) {
+        List<Song> removed = new ArrayList<>(ids.size());
+        long sequence = 0;
+        awaitHydrated();
+        writeLock.lock();
+        try {
+            for (Integer id : ids) {
+                Song song = id == null ? null : latest(id);
+                if (song != null) {
+                    sequence = delete(song);
+                }
+                removed.add(song);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        publish(sequence);
+        return removed;
+    }
+
+    /**
+     * Closes the storage, if any. Songs are still readable afterwards but can no longer be written.
+     */
+    public void close() throws IOException {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    private static Map<SongCategory, ConcurrentSkipListMap<Integer, Song>> categoryMaps() {
+        Map<SongCategory, ConcurrentSkipListMap<Integer, Song>> maps = new EnumMap<>(SongCategory.class);
+        for (SongCategory category : SongCategory.values()) {
+            maps.put(category, new ConcurrentSkipListMap<>());
+        }
+        return maps;
+    }
+
+    private static Map<SongCategory, AtomicInteger> categorySizes() {
+        Map<SongCategory, AtomicInteger> sizes = new EnumMap<>(SongCategory.class);
+        for (SongCategory category : SongCategory.values()) {
+            sizes.put(category, new AtomicInteger());
+        }
+        return sizes;
+    }
+
+    private static SongPage page(NavigableMap<Integer, Song> songs, SongPageRequest pageRequest) {
+        NavigableMap<Integer, Song> view = pageRequest.isDescending() ? songs.descendingMap() : songs;
+        if (pageRequest.getAfter() != null) {
+            view = view.tailMap(pageRequest.getAfter(), false);
+        }
+        return page(view.values().iterator(), pageRequest);
+    }
+
+    private static SongPage page(Iterator<Song> songs, SongPageRequest pageRequest) {
+        for (long skipped = 0; skipped < pageRequest.offset() && songs.hasNext(); skipped++) {
+            songs.next();
+        }
+        List<Song> slice = new ArrayList<>(Math.min(pageRequest.pageSize(), 64));
+        while (slice.size() < pageRequest.pageSize() && songs.hasNext()) {
+            slice.add(songs.next());
+        }
+        Integer nextCursor = songs.hasNext() && !slice.isEmpty() ? slice.get(slice.size() - 1).getId() : null;
+        return SongPage.builder()
+                .songs(slice)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Blocks until the songs recovered from a snapshot are decoded into the indexes, at most hydrationWait.
+     */
+    void awaitHydrated() {
+        try {
+            if (!hydrated.await(hydrationWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new TransientDataAccessResourceException("The song catalog is still loading its snapshot");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading the song catalog", e);
+        }
+        checkHydration();
+    }
+
+    /**
+     * @return the view to read while the snapshot is loaded into the indexes, null once they are ready
+     */
+    private MappedSongView mappedView() {
+        MappedSongView view = mappedView;
+        if (view != null) {
+            checkHydration();
+        }
+        return view;
+    }
+
+    private void checkHydration() {
+        if (hydrationFailure != null) {
+            throw new IllegalStateException("the song catalog could not be loaded", hydrationFailure);
+        }
+    }
+
+    private void hydrate(MappedSongView view) {
+        long started = System.nanoTime();
+        try {
+            view.verify();
+            view.forEach(this::index);
+            mappedView = null;
+            log.info("Loaded {} songs from the snapshot into the catalog indexes in {} ms",
+                    songsById.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (RuntimeException e) {
+            hydrationFailure = e;
+            log.error("Could not load the song snapshot into the catalog indexes", e);
+        } finally {
+            hydrated.countDown();
+        }
+    }
+
+    private static List<Song> toList(Iterator<Song> songs) {
+        List<Song> list = new ArrayList<>();
+        songs.forEachRemaining(list::add);
+        return list;
+    }
+
+    private AtomicLong initialVersions() {
+        long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        for (SongCategory category : SongCategory.values()) {
+            categoryVersions.put(category, new AtomicLong(now));
+        }
+        return new AtomicLong(now);
+    }
+
+    /**
+     * Called while holding writeLock : only writers change idsByKey, the unique index, so the key can not be taken
+     * between this check and the put of the song.
+     *
+     * @return song at the version following current, with a new id when it has none,
+     * null when another song holds its key
+     */
+    private Song nextVersion(Song song, Song current) {
+        Integer owner = latestOwner(SongKey.of(song.getTitle(), song.getCategory()));
+        if (owner != null && owner != song.getId()) {
+            return null;
+        }
+        int id = song.getId();
+        if (id == 0) {
+            id = ids.next();
+        } else if (current == null) {
+            ids.ensureAbove(id);
+        }
+        return song.toBuilder()
+                .id(id)
+                .version(current == null ? 1 : current.getVersion() + 1)
+                .build();
+    }
+
+    /**
+     * Called while holding writeLock.
+     *
+     * @return the song stored with id once the pending writes are applied, null when there is none
+     */
+    private Song latest(int id) {
+        PendingWrite write = pendingById.get(id);
+        return write != null ? write.after : songsById.get(id);
+    }
+
+    /**
+     * Called while holding writeLock.
+     *
+     * @return the id of the song holding key once the pending writes are applied, null when it is free
+     */
+    private Integer latestOwner(SongKey key) {
+        PendingWrite write = pendingByKey.get(key);
+        if (write == null) {
+            return idsByKey.get(key);
+        }
+        return write.after != null && key.equals(SongKey.of(write.after.getTitle(), write.after.getCategory()))
+                ? write.after.getId() : null;
+    }
+
+    /**
+     * Swaps stored in for current right away without storage, else journals it and leaves it pending.
+     *
+     * @return the journal sequence number to publish, 0 when there is none
+     */
+    private long put(Song current, Song stored) {
+        if (storage == null) {
+            replace(current, stored);
+            return 0;
+        }
+        return addPending(new PendingWrite(storage.appendPut(stored), current, stored));
+    }
+
+    /**
+     * Removes current right away without storage, else journals its delete and leaves it pending.
+     *
+     * @return the journal sequence number to publish, 0 when there is none
+     */
+    private long delete(Song current) {
+        if (storage == null) {
+            applyDelete(current);
+            return 0;
+        }
+        return addPending(new PendingWrite(storage.appendDelete(current.getId()), current, null));
+    }
+
+    private long addPending(PendingWrite write) {
+        pendingWrites.add(write);
+        if (write.before != null) {
+            pendingById.put(write.before.getId(), write);
+            pendingByKey.put(SongKey.of(write.before.getTitle(), write.before.getCategory()), write);
+        }
+        if (write.after != null) {
+            pendingById.put(write.after.getId(), write);
+            pendingByKey.put(SongKey.of(write.after.getTitle(), write.after.getCategory()), write);
+        }
+        return write.sequence;
+    }
+
+    /**
+     * Waits for the journal record sequence to be durable, then applies the pending writes up to it, in journal order.
+     * A writer may find its write already applied by the writer of a later record, which covers it.
+     */
+    private void publish(long sequence) {
+        if (sequence == 0) {
+            return;
+        }
+        storage.awaitDurable(sequence);
+        writeLock.lock();
+        try {
+            applyPending(sequence);
+            snapshotIfDue();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Called while holding writeLock, once the journal is durable up to sequence.
+     */
+    private void applyPending(long sequence) {
+        PendingWrite write;
+        while ((write = pendingWrites.peek()) != null && write.sequence <= sequence) {
+            pendingWrites.poll();
+            if (write.after == null) {
+                applyDelete(write.before);
+            } else {
+                replace(write.before, write.after);
+            }
+            for (Song song : new Song[]{write.before, write.after}) {
+                if (song != null) {
+                    pendingById.remove(song.getId(), write);
+                    pendingByKey.remove(SongKey.of(song.getTitle(), song.getCategory()), write);
+                }
+            }
+        }
+    }
+
+    private void applyDelete(Song current) {
+        unindex(current.getId());
+        incrementVersions(current.getCategory(), null);
+    }
+
+    /**
+     * Swaps stored in for current, the song stored with its id. Readers see one or the other, never a song being changed.
+     */
+    private void replace(Song current, Song stored) {
+        int id = stored.getId();
+        SongKey previous = indexedKeys.get(id);
+        if (previous != null) {
+            artistNameIndex.remove(id);
+            searchIndex.remove(id);
+        }
+        // the id keyed maps are overwritten, not emptied first, so that findById never misses a song being replaced
+        index(stored);
+        if (previous != null) {
+            if (previous.category() != stored.getCategory()) {
+                removeFromCategory(previous.category(), id);
+            }
+            if (!previous.equals(indexedKeys.get(id))) {
+                idsByKey.remove(previous, id);
+            }
+        }
+        incrementVersions(current == null ? null : current.getCategory(), stored.getCategory());
+    }
+
+    /**
+     * Called once a write is visible in the indexes, so that a version is never read before the contents it describes.
+     */
+    private void incrementVersions(SongCategory before, SongCategory after) {
+        if (before == null && after == null) {
+            return;
+        }
+        if (before != null) {
+            categoryVersions.get(before).incrementAndGet();
+        }
+        if (after != null && after != before) {
+            categoryVersions.get(after).incrementAndGet();
+        }
+        catalogVersion.incrementAndGet();
+    }
+
+    /**
+     * Called while holding writeLock, after a write is applied. The snapshot must hold every write journaled
+     * before the segment it starts : the pending writes are made durable and applied first.
+     * A write that has been applied is not failed by its snapshot, which only keeps the journal longer.
+     */
+    private void snapshotIfDue() {
+        if (!storage.isSnapshotDue()) {
+            return;
+        }
+        try {
+            PendingWrite last = pendingWrites.peekLast();
+            if (last != null) {
+                storage.awaitDurable(last.sequence);
+                applyPending(last.sequence);
+            }
+            storage.snapshot(orderedSongs.values());
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not start a snapshot of the song catalog, the journal is kept", e);
+        }
+    }
+
+    private List<Integer> findArtistIds(String artistName) {
+        try (Span span = SongTracer.startSpan("ArtistNameIndex.find")) {
+            return artistNameIndex.find(artistName);
+        }
+    }
+
+    private List<Song> resolve(List<Integer> ids) {
+        try (Span span = SongTracer.startSpan("SongCatalog.resolve")) {
+            List<Song> songs = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                Song song = songsById.get(id);
+                if (song != null) {
+                    songs.add(song);
+                }
+            }
+            return songs;
+        }
+    }
+
+    private void index(Song song) {
+        SongKey key = SongKey.of(song.getTitle(), song.getCategory());
+        songsById.put(song.getId(), song);
+        orderedSongs.put(song.getId(), song);
+        if (songsByCategory.get(song.getCategory()).put(song.getId(), song) == null) {
+            categorySizes.get(song.getCategory()).incrementAndGet();
+        }
+        idsByKey.put(key, song.getId());
+        artistNameIndex.add(song.getId(), song.getArtistName());
+        searchIndex.add(song);
+        indexedKeys.put(song.getId(), key);
+    }
+
+    private Song unindex(int id) {
+        SongKey key = indexedKeys.remove(id);
+        if (key == null) {
+            return null;
+        }
+        idsByKey.remove(key, id);
+        artistNameIndex.remove(id);
+        searchIndex.remove(id);
+        removeFromCategory(key.category(), id);
+        orderedSongs.remove(id);
+        return songsById.remove(id);
+    }
+
+    private void removeFromCategory(SongCategory category, int id) {
+        if (songsByCategory.get(category).remove(id) != null) {
+            categorySizes.get(category).decrementAndGet();
+        }
+    }
+
+    /**
+     * A journaled write waiting for its record to be durable : after replaces before, a delete when null.
+     */
+    private static final class PendingWrite {
+        private final long sequence;
+        private final Song before;
+        private final Song after;
+
+        private PendingWrite(long sequence, Song before, Song after) {
+            this.sequence = sequence;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.rest.playlist.repository;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SongIdAllocator class gives out the ids of new songs from blocks of blockSize consecutive ids reserved
+ * from a BlockStore, which persists the end of each block before handing it out : an id is never given out twice,
+ * even across restarts, and the store is only called once per block. Within a block, next is a single
+ * getAndIncrement, threads only synchronize to reserve the following block.
+ * <p>
+ * A caller that must not reserve a block at some point, e.g. inside a transaction while the store needs a connection
+ * of its own, calls ensureAvailable before and tryNext then.
+ * <p>
+ * The ids of a block left unused when the process stops are skipped, so ids have gaps but keep growing.
+ */
+final class SongIdAllocator {
+
+    interface BlockStore {
+        /**
+         * Reserves and persists the size ids starting at the first id that is both above every id reserved so far
+         * and at least from.
+         *
+         * @return the first id of the block
+         */
+        int reserve(int from, int size);
+    }
+
+    private final BlockStore store;
+    private final int blockSize;
+    private volatile Block block = new Block(1, 0);
+
+    SongIdAllocator(BlockStore store, int blockSize) {
+        this.store = store;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return a BlockStore that does not persist anything, for repositories that do not outlive the process
+     */
+    static BlockStore inMemory() {
+        return new BlockStore() {
+            // only called from refill, under the allocator lock
+            private int end = 1;
+
+            @Override
+            public int reserve(int from, int size) {
+                int first = Math.max(end, from);
+                end = first + size;
+                return first;
+            }
+        };
+    }
+
+    int next() {
+        while (true) {
+            Block current = block;
+            int id = current.next.getAndIncrement();
+            if (id < current.end) {
+                return id;
+            }
+            refill(current, 0, blockSize);
+        }
+    }
+
+    /**
+     * @return the next id of the current block, or 0 when it is used up : the block is not replaced
+     */
+    int tryNext() {
+        Block current = block;
+        int id = current.next.getAndIncrement();
+        return id < current.end ? id : 0;
+    }
+
+    /**
+     * Reserves a new block, of at least count ids, when the current one has less than count ids left : count tryNext
+     * calls then succeed, unless other threads take ids of the block meanwhile.
+     */
+    void ensureAvailable(int count) {
+        Block current = block;
+        if ((long) current.end - current.next.get() < count) {
+            refill(current, 0, Math.max(blockSize, count));
+        }
+    }
+
+    /**
+     * Makes sure id is never given out, e.g. when a song is stored with an id chosen by its caller.
+     *
+     * @throws IllegalArgumentException when id is not positive or too close to Integer.MAX_VALUE
+     *                                  for a block to be reserved after it
+     */
+    void ensureAbove(int id) {
+        if (id <= 0 || id >= Integer.MAX_VALUE - blockSize) {
+            throw new IllegalArgumentException("Song id " + id + " is out of the range of the allocated ids");
+        }
+        while (true) {
+            Block current = block;
+            int next = current.next.get();
+            if (next > id) {
+                return;
+            }
+            if (id < current.end) {
+                if (current.next.compareAndSet(next, id + 1)) {
+                    return;
+                }
+            } else {
+                refill(current, id + 1, blockSize);
+            }
+        }
+    }
+
+    private synchronized void refill(Block exhausted, int from, int size) {
+        if (block == exhausted) {
+            int first = store.reserve(from, size);
+            if (first <= 0 || first > Integer.MAX_VALUE - size) {
+                throw new IllegalStateException("No song id left to allocate after " + first);
+            }
+            block = new Block(first, size);
+        }
+    }
+
+    private static final class Block {
+        private final AtomicInteger next;
+        private final int end;
+
+        private Block(int first, int size) {
+            this.next = new AtomicInteger(first);
+            this.end = first + size;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongStorage.FsyncMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * SongJournal class is the append-only write-ahead log of the catalog, split in numbered segment files.
+ * A record is [payload length (int)][CRC32 of the payload (int)][payload],
+ * the payload being a PUT (op byte + song, see SongRecordCodec), a DELETE (op byte + id)
+ * or an ID_BLOCK (op byte + end of the last id block reserved by SongIdAllocator).
+ * Journals written before songs had a version hold UNVERSIONED_PUT records.
+ * <p>
+ * In GROUP mode appends only go to an in-memory buffer and a flusher thread writes and fsyncs
+ * everything appended since its last pass at once, writers wait in awaitDurable for their record to be covered.
+ * In PER_OP mode every append is written and fsynced before returning.
+ */
+final class SongJournal implements Closeable {
+
+    static final byte UNVERSIONED_PUT = 1;
+    static final byte DELETE = 2;
+    static final byte PUT = 3;
+    static final byte ID_BLOCK = 4;
+
+    private final Path directory;
+    private final FsyncMode fsyncMode;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingAvailable = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+
+    // guarded by lock
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream(64 * 1024);
+    private FileChannel channel;
+    private long segment;
+    private long appendedSequence;
+    private long durableSequence;
+    private long appendedSinceRotation;
+    private IOException failure;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    SongJournal(Path directory, long segment, FsyncMode fsyncMode) throws IOException {
+        this.directory = directory;
+        this.fsyncMode = fsyncMode;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        if (fsyncMode == FsyncMode.GROUP) {
+            flusher = new Thread(this::flushLoop, "song-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("journal-%016d.log", segment));
+    }
+
+    /**
+     * @return the sequence number to pass to awaitDurable
+     */
+    long appendPut(Song song) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeByte(PUT);
+            SongRecordCodec.write(out, song);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return append(payload.toByteArray());
+    }
+
+    long appendDelete(int id) {
+        byte[] payload = ByteBuffer.allocate(5).put(DELETE).putInt(id).array();
+        return append(payload);
+    }
+
+    long appendIdBlock(int end) {
+        byte[] payload = ByteBuffer.allocate(5).put(ID_BLOCK).putInt(end).array();
+        return append(payload);
+    }
+
+    void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) {
+                durableAdvanced.awaitUninterruptibly();
+            }
+            if (durableSequence < sequence) {
+                throw new UncheckedIOException("song journal is not writable", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long appendedSinceRotation() {
+        lock.lock();
+        try {
+            return appendedSinceRotation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable, then switches to a new segment.
+     *
+     * @return the number of the new segment, records appended from now on go to it
+     */
+    long rotate() throws IOException {
+        lock.lock();
+        try {
+            while (durableSequence < appendedSequence && failure == null) {
+                pendingAvailable.signal();
+                durableAdvanced.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            FileChannel next = openSegment(segment + 1);
+            channel.close();
+            channel = next;
+            segment++;
+            appendedSinceRotation = 0;
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            while (durableSequence < appendedSequence && failure == null) {
+                pendingAvailable.signal();
+                durableAdvanced.awaitUninterruptibly();
+            }
+            closed = true;
+            pendingAvailable.signal();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(payload.length).putInt((int) crc.getValue());
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("song journal is closed");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("song journal is not writable", failure);
+            }
+            appendedSinceRotation++;
+            if (fsyncMode == FsyncMode.PER_OP) {
+                try {
+                    header.flip();
+                    writeFully(channel, header);
+                    writeFully(channel, ByteBuffer.wrap(payload));
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                    throw new UncheckedIOException(e);
+                }
+                durableSequence = ++appendedSequence;
+                return durableSequence;
+            }
+            pending.write(header.array(), 0, 8);
+            pending.write(payload, 0, payload.length);
+            pendingAvailable.signal();
+            return ++appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            FileChannel target;
+            long batchSequence;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    pendingAvailable.awaitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                target = channel;
+                batchSequence = appendedSequence;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                writeFully(target, ByteBuffer.wrap(batch.toByteArray()));
+                target.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.reset();
+
+            lock.lock();
+            try {
+                spare = batch;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSequence = batchSequence;
+                }
+                durableAdvanced.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
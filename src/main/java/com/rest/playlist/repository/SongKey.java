@@ -0,0 +1,62 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * SongKey class is the unique key of a song : its normalized title and its category.
+ * Titles are compared in NFC form, trimmed, with runs of whitespace collapsed and ignoring case,
+ * so "Oblivion" and " oblivion " are the same song.
+ */
+final class SongKey {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String title;
+    private final SongCategory category;
+
+    private SongKey(String title, SongCategory category) {
+        this.title = title;
+        this.category = category;
+    }
+
+    static SongKey of(String title, SongCategory category) {
+        return new SongKey(normalizeTitle(title), category);
+    }
+
+    static String normalizeTitle(String title) {
+        if (title == null) {
+            return null;
+        }
+        String normalized = Normalizer.normalize(title, Normalizer.Form.NFC).trim();
+        return WHITESPACE.matcher(normalized).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    String title() {
+        return title;
+    }
+
+    SongCategory category() {
+        return category;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SongKey)) {
+            return false;
+        }
+        SongKey other = (SongKey) o;
+        return category == other.category && Objects.equals(title, other.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(title) + Objects.hashCode(category);
+    }
+}
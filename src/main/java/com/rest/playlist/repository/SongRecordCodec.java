@@ -0,0 +1,70 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SongRecordCodec class writes and reads the binary form of a Song used by the journal and the snapshots :
+ * id (int), title, description (strings), category (ordinal byte), duration, artistName (strings), version (long).
+ * Records written before songs had a version end after artistName, they are read as version 1.
+ * A string is its UTF-8 length (int, -1 for null) followed by its bytes.
+ */
+final class SongRecordCodec {
+
+    private SongRecordCodec() {
+    }
+
+    static void write(DataOutput out, Song song) throws IOException {
+        out.writeInt(song.getId());
+        writeString(out, song.getTitle());
+        writeString(out, song.getDescription());
+        out.writeByte(song.getCategory() == null ? -1 : song.getCategory().ordinal());
+        writeString(out, song.getDuration());
+        writeString(out, song.getArtistName());
+        out.writeLong(song.getVersion());
+    }
+
+    static Song read(DataInput in, boolean versioned) throws IOException {
+        int id = in.readInt();
+        String title = readString(in);
+        String description = readString(in);
+        byte category = in.readByte();
+        String duration = readString(in);
+        String artistName = readString(in);
+        long version = versioned ? in.readLong() : 1;
+        return Song.builder()
+                .id(id)
+                .title(title)
+                .description(description)
+                .category(category < 0 ? null : SongCategory.values()[category])
+                .duration(duration)
+                .artistName(artistName)
+                .version(version)
+                .build();
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
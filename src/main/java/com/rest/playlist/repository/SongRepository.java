@@ -0,0 +1,120 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * SongRepository interface is the storage ISongService delegates to.
+ * Implementations : SongCatalog (in memory, optionally journaled to disk) and JdbcSongRepository,
+ * selected with playlist.repository.type.
+ */
+public interface SongRepository {
+
+    long ANY_VERSION = -1;
+
+    List<Song> findAll();
+
+    SongPage findAll(SongPageRequest pageRequest);
+
+    List<Song> findByCategory(SongCategory category);
+
+    SongPage findByCategory(SongCategory category, SongPageRequest pageRequest);
+
+    /**
+     * @return songs whose artist name contains artistName, ignoring case, in id order
+     */
+    List<Song> findByArtistName(String artistName);
+
+    SongPage findByArtistName(String artistName, SongPageRequest pageRequest);
+
+    /**
+     * @return the songs of category (all songs when null) in id order, the stream must be closed
+     */
+    Stream<Song> stream(SongCategory category);
+
+    /**
+     * @return at most limit songs matching the words of query in title, description or artist name, best first
+     */
+    List<Song> search(String query, int limit);
+
+    Song findById(int id);
+
+    /**
+     * @return whether a song other than excludedId has the same title (see SongKey) and category
+     */
+    boolean existsByTitleAndCategory(String title, SongCategory category, int excludedId);
+
+    int size();
+
+    /**
+     * @return whether the songs outlive a restart, so that an empty repository may have been emptied on purpose
+     */
+    boolean isPersistent();
+
+    /**
+     * @return the number of songs of category
+     */
+    int count(SongCategory category);
+
+    /**
+     * @return a number that changes whenever a song of category (any song when null) is saved or removed,
+     * and is never given twice to different contents, restarts included
+     */
+    long version(SongCategory category);
+
+    /**
+     * Inserts song, or replaces the song with the same id, as a copy carrying the next version.
+     * The version check and the swap are atomic : when expectedVersion is not ANY_VERSION, the song is only saved
+     * if the stored song is at expectedVersion (0 : there is none).
+     *
+     * @return the replaced and the stored song, null when the stored version was not expectedVersion
+     * @throws org.springframework.dao.DuplicateKeyException when another song has the same title (see SongKey) and category
+     */
+    SongChange save(Song song, long expectedVersion);
+
+    /**
+     * Saves song whatever its stored version.
+     */
+    default SongChange save(Song song) {
+        return save(song, ANY_VERSION);
+    }
+
+    /**
+     * Saves every song whatever its stored version, except the songs whose title and category are already
+     * used by another song (stored or earlier in songs).
+     *
+     * @return for each song, the song it replaced (null when it was inserted) and the stored song,
+     * null when the song was not saved because of its title and category
+     */
+    default List<SongChange> saveAll(Collection<Song> songs) {
+        return saveAll(new ArrayList<>(songs), Collections.nCopies(songs.size(), ANY_VERSION));
+    }
+
+    /**
+     * Saves each song whose stored song is at its expected version, as save does, except the songs whose title
+     * and category are already used by another song (stored or earlier in songs).
+     *
+     * @return for each song, the song it replaced (null when it was inserted) and the stored song,
+     * null when the song was not saved because of its version or of its title and category
+     */
+    List<SongChange> saveAll(List<Song> songs, List<Long> expectedVersions);
+
+    /**
+     * @return the removed song, null when there was none
+     */
+    Song remove(int id);
+
+    /**
+     * @return for each id, the removed song or null when there was none
+     */
+    List<Song> removeAll(List<Integer> ids);
+}
@@ -0,0 +1,151 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.trace.SongTracer;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * SongSearchIndex class is an inverted index over Song.title, description and artistName.
+ * Text is tokenized and accent-folded ("Sergueï" is found by "serguei"), and results are
+ * ranked with BM25 (title and artist terms count twice), keeping only the best k in a bounded heap.
+ * Reads are lock-free; add and remove are called under the SongCatalog write lock.
+ */
+final class SongSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int TITLE_WEIGHT = 2;
+    private static final int ARTIST_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Integer>> postings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Integer> documentLengths = new ConcurrentHashMap<>();
+    private final AtomicLong totalLength = new AtomicLong();
+
+    // weighted term frequencies each song was indexed with, only touched by the writer
+    private final Map<Integer, Map<String, Integer>> termsById = new HashMap<>();
+
+    void add(Song song) {
+        Map<String, Integer> terms = new HashMap<>();
+        addTerms(terms, song.getTitle(), TITLE_WEIGHT);
+        addTerms(terms, song.getDescription(), DESCRIPTION_WEIGHT);
+        addTerms(terms, song.getArtistName(), ARTIST_WEIGHT);
+
+        int length = 0;
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), t -> new ConcurrentHashMap<>()).put(song.getId(), term.getValue());
+            length += term.getValue();
+        }
+        termsById.put(song.getId(), terms);
+        documentLengths.put(song.getId(), length);
+        totalLength.addAndGet(length);
+    }
+
+    void remove(int id) {
+        Map<String, Integer> terms = termsById.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms.keySet()) {
+            Map<Integer, Integer> documents = postings.get(term);
+            documents.remove(id);
+            if (documents.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength.addAndGet(-documentLengths.remove(id));
+    }
+
+    /**
+     * @return ids of the best matching songs, best score first, at most limit of them
+     */
+    List<Integer> search(String query, int limit) {
+        int documentCount = documentLengths.size();
+        if (documentCount == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        double averageLength = Math.max(1d, (double) totalLength.get() / documentCount);
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Map<Integer, Integer> documents = postings.get(term);
+            if (documents == null) {
+                continue;
+            }
+            int df = documents.size();
+            double idf = Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+            for (Map.Entry<Integer, Integer> document : documents.entrySet()) {
+                Integer length = documentLengths.get(document.getKey());
+                if (length == null) {
+                    continue;
+                }
+                int tf = document.getValue();
+                double score = idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+                scores.merge(document.getKey(), score, Double::sum);
+            }
+        }
+        SongTracer.count("search.candidates", scores.size());
+        return topK(scores, limit);
+    }
+
+    private static List<Integer> topK(Map<Integer, Double> scores, int limit) {
+        // min-heap on score (then highest id) so the head is always the weakest of the kept results
+        PriorityQueue<Map.Entry<Integer, Double>> heap = new PriorityQueue<>(Math.min(limit, Math.max(1, scores.size())),
+                (a, b) -> {
+                    int byScore = Double.compare(a.getValue(), b.getValue());
+                    return byScore != 0 ? byScore : Integer.compare(b.getKey(), a.getKey());
+                });
+        for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+            if (heap.size() < limit) {
+                heap.add(score);
+            } else if (heap.comparator().compare(score, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(score);
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ids.add(heap.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Integer::sum);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(folded)) {
+            // single letters are mostly elisions such as the d of d'Ennio
+            if (token.length() > 1) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,326 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.model.Song;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * SongStorage class keeps the SongCatalog on disk : every write is first appended to the SongJournal,
+ * and every snapshotEvery operations the whole catalog is written to a compacted snapshot file
+ * (see MappedSongSnapshot) so that the journal segments it covers can be deleted.
+ * <p>
+ * snapshot-N.bin holds the catalog as it was when journal segment N was started, so recovery maps the
+ * latest snapshot and replays segments N and above. A torn record at the end of the last segment
+ * (crash in the middle of an append) is truncated; anywhere else it means the data is corrupt and startup fails.
+ * <p>
+ * The end of the last id block is journaled when the block is reserved, and again at the start of every new segment
+ * so that it survives the deletion of the segments a snapshot covers.
+ */
+public final class SongStorage implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SongStorage.class);
+
+    public enum FsyncMode {
+        /** appends are written and fsynced together by a background flusher (group commit) */
+        GROUP,
+        /** every append is fsynced before returning */
+        PER_OP
+    }
+
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    private static final Pattern SEGMENT_FILE = Pattern.compile("journal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    private final Path directory;
+    private final FsyncMode fsyncMode;
+    private final long snapshotEvery;
+
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "song-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private SongJournal journal;
+    // only touched while the catalog writes are blocked
+    private int idBlockEnd = 1;
+
+    public SongStorage(Path directory, FsyncMode fsyncMode, long snapshotEvery) {
+        this.directory = directory;
+        this.fsyncMode = fsyncMode;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Maps the latest snapshot and hands it to snapshot, replays the journal written after it through put and delete,
+     * then opens a new segment for the writes to come.
+     *
+     * @return the lowest id above every song id found on disk and every id block reserved, 1 when there is none
+     */
+    int recover(Consumer<MappedSongSnapshot> snapshot, Consumer<Song> put, IntConsumer delete) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher segmentFile = SEGMENT_FILE.matcher(name);
+                Matcher snapshotFile = SNAPSHOT_FILE.matcher(name);
+                if (segmentFile.matches()) {
+                    segments.put(Long.parseLong(segmentFile.group(1)), file);
+                } else if (snapshotFile.matches()) {
+                    snapshots.put(Long.parseLong(snapshotFile.group(1)), file);
+                } else if (name.endsWith(".tmp")) {
+                    // snapshot that was being written when the process stopped
+                    Files.delete(file);
+                }
+            }
+        }
+
+        long started = System.nanoTime();
+        int maxId = 0;
+        long firstSegment = 1;
+        int snapshotSongs = 0;
+        if (!snapshots.isEmpty()) {
+            firstSegment = snapshots.lastKey();
+            MappedSongSnapshot mapped = MappedSongSnapshot.open(snapshots.lastEntry().getValue());
+            snapshot.accept(mapped);
+            maxId = mapped.maxId();
+            snapshotSongs = mapped.size();
+        }
+
+        long replayed = 0;
+        for (Map.Entry<Long, Path> segment : segments.tailMap(firstSegment, true).entrySet()) {
+            boolean last = segment.getKey().equals(segments.lastKey());
+            ReplayResult result = replay(segment.getValue(), last, put, delete);
+            replayed += result.records;
+            maxId = Math.max(maxId, result.maxId);
+            idBlockEnd = Math.max(idBlockEnd, result.idBlockEnd);
+        }
+
+        long nextSegment = Math.max(firstSegment, segments.isEmpty() ? 1 : segments.lastKey() + 1);
+        journal = new SongJournal(directory, nextSegment, fsyncMode);
+        log.info("Recovered song storage from {}: {} songs in snapshot, {} journal records replayed in {} ms",
+                directory, snapshotSongs, replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        idBlockEnd = Math.max(idBlockEnd, maxId + 1);
+        return idBlockEnd;
+    }
+
+    long appendPut(Song song) {
+        return journal.appendPut(song);
+    }
+
+    long appendDelete(int id) {
+        return journal.appendDelete(id);
+    }
+
+    /**
+     * SongIdAllocator.BlockStore of the catalog. The block end is not awaited : the put of the first song
+     * created with an id of the block comes after it in the journal, so it is durable first.
+     */
+    int reserveIds(int from, int size) {
+        int first = Math.max(idBlockEnd, from);
+        journal.appendIdBlock(first + size);
+        idBlockEnd = first + size;
+        return first;
+    }
+
+    void awaitDurable(long sequence) {
+        journal.awaitDurable(sequence);
+    }
+
+    boolean isSnapshotDue() {
+        return snapshotEvery > 0 && !snapshotRunning.get() && journal.appendedSinceRotation() >= snapshotEvery;
+    }
+
+    /**
+     * Starts a new journal segment and writes songs as its snapshot in the background.
+     * Must be called while the catalog writes are blocked, once every write journaled so far is in songs.
+     * <p>
+     * songs is a live view of the catalog, sorted by id, read after the writes resume : it is not copied
+     * under the catalog lock. Reading it weakly consistently is enough, the snapshot then holds the catalog
+     * at the new segment plus some of the writes that follow, which are journaled in the new segment
+     * and replayed over it at recovery, to the same songs.
+     */
+    void snapshot(Collection<Song> songs) throws IOException {
+        if (!snapshotRunning.compareAndSet(false, true)) {
+            return;
+        }
+        long segment;
+        try {
+            segment = journal.rotate();
+            journal.appendIdBlock(idBlockEnd);
+        } catch (IOException | RuntimeException e) {
+            snapshotRunning.set(false);
+            throw e;
+        }
+        snapshotExecutor.execute(() -> {
+            try {
+                writeSnapshot(segment, new ArrayList<>(songs));
+                deleteCoveredFiles(segment);
+            } catch (IOException e) {
+                log.error("Could not write snapshot {} of the song catalog, the journal is kept", segment, e);
+            } finally {
+                snapshotRunning.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void writeSnapshot(long segment, List<Song> songs) throws IOException {
+        long started = System.nanoTime();
+        Path target = directory.resolve("snapshot-" + segment + ".bin");
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            MappedSongSnapshot.write(channel, songs);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        log.info("Wrote snapshot {} of the song catalog ({} songs) in {} ms",
+                target.getFileName(), songs.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private static ReplayResult replay(Path segment, boolean last, Consumer<Song> put, IntConsumer delete) throws IOException {
+        ReplayResult result = new ReplayResult();
+        long validLength = 0;
+        String tornReason = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 64 * 1024))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] payload;
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        tornReason = "invalid record length " + length;
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    tornReason = "incomplete record";
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                if ((int) crc.getValue() != checksum) {
+                    tornReason = "checksum mismatch";
+                    break;
+                }
+                apply(payload, put, delete, result);
+                validLength += 8 + length;
+            }
+        }
+
+        if (tornReason != null) {
+            if (!last) {
+                throw new IllegalStateException("Corrupt song journal " + segment + " at offset " + validLength + ": " + tornReason);
+            }
+            log.warn("Truncating torn tail of {} at offset {} ({})", segment, validLength, tornReason);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+        }
+        return result;
+    }
+
+    private static void apply(byte[] payload, Consumer<Song> put, IntConsumer delete, ReplayResult result) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = record.readByte();
+        if (op == SongJournal.PUT || op == SongJournal.UNVERSIONED_PUT) {
+            Song song = SongRecordCodec.read(record, op == SongJournal.PUT);
+            put.accept(song);
+            result.maxId = Math.max(result.maxId, song.getId());
+        } else if (op == SongJournal.DELETE) {
+            int id = record.readInt();
+            delete.accept(id);
+            result.maxId = Math.max(result.maxId, id);
+        } else if (op == SongJournal.ID_BLOCK) {
+            result.idBlockEnd = Math.max(result.idBlockEnd, record.readInt());
+        } else {
+            throw new IllegalStateException("Unknown song journal operation " + op);
+        }
+        result.records++;
+    }
+
+    private void deleteCoveredFiles(long segment) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher segmentFile = SEGMENT_FILE.matcher(name);
+                Matcher snapshotFile = SNAPSHOT_FILE.matcher(name);
+                if ((segmentFile.matches() && Long.parseLong(segmentFile.group(1)) < segment)
+                        || (snapshotFile.matches() && Long.parseLong(snapshotFile.group(1)) < segment)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void syncDirectory() {
+        // makes the rename durable, not supported on every platform
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync directory {}", directory, e);
+        }
+    }
+
+    private static final class ReplayResult {
+        private long records;
+        private int maxId;
+        private int idBlockEnd;
+    }
+}
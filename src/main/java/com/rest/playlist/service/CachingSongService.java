@@ -0,0 +1,216 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.lang3.EnumUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * CachingSongService class is the ISongService MeteredSongService delegates to when playlist.cache.enabled is true.
+ * It caches the results of getSongsByCategory and getSongsByArtistName by normalized key
+ * (upper-cased category or artist name) and delegates everything else to SongServiceImpl.
+ * <p>
+ * On a SongChangedEvent only the keys the changed songs match (old or new state) are invalidated :
+ * their category by key, and the cached artist queries contained in their artist name, the only entries visited.
+ * A write makes every artist query in flight uncacheable, the category queries of other categories are kept.
+ */
+@Service
+@ConditionalOnProperty(name = "playlist.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CachingSongService implements ISongService, MeterBinder {
+    private static final int SEGMENTS = 16;
+    private static final String CATEGORY_KEY = "category:";
+    static final String ARTIST_KEY = "artist:";
+
+    private final ISongService delegate;
+    private final SongQueryCache cache;
+
+    @Autowired
+    public CachingSongService(SongServiceImpl delegate,
+                              @Value("${playlist.cache.max-weight:100000}") long maxWeight,
+                              @Value("${playlist.cache.ttl:5m}") Duration ttl) {
+        this(delegate, new SongQueryCache(maxWeight, ttl.toNanos(), SEGMENTS, System::nanoTime, ARTIST_KEY));
+    }
+
+    CachingSongService(ISongService delegate, SongQueryCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<Song> getSongsByCategory(String category) {
+        SongCategory songCategory = EnumUtils.getEnumIgnoreCase(SongCategory.class, category);
+        if (songCategory == null) {
+            return delegate.getSongsByCategory(category);
+        }
+        return cached(CATEGORY_KEY + songCategory.name(), () -> delegate.getSongsByCategory(category));
+    }
+
+    @Override
+    public List<Song> getSongsByArtistName(String artistName) {
+        return cached(ARTIST_KEY + artistName.toUpperCase(Locale.ROOT), () -> delegate.getSongsByArtistName(artistName));
+    }
+
+    @EventListener
+    public void onSongChanged(SongChangedEvent event) {
+        Set<String> categories = new HashSet<>();
+        Set<String> artistNames = new HashSet<>();
+        for (Song song : event.getSongs()) {
+            if (song.getCategory() != null) {
+                categories.add(CATEGORY_KEY + song.getCategory().name());
+            }
+            if (song.getArtistName() != null) {
+                artistNames.add(song.getArtistName().toUpperCase(Locale.ROOT));
+            }
+        }
+        cache.invalidate(categories);
+        if (!artistNames.isEmpty()) {
+            cache.invalidateGroup(ARTIST_KEY, key -> matchesAny(key.substring(ARTIST_KEY.length()), artistNames));
+        }
+    }
+
+    SongQueryCache.Stats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Publishes the cache statistics, read when the metrics are scraped.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("playlist.songs.cache.requests", cache, c -> c.stats().getHits())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("playlist.songs.cache.requests", cache, c -> c.stats().getMisses())
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("playlist.songs.cache.evictions", cache, c -> c.stats().getEvictions())
+                .register(registry);
+        FunctionCounter.builder("playlist.songs.cache.invalidations", cache, c -> c.stats().getInvalidations())
+                .register(registry);
+        Gauge.builder("playlist.songs.cache.size", cache, c -> c.stats().getSize())
+                .register(registry);
+        Gauge.builder("playlist.songs.cache.weight", cache, c -> c.stats().getWeight())
+                .description("Number of cached songs")
+                .register(registry);
+    }
+
+    private List<Song> cached(String key, Supplier<List<Song>> query) {
+        List<Song> songs = cache.get(key);
+        if (songs == null) {
+            long generation = cache.generation(key);
+            songs = Collections.unmodifiableList(query.get());
+            cache.put(key, songs, generation);
+        }
+        return songs;
+    }
+
+    private static boolean matchesAny(String artistQuery, Set<String> artistNames) {
+        for (String artistName : artistNames) {
+            if (artistName.contains(artistQuery)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<Song> getAllSongs() {
+        return delegate.getAllSongs();
+    }
+
+    @Override
+    public SongPage getAllSongs(SongPageRequest pageRequest) {
+        return delegate.getAllSongs(pageRequest);
+    }
+
+    @Override
+    public SongPage getSongsByCategory(String category, SongPageRequest pageRequest) {
+        return delegate.getSongsByCategory(category, pageRequest);
+    }
+
+    @Override
+    public SongPage getSongsByArtistName(String artistName, SongPageRequest pageRequest) {
+        return delegate.getSongsByArtistName(artistName, pageRequest);
+    }
+
+    @Override
+    public List<Song> searchSongs(String query, int limit) {
+        return delegate.searchSongs(query, limit);
+    }
+
+    @Override
+    public Stream<Song> streamSongs(String category) {
+        return delegate.streamSongs(category);
+    }
+
+    @Override
+    public Song getSongById(int id) {
+        return delegate.getSongById(id);
+    }
+
+    @Override
+    public long getSongsVersion(String category) {
+        return delegate.getSongsVersion(category);
+    }
+
+    @Override
+    public SongDelta getSongsDelta(long since, Integer after, int limit) {
+        return delegate.getSongsDelta(since, after, limit);
+    }
+
+    @Override
+    public Song createSong(Song song) {
+        return delegate.createSong(song);
+    }
+
+    @Override
+    public Song updateSong(Song song) {
+        return delegate.updateSong(song);
+    }
+
+    @Override
+    public Song updateSong(Song song, long expectedVersion) {
+        return delegate.updateSong(song, expectedVersion);
+    }
+
+    @Override
+    public void deleteSongById(int id) {
+        delegate.deleteSongById(id);
+    }
+
+    @Override
+    public List<SongBatchResult> createSongs(List<Song> songs) {
+        return delegate.createSongs(songs);
+    }
+
+    @Override
+    public List<SongBatchResult> updateSongs(List<Song> songs) {
+        return delegate.updateSongs(songs);
+    }
+
+    @Override
+    public List<SongBatchResult> deleteSongsById(List<Integer> ids) {
+        return delegate.deleteSongsById(ids);
+    }
+}
@@ -0,0 +1,134 @@
+package com.rest.playlist.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvRecordReader class reads RFC 4180 records one at a time from a Reader :
+ * comma separated fields, optionally double-quoted, "" inside quotes for a quote, line breaks allowed in quotes.
+ * Only the current record is held in memory, and at most maxRecordLength chars of it : the rest of a longer record
+ * is read and dropped, an unterminated quote included.
+ */
+class CsvRecordReader {
+
+    private final Reader reader;
+    private final int maxRecordLength;
+    private long line = 1;
+    private long recordLine;
+    private int lookahead = -2;
+    private boolean tooLong;
+
+    CsvRecordReader(Reader reader, int maxRecordLength) {
+        this.reader = reader;
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    /**
+     * @return the fields of the next non-empty record, or null at the end of the input. When the record is longer
+     * than maxRecordLength, its fields are incomplete and isTooLong is true.
+     */
+    List<String> next() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean empty = true;
+        long length = 0;
+        recordLine = line;
+        tooLong = false;
+
+        int c;
+        while ((c = read()) != -1) {
+            if (++length > maxRecordLength && !tooLong) {
+                // the record is still parsed to find its end, its chars are no longer kept
+                tooLong = true;
+                fields.clear();
+                field.setLength(0);
+            }
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        append(field, '"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    append(field, (char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                empty = false;
+            } else if (c == ',') {
+                if (!tooLong) {
+                    fields.add(field.toString());
+                }
+                field.setLength(0);
+                empty = false;
+            } else if (c == '\r') {
+                // dropped, \n ends the record
+            } else if (c == '\n') {
+                line++;
+                if (!empty || field.length() > 0) {
+                    return end(fields, field);
+                }
+                recordLine = line;
+                length = 0;
+            } else {
+                append(field, (char) c);
+                empty = false;
+            }
+        }
+        if (!empty || field.length() > 0) {
+            return end(fields, field);
+        }
+        return null;
+    }
+
+    private void append(StringBuilder field, char c) {
+        if (!tooLong) {
+            field.append(c);
+        }
+    }
+
+    private List<String> end(List<String> fields, StringBuilder field) {
+        if (!tooLong) {
+            fields.add(field.toString());
+        }
+        return fields;
+    }
+
+    /**
+     * @return whether the last record returned by next was longer than maxRecordLength
+     */
+    boolean isTooLong() {
+        return tooLong;
+    }
+
+    /**
+     * @return line number on which the last record returned by next started
+     */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        if (lookahead != -2) {
+            int c = lookahead;
+            lookahead = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (lookahead == -2) {
+            lookahead = reader.read();
+        }
+        return lookahead;
+    }
+}
@@ -1,16 +1,32 @@
 package com.rest.playlist.service;
 
 import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ISongService {
 
     List<Song> getAllSongs();
+    SongPage getAllSongs(SongPageRequest pageRequest);
     List<Song> getSongsByCategory(String category);
+    SongPage getSongsByCategory(String category, SongPageRequest pageRequest);
     List<Song> getSongsByArtistName(String artistName);
+    SongPage getSongsByArtistName(String artistName, SongPageRequest pageRequest);
+    List<Song> searchSongs(String query, int limit);
+    Stream<Song> streamSongs(String category);
     Song getSongById(int id);
+    long getSongsVersion(String category);
+    SongDelta getSongsDelta(long since, Integer after, int limit);
     Song createSong(Song playlist);
-    void updateSong(Song playlist);
+    Song updateSong(Song playlist);
+    Song updateSong(Song playlist, long expectedVersion);
     void deleteSongById(int id);
+    List<SongBatchResult> createSongs(List<Song> songs);
+    List<SongBatchResult> updateSongs(List<Song> songs);
+    List<SongBatchResult> deleteSongsById(List<Integer> ids);
 }
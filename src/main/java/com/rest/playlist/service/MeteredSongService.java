@@ -0,0 +1,315 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.trace.QueryProbe;
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * MeteredSongService class is the ISongService used by the web layer : it times every call of the CachingSongService
+ * (SongServiceImpl when playlist.cache.enabled is false) in the playlist.songs.service timer, tagged with the method
+ * and the outcome (success or error), and publishes the catalog size and the size of each category as gauges.
+ * <p>
+ * The timers are registered once, a call only reads the clock twice and records into lock-free counters and
+ * histograms. streamSongs is timed until the stream is returned, not while it is consumed.
+ * <p>
+ * Each call is also a span of the request trace when it is sampled (see SongTracer), and a call slower than
+ * playlist.trace.slow-query-threshold (0 : never) is logged with its arguments, its number of results and the
+ * counts the repository recorded (index candidates, rows, ...).
+ */
+@Service
+@Primary
+public class MeteredSongService implements ISongService {
+    static final String TIMER = "playlist.songs.service";
+    static final String CATALOG_SIZE = "playlist.songs.size";
+    static final String CATEGORY_SIZE = "playlist.songs.category.size";
+    static final String RESULTS = "results";
+
+    private static final Logger log = LoggerFactory.getLogger(MeteredSongService.class);
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(10));
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    private final ISongService delegate;
+    private final Clock clock;
+    private final long slowQueryNanos;
+
+    private final Operation getAllSongs;
+    private final Operation getAllSongsPage;
+    private final Operation getSongsByCategory;
+    private final Operation getSongsByCategoryPage;
+    private final Operation getSongsByArtistName;
+    private final Operation getSongsByArtistNamePage;
+    private final Operation searchSongs;
+    private final Operation streamSongs;
+    private final Operation getSongById;
+    private final Operation getSongsVersion;
+    private final Operation getSongsDelta;
+    private final Operation createSong;
+    private final Operation updateSong;
+    private final Operation updateSongExpectedVersion;
+    private final Operation deleteSongById;
+    private final Operation createSongs;
+    private final Operation updateSongs;
+    private final Operation deleteSongsById;
+
+    @Autowired
+    public MeteredSongService(ObjectProvider<CachingSongService> cachingSongService, SongServiceImpl songService,
+                              SongRepository repository, MeterRegistry registry,
+                              @Value("${playlist.trace.slow-query-threshold:500ms}") Duration slowQueryThreshold) {
+        this(delegate(cachingSongService.getIfAvailable(), songService), repository, registry, slowQueryThreshold);
+    }
+
+    MeteredSongService(ISongService delegate, SongRepository repository, MeterRegistry registry, Duration slowQueryThreshold) {
+        this.delegate = delegate;
+        this.clock = registry.config().clock();
+        this.slowQueryNanos = slowQueryThreshold.toNanos();
+        this.getAllSongs = new Operation(registry, "getAllSongs");
+        this.getAllSongsPage = new Operation(registry, "getAllSongsPage");
+        this.getSongsByCategory = new Operation(registry, "getSongsByCategory");
+        this.getSongsByCategoryPage = new Operation(registry, "getSongsByCategoryPage");
+        this.getSongsByArtistName = new Operation(registry, "getSongsByArtistName");
+        this.getSongsByArtistNamePage = new Operation(registry, "getSongsByArtistNamePage");
+        this.searchSongs = new Operation(registry, "searchSongs");
+        this.streamSongs = new Operation(registry, "streamSongs");
+        this.getSongById = new Operation(registry, "getSongById");
+        this.getSongsVersion = new Operation(registry, "getSongsVersion");
+        this.getSongsDelta = new Operation(registry, "getSongsDelta");
+        this.createSong = new Operation(registry, "createSong");
+        this.updateSong = new Operation(registry, "updateSong");
+        this.updateSongExpectedVersion = new Operation(registry, "updateSongExpectedVersion");
+        this.deleteSongById = new Operation(registry, "deleteSongById");
+        this.createSongs = new Operation(registry, "createSongs");
+        this.updateSongs = new Operation(registry, "updateSongs");
+        this.deleteSongsById = new Operation(registry, "deleteSongsById");
+
+        Gauge.builder(CATALOG_SIZE, repository, SongRepository::size)
+                .description("Number of songs in the catalog")
+                .register(registry);
+        for (SongCategory category : SongCategory.values()) {
+            Gauge.builder(CATEGORY_SIZE, repository, songs -> songs.count(category))
+                    .description("Number of songs of the category")
+                    .tag("category", category.name())
+                    .register(registry);
+        }
+    }
+
+    private static ISongService delegate(CachingSongService cachingSongService, SongServiceImpl songService) {
+        return cachingSongService != null ? cachingSongService : songService;
+    }
+
+    @Override
+    public List<Song> getAllSongs() {
+        return timed(getAllSongs, null, null, delegate::getAllSongs);
+    }
+
+    @Override
+    public SongPage getAllSongs(SongPageRequest pageRequest) {
+        return timed(getAllSongsPage, pageRequest, null, () -> delegate.getAllSongs(pageRequest));
+    }
+
+    @Override
+    public List<Song> getSongsByCategory(String category) {
+        return timed(getSongsByCategory, category, null, () -> delegate.getSongsByCategory(category));
+    }
+
+    @Override
+    public SongPage getSongsByCategory(String category, SongPageRequest pageRequest) {
+        return timed(getSongsByCategoryPage, category, pageRequest, () -> delegate.getSongsByCategory(category, pageRequest));
+    }
+
+    @Override
+    public List<Song> getSongsByArtistName(String artistName) {
+        return timed(getSongsByArtistName, artistName, null, () -> delegate.getSongsByArtistName(artistName));
+    }
+
+    @Override
+    public SongPage getSongsByArtistName(String artistName, SongPageRequest pageRequest) {
+        return timed(getSongsByArtistNamePage, artistName, pageRequest, () -> delegate.getSongsByArtistName(artistName, pageRequest));
+    }
+
+    @Override
+    public List<Song> searchSongs(String query, int limit) {
+        return timed(searchSongs, query, limit, () -> delegate.searchSongs(query, limit));
+    }
+
+    @Override
+    public Stream<Song> streamSongs(String category) {
+        return timed(streamSongs, category, null, () -> delegate.streamSongs(category));
+    }
+
+    @Override
+    public Song getSongById(int id) {
+        return timed(getSongById, id, null, () -> delegate.getSongById(id));
+    }
+
+    @Override
+    public long getSongsVersion(String category) {
+        return timed(getSongsVersion, category, null, () -> delegate.getSongsVersion(category));
+    }
+
+    @Override
+    public SongDelta getSongsDelta(long since, Integer after, int limit) {
+        return timed(getSongsDelta, since, limit, () -> delegate.getSongsDelta(since, after, limit));
+    }
+
+    @Override
+    public Song createSong(Song song) {
+        return timed(createSong, song, null, () -> delegate.createSong(song));
+    }
+
+    @Override
+    public Song updateSong(Song song) {
+        return timed(updateSong, song, null, () -> delegate.updateSong(song));
+    }
+
+    @Override
+    public Song updateSong(Song song, long expectedVersion) {
+        return timed(updateSongExpectedVersion, song, expectedVersion, () -> delegate.updateSong(song, expectedVersion));
+    }
+
+    @Override
+    public void deleteSongById(int id) {
+        timed(deleteSongById, id, null, () -> {
+            delegate.deleteSongById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public List<SongBatchResult> createSongs(List<Song> songs) {
+        return timed(createSongs, songs, null, () -> delegate.createSongs(songs));
+    }
+
+    @Override
+    public List<SongBatchResult> updateSongs(List<Song> songs) {
+        return timed(updateSongs, songs, null, () -> delegate.updateSongs(songs));
+    }
+
+    @Override
+    public List<SongBatchResult> deleteSongsById(List<Integer> ids) {
+        return timed(deleteSongsById, ids, null, () -> delegate.deleteSongsById(ids));
+    }
+
+    /**
+     * Calls call in a span named after the method, records its duration and logs it when it is slow,
+     * with first and second, the arguments of the method that identify the query (null when unused).
+     */
+    private <T> T timed(Operation operation, Object first, Object second, Supplier<T> call) {
+        QueryProbe probe = SongTracer.startQuery();
+        long start = clock.monotonicTime();
+        T result = null;
+        boolean success = false;
+        try (Span span = SongTracer.startSpan(operation.spanName)) {
+            result = call.get();
+            success = true;
+            span.attribute(RESULTS, results(result));
+            return result;
+        } finally {
+            long duration = clock.monotonicTime() - start;
+            (success ? operation.success : operation.error).record(duration, TimeUnit.NANOSECONDS);
+            if (slowQueryNanos > 0 && duration >= slowQueryNanos) {
+                logSlowQuery(operation, first, second, duration, success ? results(result) : -1, probe);
+            }
+        }
+    }
+
+    private static void logSlowQuery(Operation operation, Object first, Object second, long durationNanos, int results,
+                                     QueryProbe probe) {
+        StringBuilder arguments = new StringBuilder();
+        if (first != null) {
+            arguments.append(describe(first));
+        }
+        if (second != null) {
+            arguments.append(", ").append(describe(second));
+        }
+        log.warn("Slow query {}({}) took {} ms, {}{}{}", operation.method, arguments,
+                TimeUnit.NANOSECONDS.toMillis(durationNanos), results < 0 ? "failed" : results + " results",
+                probe.isEmpty() ? "" : ", ", probe);
+    }
+
+    private static String describe(Object argument) {
+        if (argument instanceof Song) {
+            Song song = (Song) argument;
+            return "song " + song.getId() + " '" + song.getTitle() + "'";
+        }
+        if (argument instanceof Collection) {
+            return ((Collection<?>) argument).size() + " items";
+        }
+        if (argument instanceof String) {
+            return "'" + argument + "'";
+        }
+        return String.valueOf(argument);
+    }
+
+    /**
+     * @return the number of songs or items in result, 1 for a single value
+     */
+    private static int results(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof SongPage) {
+            return ((SongPage) result).getSongs().size();
+        }
+        if (result instanceof SongDelta) {
+            SongDelta delta = (SongDelta) result;
+            return delta.getSongs().size() + delta.getDeletedIds().size();
+        }
+        return result == null ? 0 : 1;
+    }
+
+    /**
+     * The timers of one method, resolved once so that a call does not look them up in the registry.
+     */
+    private static final class Operation {
+        private final String method;
+        private final String spanName;
+        private final Timer success;
+        private final Timer error;
+
+        private Operation(MeterRegistry registry, String method) {
+            this.method = method;
+            this.spanName = "ISongService." + method;
+            this.success = timer(registry, method, "success");
+            this.error = timer(registry, method, "error");
+        }
+
+        private static Timer timer(MeterRegistry registry, String method, String outcome) {
+            return Timer.builder(TIMER)
+                    .description("Calls of the song service")
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(MIN_EXPECTED)
+                    .maximumExpectedValue(MAX_EXPECTED)
+                    .register(registry);
+        }
+    }
+}
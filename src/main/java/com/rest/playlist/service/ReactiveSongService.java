@@ -0,0 +1,120 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.web.exception.ServiceUnavailableException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * ReactiveSongService class adapts an ISongService to Mono and Flux for the reactive API.
+ * The repository may block (a JDBC query, the fsync of the journal), so every call runs on the given scheduler
+ * and never on the event loop : a handful of event loop threads serve the connections, and a bounded number of
+ * scheduler threads the service calls. When the scheduler queue is full, the call fails with
+ * ServiceUnavailableException (503).
+ * <p>
+ * streamSongs reads the songs one by one as the subscriber requests them, so a slow client holds a cursor
+ * on the songs rather than a list of all of them.
+ */
+public class ReactiveSongService implements AutoCloseable {
+
+    private final ISongService songService;
+    private final Scheduler scheduler;
+
+    public ReactiveSongService(ISongService songService, Scheduler scheduler) {
+        this.songService = songService;
+        this.scheduler = scheduler;
+    }
+
+    public Flux<Song> streamSongs(String category) {
+        return Flux.using(() -> songService.streamSongs(category), Flux::fromStream, Stream::close)
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class, ReactiveSongService::unavailable);
+    }
+
+    public Mono<SongPage> getAllSongs(SongPageRequest pageRequest) {
+        return call(() -> songService.getAllSongs(pageRequest));
+    }
+
+    public Mono<SongPage> getSongsByCategory(String category, SongPageRequest pageRequest) {
+        return call(() -> songService.getSongsByCategory(category, pageRequest));
+    }
+
+    public Mono<List<Song>> getSongsByArtistName(String artistName) {
+        return call(() -> songService.getSongsByArtistName(artistName));
+    }
+
+    public Mono<SongPage> getSongsByArtistName(String artistName, SongPageRequest pageRequest) {
+        return call(() -> songService.getSongsByArtistName(artistName, pageRequest));
+    }
+
+    public Mono<List<Song>> searchSongs(String query, int limit) {
+        return call(() -> songService.searchSongs(query, limit));
+    }
+
+    public Mono<Song> getSongById(int id) {
+        return call(() -> songService.getSongById(id));
+    }
+
+    public Mono<Long> getSongsVersion(String category) {
+        return call(() -> songService.getSongsVersion(category));
+    }
+
+    public Mono<SongDelta> getSongsDelta(long since, Integer after, int limit) {
+        return call(() -> songService.getSongsDelta(since, after, limit));
+    }
+
+    public Mono<Song> createSong(Song song) {
+        return call(() -> songService.createSong(song));
+    }
+
+    public Mono<Song> updateSong(Song song) {
+        return call(() -> songService.updateSong(song));
+    }
+
+    public Mono<Song> updateSong(Song song, long expectedVersion) {
+        return call(() -> songService.updateSong(song, expectedVersion));
+    }
+
+    public Mono<Void> deleteSongById(int id) {
+        return Mono.<Void>fromRunnable(() -> songService.deleteSongById(id))
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class, ReactiveSongService::unavailable);
+    }
+
+    public Mono<List<SongBatchResult>> createSongs(List<Song> songs) {
+        return call(() -> songService.createSongs(songs));
+    }
+
+    public Mono<List<SongBatchResult>> updateSongs(List<Song> songs) {
+        return call(() -> songService.updateSongs(songs));
+    }
+
+    public Mono<List<SongBatchResult>> deleteSongsById(List<Integer> ids) {
+        return call(() -> songService.deleteSongsById(ids));
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+
+    private <T> Mono<T> call(Callable<T> work) {
+        return Mono.fromCallable(work)
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class, ReactiveSongService::unavailable);
+    }
+
+    private static ServiceUnavailableException unavailable(RejectedExecutionException e) {
+        return new ServiceUnavailableException("Too many song requests in progress, retry later");
+    }
+}
@@ -0,0 +1,357 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SongChangeType;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongChangeEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SongChangeFeed class keeps the last capacity song changes in a ring buffer and sends them to the subscribers
+ * of GET /api/songs/changes, so that clients keep a replica of the songs instead of polling them.
+ * <p>
+ * Event ids are epoch-sequence, epoch being the start of the feed. A subscriber without Last-Event-ID, or with one
+ * of a previous run or more than maxLag events old, first gets a RESET : reload the songs, then apply the events
+ * that follow. Events of concurrent writes may reach the ring in another order than the writes, so a client
+ * applies a change only when its version is above the one of the song it holds.
+ * <p>
+ * Each subscription has its own cursor in the ring, and is drained by one sender thread at a time, so a Sink must
+ * not block : it returns false when it can not take an event now. A subscriber whose next event is more than maxLag
+ * events behind, checked before each send, is a slow consumer : with SlowConsumerPolicy.DISCONNECT its sink is
+ * closed, with SlowConsumerPolicy.RESET it is sent a RESET and skips to the latest event.
+ */
+@Service
+public class SongChangeFeed implements AutoCloseable, MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(SongChangeFeed.class);
+
+    private static final int DRAIN_BATCH = 64;
+
+    public enum SlowConsumerPolicy {
+        /** the sink is closed, the client may resume with its Last-Event-ID while it is at most maxLag events old */
+        DISCONNECT,
+        /** the subscriber is sent a RESET and goes on from the latest event */
+        RESET
+    }
+
+    /**
+     * Sink class receives the events of a subscription, from one sender thread at a time. Its methods must not block
+     * on the client connection : the sender threads are shared by all the subscriptions.
+     */
+    public interface Sink {
+        /**
+         * @return false when the sink can not take the event now : it is sent again on the next
+         * Subscription.request()
+         */
+        boolean send(SongChangeEvent event) throws IOException;
+
+        void heartbeat() throws IOException;
+
+        /**
+         * Ends the subscriber connection, called when it is dropped as a slow consumer or the feed is closed.
+         */
+        void close();
+    }
+
+    private final SongChangeEvent[] ring;
+    private final String epoch = Long.toString(System.currentTimeMillis());
+    private final int maxLag;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final ExecutorService sender;
+    private final ScheduledExecutorService heartbeats;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final LongAdder dropped = new LongAdder();
+
+    // written under this
+    private volatile long lastSequence;
+
+    public SongChangeFeed(@Value("${playlist.changes.capacity:10000}") int capacity,
+                          @Value("${playlist.changes.max-lag:1000}") int maxLag,
+                          @Value("${playlist.changes.slow-consumer:disconnect}") SlowConsumerPolicy slowConsumerPolicy,
+                          @Value("${playlist.changes.heartbeat:15s}") Duration heartbeat,
+                          @Value("${playlist.changes.sender-threads:8}") int senderThreads) {
+        this.ring = new SongChangeEvent[capacity];
+        // a cursor at most maxLag events behind the last one is always still in the ring
+        this.maxLag = Math.min(maxLag, capacity);
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        AtomicInteger threads = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, r -> daemon(r, "song-changes-" + threads.incrementAndGet()));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "song-changes-heartbeat"));
+        if (!heartbeat.isZero()) {
+            heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @EventListener
+    public void onSongChanged(SongChangedEvent event) {
+        synchronized (this) {
+            for (SongChange change : event.getChanges()) {
+                long sequence = ++lastSequence;
+                if (change.getBefore() == null) {
+                    ring[index(sequence)] = new SongChangeEvent(eventId(sequence), SongChangeType.CREATED, change.getAfter());
+                } else if (change.getAfter() == null) {
+                    ring[index(sequence)] = new SongChangeEvent(eventId(sequence), SongChangeType.DELETED, change.getBefore());
+                } else {
+                    ring[index(sequence)] = new SongChangeEvent(eventId(sequence), SongChangeType.UPDATED, change.getAfter());
+                }
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Subscribes sink to the events following lastEventId, or to a RESET and the events that follow it
+     * when lastEventId is null or can not be resumed.
+     */
+    public Subscription subscribe(String lastEventId, Sink sink) {
+        Subscription subscription = new Subscription(sink);
+        synchronized (this) {
+            long resumed = resumedSequence(lastEventId);
+            if (resumed < 0) {
+                subscription.cursor = lastSequence;
+                subscription.queue.add(reset());
+            } else {
+                subscription.cursor = resumed;
+            }
+            subscriptions.add(subscription);
+        }
+        subscription.signal();
+        return subscription;
+    }
+
+    public synchronized String lastEventId() {
+        return eventId(lastSequence);
+    }
+
+    public Stats stats() {
+        return new Stats(subscriptions.size(), lastEventId(), dropped.sum());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("playlist.songs.changes.subscribers", subscriptions, Set::size)
+                .register(registry);
+        FunctionCounter.builder("playlist.songs.changes.slow.consumers", dropped, LongAdder::sum)
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        heartbeats.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+            subscription.sink.close();
+        }
+        sender.shutdown();
+    }
+
+    private void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.heartbeatDue = true;
+            subscription.signal();
+        }
+    }
+
+    /**
+     * @return the sequence of lastEventId, or -1 when the events after it are not all in the ring
+     */
+    private long resumedSequence(String lastEventId) {
+        if (lastEventId == null || !lastEventId.startsWith(epoch + "-")) {
+            return -1;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(lastEventId.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (sequence < 0 || sequence > lastSequence || lastSequence - sequence > maxLag) {
+            return -1;
+        }
+        return sequence;
+    }
+
+    /**
+     * Moves the events after cursor to queue, at most max of them.
+     *
+     * @return the new cursor, or -1 when cursor is more than maxLag events behind
+     */
+    private synchronized long fill(Deque<SongChangeEvent> queue, long cursor, int max) {
+        if (lastSequence - cursor > maxLag) {
+            return -1;
+        }
+        long end = Math.min(lastSequence, cursor + max);
+        for (long sequence = cursor + 1; sequence <= end; sequence++) {
+            queue.add(ring[index(sequence)]);
+        }
+        return end;
+    }
+
+    private boolean lagging(long cursor) {
+        return lastSequence - cursor > maxLag;
+    }
+
+    private synchronized long skipToLast(Deque<SongChangeEvent> queue) {
+        queue.clear();
+        queue.add(reset());
+        return lastSequence;
+    }
+
+    private SongChangeEvent reset() {
+        return new SongChangeEvent(eventId(lastSequence), SongChangeType.RESET, null);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Subscription class is the cursor of a sink in the ring. Only the drain running on a sender thread reads
+     * and sends the events, signal schedules it without ever losing a wake-up (same pattern as the reactor queues).
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final Sink sink;
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+
+        // only used by the drain
+        private final Deque<SongChangeEvent> queue = new ArrayDeque<>();
+        private long cursor;
+
+        private Subscription(Sink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Sends the events the sink refused, once it can take them.
+         */
+        public void request() {
+            signal();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+        }
+
+        private void signal() {
+            if (!closed && wip.getAndIncrement() == 0) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    if (!closed) {
+                        deliver();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Song change subscriber gone", e);
+                    close();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() throws IOException {
+            boolean sent = false;
+            while (!closed) {
+                if (queue.isEmpty()) {
+                    long filled = fill(queue, cursor, DRAIN_BATCH);
+                    if (filled < 0) {
+                        if (!slowConsumer()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    cursor = filled;
+                    if (queue.isEmpty()) {
+                        break;
+                    }
+                } else if (queue.peek().getType() != SongChangeType.RESET && lagging(cursor - queue.size())) {
+                    // the events left in queue, e.g. refused by the sink, are already more than maxLag behind
+                    if (!slowConsumer()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!sink.send(queue.peek())) {
+                    return;
+                }
+                queue.poll();
+                sent = true;
+            }
+            if (heartbeatDue) {
+                heartbeatDue = false;
+                if (!sent && !closed) {
+                    sink.heartbeat();
+                }
+            }
+        }
+
+        /**
+         * @return true when the subscription goes on after a RESET, false when it was dropped
+         */
+        private boolean slowConsumer() {
+            dropped.increment();
+            if (slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT) {
+                log.info("Song change subscriber more than {} events behind, disconnected", maxLag);
+                close();
+                sink.close();
+                return false;
+            }
+            cursor = skipToLast(queue);
+            return true;
+        }
+    }
+
+    @Getter
+    public static final class Stats {
+        private final int subscribers;
+        private final String lastEventId;
+        private final long slowConsumers;
+
+        private Stats(int subscribers, String lastEventId, long slowConsumers) {
+            this.subscribers = subscribers;
+            this.lastEventId = lastEventId;
+            this.slowConsumers = slowConsumers;
+        }
+    }
+}
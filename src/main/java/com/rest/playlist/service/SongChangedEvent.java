@@ -0,0 +1,38 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SongChangedEvent class is published by SongServiceImpl once songs were created, updated or deleted,
+ * one SongChange per song, in the order they were saved.
+ */
+@Getter
+public class SongChangedEvent {
+
+    private final List<SongChange> changes;
+
+    public SongChangedEvent(List<SongChange> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * @return every state involved : the new songs and the songs they replaced or that were deleted
+     */
+    public List<Song> getSongs() {
+        List<Song> songs = new ArrayList<>(changes.size() * 2);
+        for (SongChange change : changes) {
+            if (change.getBefore() != null) {
+                songs.add(change.getBefore());
+            }
+            if (change.getAfter() != null) {
+                songs.add(change.getAfter());
+            }
+        }
+        return songs;
+    }
+}
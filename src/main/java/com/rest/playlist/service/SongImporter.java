@@ -0,0 +1,237 @@
+package com.rest.playlist.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rest.playlist.enums.BatchItemStatus;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongImportRejection;
+import com.rest.playlist.model.SongImportReport;
+import com.rest.playlist.web.exception.BadRequestException;
+import org.apache.commons.lang3.EnumUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * SongImporter class imports songs from a CSV or NDJSON stream.
+ * Rows are parsed one at a time and applied in chunks through ISongService.createSongs,
+ * which validates them and rejects duplicates. The next chunk is only read once the previous one
+ * is applied, so memory depends on the chunk size and not on the size of the file.
+ * The chunk size, playlist.import.batch-size, is checked at startup against the largest batch createSongs accepts.
+ * A row, NDJSON line or CSV record, longer than playlist.import.max-row-length chars is rejected as INVALID without
+ * being kept in memory.
+ */
+@Component
+public class SongImporter {
+    private static final Logger log = LoggerFactory.getLogger(SongImporter.class);
+
+    private static final long PROGRESS_INTERVAL = 100_000;
+    private static final String[] CSV_COLUMNS = {"title", "description", "category", "duration", "artistname"};
+
+    private final ISongService songService;
+    private final ObjectReader songReader;
+    private final int batchSize;
+    private final int maxReportedRejections;
+    private final int maxRowLength;
+
+    public SongImporter(ISongService songService,
+                        ObjectMapper objectMapper,
+                        @Value("${playlist.import.batch-size:1000}") int batchSize,
+                        @Value("${playlist.import.max-reported-rejections:100}") int maxReportedRejections,
+                        @Value("${playlist.import.max-row-length:16384}") int maxRowLength) {
+        if (batchSize < 1 || batchSize > SongServiceImpl.MAX_BATCH_SIZE) {
+            // a larger chunk would be rejected as a whole by createSongs
+            throw new IllegalArgumentException("playlist.import.batch-size must be between 1 and "
+                    + SongServiceImpl.MAX_BATCH_SIZE + " but was " + batchSize);
+        }
+        this.songService = songService;
+        this.songReader = objectMapper.readerFor(Song.class);
+        this.batchSize = batchSize;
+        this.maxReportedRejections = maxReportedRejections;
+        this.maxRowLength = maxRowLength;
+    }
+
+    public SongImportReport importNdjson(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        ImportRun run = new ImportRun();
+        long line = 0;
+        StringBuilder row = new StringBuilder();
+        while (readLine(reader, row)) {
+            line++;
+            if (row.length() > maxRowLength) {
+                run.reject(line, BatchItemStatus.INVALID, tooLong());
+                continue;
+            }
+            String text = row.toString();
+            if (text.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                run.add(line, songReader.readValue(text));
+            } catch (JsonProcessingException e) {
+                run.reject(line, BatchItemStatus.INVALID, "invalid JSON: " + e.getOriginalMessage());
+            }
+        }
+        return run.finish();
+    }
+
+    public SongImportReport importCsv(InputStream in) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), maxRowLength);
+        List<String> header = reader.next();
+        if (header == null) {
+            throw new BadRequestException("CSV header is missing");
+        }
+        if (reader.isTooLong()) {
+            throw new BadRequestException("CSV header is longer than " + maxRowLength + " characters");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : CSV_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new BadRequestException("CSV header must contain the columns title, description, category, duration, artistName");
+            }
+        }
+
+        ImportRun run = new ImportRun();
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            long line = reader.getRecordLine();
+            if (reader.isTooLong()) {
+                run.reject(line, BatchItemStatus.INVALID, tooLong());
+                continue;
+            }
+            if (record.size() != header.size()) {
+                run.reject(line, BatchItemStatus.INVALID, "expected " + header.size() + " fields but found " + record.size());
+                continue;
+            }
+            String category = record.get(columns.get("category")).trim();
+            SongCategory songCategory = EnumUtils.getEnumIgnoreCase(SongCategory.class, category);
+            if (songCategory == null) {
+                run.reject(line, BatchItemStatus.INVALID, "Not found Category with value = " + category);
+                continue;
+            }
+            run.add(line, Song.builder()
+                    .title(record.get(columns.get("title")))
+                    .description(record.get(columns.get("description")))
+                    .category(songCategory)
+                    .duration(record.get(columns.get("duration")))
+                    .artistName(record.get(columns.get("artistname")))
+                    .build());
+        }
+        return run.finish();
+    }
+
+    /**
+     * Reads the next line, ended by \n or \r\n, into row, keeping at most maxRowLength + 1 chars of it :
+     * a row longer than maxRowLength is read to its end without growing.
+     *
+     * @return false at the end of the input
+     */
+    private boolean readLine(Reader reader, StringBuilder row) throws IOException {
+        row.setLength(0);
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+        boolean carriageReturn = false;
+        for (; c != -1 && c != '\n'; c = reader.read()) {
+            if (carriageReturn && row.length() <= maxRowLength) {
+                row.append('\r');
+            }
+            carriageReturn = c == '\r';
+            if (!carriageReturn && row.length() <= maxRowLength) {
+                row.append((char) c);
+            }
+        }
+        return true;
+    }
+
+    private String tooLong() {
+        return "row longer than " + maxRowLength + " characters";
+    }
+
+    private class ImportRun {
+        private final List<Song> songs = new ArrayList<>(batchSize);
+        private final List<Long> lines = new ArrayList<>(batchSize);
+        private final List<SongImportRejection> rejections = new ArrayList<>();
+        private long rowsRead;
+        private long created;
+        private long rejected;
+
+        void add(long line, Song song) {
+            rowsRead++;
+            songs.add(song);
+            lines.add(line);
+            if (songs.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void reject(long line, BatchItemStatus status, String message) {
+            rowsRead++;
+            addRejection(line, status, message);
+        }
+
+        private void addRejection(long line, BatchItemStatus status, String message) {
+            rejected++;
+            if (rejections.size() < maxReportedRejections) {
+                rejections.add(SongImportRejection.builder()
+                        .line(line)
+                        .status(status)
+                        .message(message)
+                        .build());
+            }
+        }
+
+        SongImportReport finish() {
+            flush();
+            log.info("Import done: {} rows read, {} songs created, {} rows rejected", rowsRead, created, rejected);
+            return SongImportReport.builder()
+                    .rowsRead(rowsRead)
+                    .created(created)
+                    .rejected(rejected)
+                    .rejections(rejections)
+                    .rejectionsTruncated(rejected > rejections.size())
+                    .build();
+        }
+
+        private void flush() {
+            if (songs.isEmpty()) {
+                return;
+            }
+            long readBefore = rowsRead - songs.size();
+            List<SongBatchResult> results = songService.createSongs(songs);
+            for (SongBatchResult result : results) {
+                if (result.getStatus() == BatchItemStatus.CREATED) {
+                    created++;
+                } else {
+                    addRejection(lines.get(result.getIndex()), result.getStatus(), result.getMessage());
+                }
+            }
+            songs.clear();
+            lines.clear();
+            if (readBefore / PROGRESS_INTERVAL != rowsRead / PROGRESS_INTERVAL) {
+                log.info("Import progress: {} rows read, {} songs created, {} rows rejected", rowsRead, created, rejected);
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.model.Song;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * SongQueryCache class is a segmented LRU cache of query results. Each segment is an access-ordered LinkedHashMap
+ * with its own lock and its share of maxWeight, a result weighing its number of songs plus one.
+ * Entries expire ttlNanos after they were loaded.
+ * <p>
+ * put takes the generation of the key read before the query was run and is ignored when the key was invalidated since,
+ * so that a result loaded before a write can not be cached after the write invalidated its key. The generations are
+ * kept per stripe of GENERATION_STRIPES keys (by hash) : an invalidation only makes the loads of the keys of its
+ * stripes uncacheable, not every load in flight.
+ * <p>
+ * The keys starting with one of the group prefixes given to the constructor are also indexed per segment and share
+ * one generation per group, so that invalidateGroup only visits the cached keys of the group.
+ */
+final class SongQueryCache {
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final Segment[] segments;
+    private final long segmentMaxWeight;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final String[] groups;
+    private final AtomicLongArray generations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    SongQueryCache(long maxWeight, long ttlNanos, int segmentCount, LongSupplier nanoClock, String... groups) {
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(groups.length);
+        }
+        this.groups = groups.clone();
+        // the group generations follow the stripes
+        this.generations = new AtomicLongArray(GENERATION_STRIPES + groups.length);
+        this.segmentMaxWeight = Math.max(1, maxWeight / segmentCount);
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    long generation(String key) {
+        return generations.get(generationIndex(key));
+    }
+
+    List<Song> get(String key) {
+        Segment segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.entries.get(key);
+            if (entry != null && nanoClock.getAsLong() - entry.loadedAt >= ttlNanos) {
+                segment.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.songs;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    void put(String key, List<Song> songs, long loadedGeneration) {
+        long weight = songs.size() + 1L;
+        if (weight > segmentMaxWeight) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            if (generations.get(generationIndex(key)) != loadedGeneration) {
+                return;
+            }
+            segment.remove(key);
+            int group = groupOf(key);
+            segment.entries.put(key, new Entry(songs, weight, nanoClock.getAsLong(), group));
+            segment.weight += weight;
+            if (group >= 0) {
+                segment.groupKeys.get(group).add(key);
+            }
+            Iterator<Map.Entry<String, Entry>> eldest = segment.entries.entrySet().iterator();
+            while (segment.weight > segmentMaxWeight && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                eldest.remove();
+                segment.removed(evicted.getKey(), evicted.getValue());
+                evictions.increment();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entries of keys, cached or not, and makes the results of keys loaded before this call uncacheable.
+     */
+    void invalidate(Collection<String> keys) {
+        for (String key : keys) {
+            generations.incrementAndGet(generationIndex(key));
+            Segment segment = segmentFor(key);
+            segment.lock.lock();
+            try {
+                if (segment.remove(key)) {
+                    invalidations.increment();
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the cached entries of group whose key matches, and makes the results of every key of group loaded
+     * before this call uncacheable. Only the cached keys of group are visited.
+     */
+    void invalidateGroup(String group, Predicate<String> key) {
+        int index = indexOfGroup(group);
+        generations.incrementAndGet(GENERATION_STRIPES + index);
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                Iterator<String> keys = segment.groupKeys.get(index).iterator();
+                while (keys.hasNext()) {
+                    String cached = keys.next();
+                    if (key.test(cached)) {
+                        keys.remove();
+                        segment.weight -= segment.entries.remove(cached).weight;
+                        invalidations.increment();
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    Stats stats() {
+        long weight = 0;
+        long size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                weight += segment.weight;
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(), size, weight);
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[spread(key) % segments.length];
+    }
+
+    private int generationIndex(String key) {
+        int group = groupOf(key);
+        return group >= 0 ? GENERATION_STRIPES + group : spread(key) & (GENERATION_STRIPES - 1);
+    }
+
+    private int groupOf(String key) {
+        for (int i = 0; i < groups.length; i++) {
+            if (key.startsWith(groups[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfGroup(String group) {
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i].equals(group)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cache key group: " + group);
+    }
+
+    private static int spread(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final List<Set<String>> groupKeys;
+        private long weight;
+
+        private Segment(int groups) {
+            this.groupKeys = new ArrayList<>(groups);
+            for (int i = 0; i < groups; i++) {
+                groupKeys.add(new HashSet<>());
+            }
+        }
+
+        private boolean remove(String key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                removed(key, removed);
+            }
+            return removed != null;
+        }
+
+        private void removed(String key, Entry entry) {
+            weight -= entry.weight;
+            if (entry.group >= 0) {
+                groupKeys.get(entry.group).remove(key);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final List<Song> songs;
+        private final long weight;
+        private final long loadedAt;
+        private final int group;
+
+        private Entry(List<Song> songs, long weight, long loadedAt, int group) {
+            this.songs = songs;
+            this.weight = weight;
+            this.loadedAt = loadedAt;
+            this.group = group;
+        }
+    }
+
+    @Getter
+    static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+        private final long size;
+        private final long weight;
+
+        private Stats(long hits, long misses, long evictions, long expirations, long invalidations, long size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongDelta;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SongRevisionIndex class stamps each song change with the next catalog revision and keeps, in revision order,
+ * the last change of every song changed since startup : a delta since a revision reads the changes that follow it,
+ * not the songs. The index starts empty, with its floor at the startup revision, so it never holds the songs
+ * that did not change : a delta since a revision below the floor is a reset, listed from the repository.
+ * <p>
+ * A deleted song leaves a tombstone. Only the maxTombstones last ones are kept, and only the maxChanges last
+ * changes (tombstones included), so that a bulk import does not hold the catalog a second time : the revision
+ * of the last change dropped becomes the floor, the changes since a revision below the floor are not all known.
+ * Revisions start from the clock, in microseconds, so that the revisions of a previous run are below the floor. Changes of concurrent writes may be recorded in another order than the writes,
+ * the change of a song is only replaced by one at a higher version, and never replaces its tombstone.
+ * <p>
+ * The index only sees the writes of this instance : with a database shared by several instances,
+ * a client keeps syncing from the same one.
+ */
+final class SongRevisionIndex {
+
+    private final int maxTombstones;
+    private final int maxChanges;
+    private final NavigableMap<Long, Entry> changes = new TreeMap<>();
+    private final Map<Integer, Long> revisions = new HashMap<>();
+    private final Deque<Long> tombstones = new ArrayDeque<>();
+
+    // guarded by this
+    private long revision;
+    private long floor;
+
+    SongRevisionIndex(int maxTombstones, int maxChanges) {
+        this.maxTombstones = maxTombstones;
+        this.maxChanges = maxChanges;
+        this.revision = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        this.floor = revision;
+    }
+
+    synchronized void record(List<SongChange> songChanges) {
+        for (SongChange change : songChanges) {
+            boolean deleted = change.getAfter() == null;
+            Song song = deleted ? change.getBefore() : change.getAfter();
+            Long previous = revisions.get(song.getId());
+            if (previous != null) {
+                Entry current = changes.get(previous);
+                if (current.deleted || (!deleted && current.song.getVersion() > song.getVersion())) {
+                    continue;
+                }
+                changes.remove(previous);
+            }
+            put(song, deleted);
+        }
+        while (tombstones.size() > maxTombstones) {
+            long dropped = tombstones.poll();
+            revisions.remove(changes.remove(dropped).song.getId());
+            floor = dropped;
+        }
+        while (changes.size() > maxChanges) {
+            Map.Entry<Long, Entry> dropped = changes.pollFirstEntry();
+            if (dropped.getValue().deleted) {
+                tombstones.poll();
+            }
+            revisions.remove(dropped.getValue().song.getId());
+            floor = Math.max(floor, dropped.getKey());
+        }
+    }
+
+    /**
+     * @return the changes after since, at most limit of them, or null when the delta since it is a reset :
+     * since is below the floor or above the current revision
+     */
+    synchronized SongDelta since(long since, int limit) {
+        if (!covers(since)) {
+            return null;
+        }
+        Iterator<Map.Entry<Long, Entry>> following = changes.tailMap(since, false).entrySet().iterator();
+        List<Song> songs = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        long last = since;
+        for (int read = 0; read < limit && following.hasNext(); read++) {
+            Map.Entry<Long, Entry> next = following.next();
+            last = next.getKey();
+            Entry entry = next.getValue();
+            if (entry.deleted) {
+                deletedIds.add(entry.song.getId());
+            } else {
+                songs.add(entry.song);
+            }
+        }
+        boolean more = following.hasNext();
+        return SongDelta.builder()
+                .revision(more ? last : revision)
+                .more(more)
+                .songs(songs)
+                .deletedIds(deletedIds)
+                .build();
+    }
+
+    /**
+     * @return whether every change after since is known
+     */
+    synchronized boolean covers(long since) {
+        return since >= floor && since <= revision;
+    }
+
+    synchronized long revision() {
+        return revision;
+    }
+
+    private void put(Song song, boolean deleted) {
+        long stamped = ++revision;
+        changes.put(stamped, new Entry(song, deleted));
+        revisions.put(song.getId(), stamped);
+        if (deleted) {
+            tombstones.add(stamped);
+        }
+    }
+
+    private static final class Entry {
+        private final Song song;
+        private final boolean deleted;
+
+        private Entry(Song song, boolean deleted) {
+            this.song = song;
+            this.deleted = deleted;
+        }
+    }
+}
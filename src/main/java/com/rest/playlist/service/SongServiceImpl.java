@@ -1,89 +1,418 @@
 package com.rest.playlist.service;
 
+import com.rest.playlist.enums.BatchItemStatus;
 import com.rest.playlist.enums.SongCategory;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.repository.SongRepository;
 import com.rest.playlist.web.exception.AlreadyExistException;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import org.apache.commons.lang3.EnumUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class SongServiceImpl implements ISongService {
     private static final Logger log = LoggerFactory.getLogger(SongServiceImpl.class);
+    private static final int MAX_SEARCH_RESULTS = 100;
 
-    private CopyOnWriteArrayList<Song> mySongs = new SongDataGenerator().getData();
+    static final int MAX_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_MAX_TOMBSTONES = 10_000;
+    private static final int DEFAULT_MAX_CHANGES = 100_000;
+
+    private final SongRepository mySongs;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SongRevisionIndex revisions;
+
+    public SongServiceImpl(SongRepository mySongs, Validator validator, ApplicationEventPublisher eventPublisher) {
+        this(mySongs, validator, eventPublisher, DEFAULT_MAX_TOMBSTONES, DEFAULT_MAX_CHANGES);
+    }
+
+    @Autowired
+    public SongServiceImpl(SongRepository mySongs, Validator validator, ApplicationEventPublisher eventPublisher,
+                           @Value("${playlist.delta.max-tombstones:10000}") int maxTombstones,
+                           @Value("${playlist.delta.max-changes:100000}") int maxChanges) {
+        this.mySongs = mySongs;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.revisions = new SongRevisionIndex(maxTombstones, maxChanges);
+        if (!mySongs.isPersistent() && mySongs.size() == 0) {
+            this.mySongs.saveAll(new SongDataGenerator().getData());
+        }
+    }
 
     @Override
     public List<Song> getAllSongs() {
-        return mySongs;
+        return mySongs.findAll();
+    }
+
+    @Override
+    public SongPage getAllSongs(SongPageRequest pageRequest) {
+        verifyPageRequest(pageRequest);
+        return mySongs.findAll(pageRequest);
     }
 
     @Override
     public List<Song> getSongsByCategory(String category) {
-        SongCategory songCategory = EnumUtils.getEnumIgnoreCase(SongCategory.class, category);
-        if (songCategory == null) {
-            throw new ResourceNotFoundException("Not found Category with value = " + category);
-        }
+        return mySongs.findByCategory(toCategory(category));
+    }
 
-        return mySongs.stream().filter(s -> s.getCategory() == songCategory).collect(Collectors.toList());
+    @Override
+    public SongPage getSongsByCategory(String category, SongPageRequest pageRequest) {
+        SongCategory songCategory = toCategory(category);
+        verifyPageRequest(pageRequest);
+        return mySongs.findByCategory(songCategory, pageRequest);
     }
 
     @Override
     public List<Song> getSongsByArtistName(String name) {
-        return mySongs.stream()
-                .filter(s -> s.getArtistName().toUpperCase().contains(name.toUpperCase()))
-                .collect(Collectors.toList());
+        return mySongs.findByArtistName(name);
+    }
+
+    @Override
+    public SongPage getSongsByArtistName(String name, SongPageRequest pageRequest) {
+        verifyPageRequest(pageRequest);
+        return mySongs.findByArtistName(name, pageRequest);
+    }
+
+    @Override
+    public List<Song> searchSongs(String query, int limit) {
+        return mySongs.search(query, Math.min(Math.max(limit, 1), MAX_SEARCH_RESULTS));
+    }
+
+    @Override
+    public Stream<Song> streamSongs(String category) {
+        return mySongs.stream(category == null ? null : toCategory(category));
     }
 
     @Override
     public Song getSongById(int id) {
-        return mySongs.stream()
-                .filter(p -> id == p.getId())
-                .findAny()
-                .orElseThrow(() -> new ResourceNotFoundException("Not found Song with id = " + id));
+        Song song = mySongs.findById(id);
+        if (song == null) {
+            throw new ResourceNotFoundException("Not found Song with id = " + id);
+        }
+        return song;
+    }
+
+    @Override
+    public long getSongsVersion(String category) {
+        return mySongs.version(category == null ? null : toCategory(category));
+    }
+
+    /**
+     * The changes after since come from the SongRevisionIndex. A reset lists the songs of the repository in id order
+     * from the revision it started at, after being the cursor of its previous page : the changes made while
+     * the client lists them come with the deltas that follow.
+     */
+    @Override
+    public SongDelta getSongsDelta(long since, Integer after, int limit) {
+        if (limit < 1 || limit > SongPageRequest.MAX_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + SongPageRequest.MAX_SIZE);
+        }
+        if (after != null && revisions.covers(since)) {
+            return resetPage(since, after, false, limit);
+        }
+        if (after == null) {
+            SongDelta delta = revisions.since(since, limit);
+            if (delta != null) {
+                return delta;
+            }
+        }
+        return resetPage(revisions.revision(), null, true, limit);
     }
 
+    /**
+     * The repository gives the song its id : an id sent by the client is ignored.
+     */
     @Override
     public Song createSong(Song song) {
-        verifyIfSongExist(song);
-        mySongs.add(song);
-        return song;
+        SongChange change = save(withoutId(song), 0);
+        if (change == null) {
+            throw new AlreadyExistException("Song Already Exists.");
+        }
+        publishChanges(Collections.singletonList(change));
+        return change.getAfter();
     }
 
+    /**
+     * Replaces the song whatever its version : the save is retried when another update got in
+     * between reading the current version and swapping the new song in.
+     */
     @Override
-    public void updateSong(Song song) {
-        verifyIfSongExist(song);
+    public Song updateSong(Song song) {
+        while (true) {
+            Song current = getSongById(song.getId());
+            SongChange change = save(song, current.getVersion());
+            if (change != null) {
+                publishChanges(Collections.singletonList(change));
+                return change.getAfter();
+            }
+        }
+    }
 
-        Song foundedSong = getSongById(song.getId());
-        foundedSong.setTitle(song.getTitle());
-        foundedSong.setDescription(song.getDescription());
-        foundedSong.setCategory(song.getCategory());
-        foundedSong.setDuration(song.getDuration());
-        foundedSong.setArtistName(song.getArtistName());
+    @Override
+    public Song updateSong(Song song, long expectedVersion) {
+        getSongById(song.getId());
+        SongChange change = save(song, expectedVersion);
+        if (change == null) {
+            Song current = getSongById(song.getId());
+            throw new PreconditionFailedException("Song with id = " + song.getId() + " is at version "
+                    + current.getVersion() + ", not " + expectedVersion);
+        }
+        publishChanges(Collections.singletonList(change));
+        return change.getAfter();
     }
 
     @Override
     public void deleteSongById(int id) {
-        Song foundedSong = getSongById(id);
-        mySongs.remove(foundedSong);
-    }
-
-    private void verifyIfSongExist(Song song) {
-        Song searchedSong = mySongs.stream()
-                .filter(s -> StringUtils.equals(s.getTitle(), song.getTitle()) &&
-                        s.getCategory() == song.getCategory() && (s.getId() != song.getId())
-                )
-                .findAny()
-                .orElse(null);
-        if (searchedSong != null) {
+        Song removed = mySongs.remove(id);
+        if (removed == null) {
+            throw new ResourceNotFoundException("Not found Song with id = " + id);
+        }
+        publishChanges(Collections.singletonList(new SongChange(removed, null)));
+    }
+
+    /**
+     * As createSong, the songs get their ids from the repository, whatever id they were sent with.
+     */
+    @Override
+    public List<SongBatchResult> createSongs(List<Song> songs) {
+        verifyBatchSize(songs);
+        List<SongBatchResult> results = new ArrayList<>(songs.size());
+        List<Song> accepted = new ArrayList<>(songs.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            SongBatchResult rejected = verifyBatchItem(i, song);
+            if (rejected != null) {
+                results.add(rejected);
+                continue;
+            }
+            accepted.add(withoutId(song));
+            acceptedIndexes.add(i);
+            results.add(batchResult(i, null, BatchItemStatus.CREATED, null));
+        }
+        saveAccepted(accepted, Collections.nCopies(accepted.size(), SongRepository.ANY_VERSION), acceptedIndexes, results);
+        return results;
+    }
+
+    /**
+     * Each song is saved only if it is still at the version read when it was checked : a song deleted or updated
+     * meanwhile is reported NOT_FOUND or CONFLICT, instead of being recreated or overwritten.
+     */
+    @Override
+    public List<SongBatchResult> updateSongs(List<Song> songs) {
+        verifyBatchSize(songs);
+        List<SongBatchResult> results = new ArrayList<>(songs.size());
+        List<Song> accepted = new ArrayList<>(songs.size());
+        List<Long> expectedVersions = new ArrayList<>(songs.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(songs.size());
+        Set<Integer> batchIds = new HashSet<>();
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            SongBatchResult rejected = verifyBatchItem(i, song);
+            if (rejected != null) {
+                results.add(rejected);
+                continue;
+            }
+            Song current = mySongs.findById(song.getId());
+            if (current == null) {
+                results.add(batchResult(i, song.getId(), BatchItemStatus.NOT_FOUND, "Not found Song with id = " + song.getId()));
+                continue;
+            }
+            if (!batchIds.add(song.getId())) {
+                results.add(batchResult(i, song.getId(), BatchItemStatus.CONFLICT, "Song updated twice in the same batch."));
+                continue;
+            }
+            accepted.add(song);
+            expectedVersions.add(current.getVersion());
+            acceptedIndexes.add(i);
+            results.add(batchResult(i, song.getId(), BatchItemStatus.UPDATED, null));
+        }
+        saveAccepted(accepted, expectedVersions, acceptedIndexes, results);
+        return results;
+    }
+
+    @Override
+    public List<SongBatchResult> deleteSongsById(List<Integer> ids) {
+        verifyBatchSize(ids);
+        List<Song> removed = mySongs.removeAll(ids);
+        List<SongChange> changes = new ArrayList<>(removed.size());
+        for (Song song : removed) {
+            if (song != null) {
+                changes.add(new SongChange(song, null));
+            }
+        }
+        publishChanges(changes);
+        List<SongBatchResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            if (removed.get(i) != null) {
+                results.add(batchResult(i, ids.get(i), BatchItemStatus.DELETED, null));
+            } else {
+                results.add(batchResult(i, ids.get(i), BatchItemStatus.NOT_FOUND, "Not found Song with id = " + ids.get(i)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The repository reserves the (title, category) key of each song as it writes it, so two concurrent writes
+     * of the same key can not both succeed.
+     */
+    private SongChange save(Song song, long expectedVersion) {
+        try {
+            return mySongs.save(song, expectedVersion);
+        } catch (DuplicateKeyException e) {
             throw new AlreadyExistException("Song Already Exists.");
         }
     }
+
+    /**
+     * Saves the accepted songs at their expected versions, giving their result the id they were stored with,
+     * or turning it into the reason they were not saved.
+     */
+    private void saveAccepted(List<Song> accepted, List<Long> expectedVersions, List<Integer> acceptedIndexes,
+                              List<SongBatchResult> results) {
+        List<SongChange> changes = mySongs.saveAll(accepted, expectedVersions);
+        for (int i = 0; i < changes.size(); i++) {
+            int index = acceptedIndexes.get(i);
+            SongChange change = changes.get(i);
+            if (change == null) {
+                results.set(index, notSaved(index, accepted.get(i), expectedVersions.get(i)));
+            } else {
+                results.set(index, batchResult(index, change.getAfter().getId(), results.get(index).getStatus(), null));
+            }
+        }
+        publishChanges(changes);
+    }
+
+    /**
+     * @return the result of a song the repository did not save : deleted or updated since it was checked,
+     * or its title and category are used by another song
+     */
+    private SongBatchResult notSaved(int index, Song song, long expectedVersion) {
+        if (expectedVersion != SongRepository.ANY_VERSION) {
+            Song current = mySongs.findById(song.getId());
+            if (current == null) {
+                return batchResult(index, song.getId(), BatchItemStatus.NOT_FOUND, "Not found Song with id = " + song.getId());
+            }
+            if (current.getVersion() != expectedVersion) {
+                return batchResult(index, song.getId(), BatchItemStatus.CONFLICT, "Song with id = " + song.getId()
+                        + " was updated concurrently.");
+            }
+        }
+        return batchResult(index, song.getId(), BatchItemStatus.CONFLICT, "Song Already Exists.");
+    }
+
+    /**
+     * Stamps the changes with their catalog revision, then publishes them.
+     */
+    private void publishChanges(List<SongChange> changes) {
+        List<SongChange> changed = new ArrayList<>(changes.size());
+        for (SongChange change : changes) {
+            if (change != null) {
+                changed.add(change);
+            }
+        }
+        if (!changed.isEmpty()) {
+            revisions.record(changed);
+            eventPublisher.publishEvent(new SongChangedEvent(changed));
+        }
+    }
+
+    private SongDelta resetPage(long revision, Integer after, boolean reset, int limit) {
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setAfter(after);
+        pageRequest.setSize(limit);
+        SongPage page = mySongs.findAll(pageRequest);
+        return SongDelta.builder()
+                .revision(revision)
+                .reset(reset)
+                .more(page.getNextCursor() != null)
+                .songs(page.getSongs())
+                .deletedIds(Collections.emptyList())
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+
+    private static Song withoutId(Song song) {
+        return song.getId() == 0 ? song : song.toBuilder().id(0).build();
+    }
+
+    private SongBatchResult verifyBatchItem(int index, Song song) {
+        if (song == null) {
+            return batchResult(index, null, BatchItemStatus.INVALID, "song must not be null");
+        }
+        Set<ConstraintViolation<Song>> violations = validator.validate(song);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+            return batchResult(index, song.getId(), BatchItemStatus.INVALID, message);
+        }
+        return null;
+    }
+
+    private static SongBatchResult batchResult(int index, Integer id, BatchItemStatus status, String message) {
+        return SongBatchResult.builder()
+                .index(index)
+                // 0 is the id of a song that was not created
+                .id(id == null || id == 0 ? null : id)
+                .status(status)
+                .message(message)
+                .build();
+    }
+
+    private void verifyBatchSize(List<?> items) {
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("batch must not contain more than " + MAX_BATCH_SIZE + " items");
+        }
+    }
+
+    private SongCategory toCategory(String category) {
+        SongCategory songCategory = EnumUtils.getEnumIgnoreCase(SongCategory.class, category);
+        if (songCategory == null) {
+            throw new ResourceNotFoundException("Not found Category with value = " + category);
+        }
+        return songCategory;
+    }
+
+    private void verifyPageRequest(SongPageRequest pageRequest) {
+        if (pageRequest.getPage() != null && pageRequest.getPage() < 0) {
+            throw new BadRequestException("page must be positive or zero");
+        }
+        if (pageRequest.pageSize() < 1 || pageRequest.pageSize() > SongPageRequest.MAX_SIZE) {
+            throw new BadRequestException("size must be between 1 and " + SongPageRequest.MAX_SIZE);
+        }
+        if (pageRequest.getPage() != null && pageRequest.getAfter() != null) {
+            throw new BadRequestException("page and after can not be used together");
+        }
+        if (pageRequest.getDirection() != null && !"asc".equalsIgnoreCase(pageRequest.getDirection())
+                && !pageRequest.isDescending()) {
+            throw new BadRequestException("direction must be asc or desc");
+        }
+    }
 }
@@ -0,0 +1,185 @@
+package com.rest.playlist.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OtlpFileSpanExporter class appends each trace to a file as one line of OTLP/JSON (an ExportTraceServiceRequest),
+ * the format of the OpenTelemetry Collector file exporter, which its otlpjsonfile receiver reads back.
+ * <p>
+ * Traces are queued and written by a daemon thread : export never blocks, a trace is dropped when maxQueued
+ * traces are already waiting. Once the file would grow beyond maxFileSize bytes, it is renamed to file.1,
+ * replacing the previous one, and a new file is started : the traces take at most twice maxFileSize on disk.
+ */
+public final class OtlpFileSpanExporter implements SpanExporter, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(OtlpFileSpanExporter.class);
+
+    private static final int SPAN_KIND_INTERNAL = 1;
+    private static final int SPAN_KIND_SERVER = 2;
+    private static final String SCOPE = "com.rest.playlist";
+    private static final long POLL_MILLIS = 200;
+
+    private final Path file;
+    private final long maxFileSize;
+    private final String serviceName;
+    private final BlockingQueue<List<Span>> queue;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // only used by the writer thread
+    private long fileSize;
+
+    public OtlpFileSpanExporter(Path file, long maxFileSize, String serviceName, int maxQueued) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.serviceName = serviceName;
+        this.queue = new ArrayBlockingQueue<>(maxQueued);
+        this.writer = new Thread(this::write, "trace-exporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void export(List<Span> spans) {
+        if (closed || !queue.offer(spans)) {
+            dropped.increment();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the tracing if it exports to this exporter, writes the traces still queued and stops the writer thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        SongTracer.reset(this);
+        closed = true;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void write() {
+        Writer out = null;
+        try {
+            while (!closed) {
+                List<Span> spans = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (spans != null) {
+                    out = write(out, spans);
+                }
+                if (out != null && queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+            // closed : write what is left
+            for (List<Span> spans = queue.poll(); spans != null; spans = queue.poll()) {
+                out = write(out, spans);
+            }
+        } catch (IOException e) {
+            log.error("Can not write traces to {}, tracing stopped", file, e);
+            closed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * @return out, opened on the first trace and reopened on a new file when it is rotated
+     */
+    private Writer write(Writer out, List<Span> spans) throws IOException {
+        String line = objectMapper.writeValueAsString(request(spans)) + '\n';
+        long lineSize = line.getBytes(StandardCharsets.UTF_8).length;
+        Writer target = out == null ? open() : out;
+        if (fileSize > 0 && fileSize + lineSize > maxFileSize) {
+            target.close();
+            Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            target = open();
+        }
+        target.write(line);
+        fileSize += lineSize;
+        return target;
+    }
+
+    private Writer open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        fileSize = Files.exists(file) ? Files.size(file) : 0;
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void closeQuietly(Writer out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Can not close the trace file", e);
+            }
+        }
+    }
+
+    /**
+     * @return the ExportTraceServiceRequest of one trace
+     */
+    ObjectNode request(List<Span> spans) {
+        ObjectNode request = objectMapper.createObjectNode();
+        ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+        attribute(resourceSpans.putObject("resource").putArray("attributes"), "service.name", serviceName);
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", SCOPE);
+        ArrayNode otlpSpans = scopeSpans.putArray("spans");
+        for (Span span : spans) {
+            ObjectNode otlpSpan = otlpSpans.addObject()
+                    .put("traceId", span.getTraceId())
+                    .put("spanId", String.format("%016x", span.getSpanId()))
+                    .put("parentSpanId", span.getParent() == null ? "" : String.format("%016x", span.getParent().getSpanId()))
+                    .put("name", span.getName())
+                    .put("kind", span.getParent() == null ? SPAN_KIND_SERVER : SPAN_KIND_INTERNAL)
+                    .put("startTimeUnixNano", Long.toString(span.getStartEpochNanos()))
+                    .put("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+            ArrayNode attributes = otlpSpan.putArray("attributes");
+            synchronized (span.getAttributes()) {
+                for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+                    attribute(attributes, attribute.getKey(), attribute.getValue());
+                }
+            }
+        }
+        return request;
+    }
+
+    private static void attribute(ArrayNode attributes, String key, Object value) {
+        ObjectNode attribute = attributes.addObject().put("key", key);
+        ObjectNode otlpValue = attribute.putObject("value");
+        if (value instanceof Long || value instanceof Integer) {
+            otlpValue.put("intValue", value.toString());
+        } else if (value instanceof Double) {
+            otlpValue.put("doubleValue", (Double) value);
+        } else if (value instanceof Boolean) {
+            otlpValue.put("boolValue", (Boolean) value);
+        } else {
+            otlpValue.put("stringValue", String.valueOf(value));
+        }
+    }
+}
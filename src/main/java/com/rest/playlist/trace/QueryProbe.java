@@ -0,0 +1,65 @@
+package com.rest.playlist.trace;
+
+/**
+ * QueryProbe class holds the counts recorded with SongTracer.count during the current service call of a thread,
+ * sampled or not, for the slow-query log. It is reused by the calls of the thread and keeps at most MAX_COUNTS counts.
+ */
+public final class QueryProbe {
+    private static final int MAX_COUNTS = 8;
+
+    private final String[] keys = new String[MAX_COUNTS];
+    private final long[] values = new long[MAX_COUNTS];
+    private int size;
+
+    QueryProbe() {
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void add(String key, long value) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                values[i] += value;
+                return;
+            }
+        }
+        if (size < MAX_COUNTS) {
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    /**
+     * @return the count of key, -1 when it was not recorded
+     */
+    public long get(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return key=value pairs separated by commas
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(keys[i]).append('=').append(values[i]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.rest.playlist.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SongTracer class is the entry point of the request tracing : startTrace starts the root span of a request,
+ * sampled with the configured rate, startSpan a child of the span current on the thread. Both return Span.NOOP
+ * when the request is not sampled, so that tracing costs a thread local read on the requests that are not.
+ * <p>
+ * The current span is held by the thread : work handed to another thread carries it with current and resume,
+ * like RequestContextHolder. count records a count (candidates, rows, ...) on the current span and, sampled or not,
+ * in the QueryProbe of the thread that the slow-query log of MeteredSongService reads.
+ */
+public final class SongTracer {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<QueryProbe> PROBE = ThreadLocal.withInitial(QueryProbe::new);
+
+    private static volatile double sampleRate;
+    private static volatile SpanExporter exporter = SpanExporter.NONE;
+
+    private SongTracer() {
+    }
+
+    /**
+     * @param sampleRate share of the requests traced, from 0 (none) to 1 (all)
+     */
+    public static synchronized void configure(double sampleRate, SpanExporter exporter) {
+        SongTracer.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        SongTracer.exporter = exporter;
+    }
+
+    /**
+     * Stops tracing if exporter is still the configured one.
+     */
+    public static synchronized void reset(SpanExporter exporter) {
+        if (SongTracer.exporter == exporter) {
+            configure(0, SpanExporter.NONE);
+        }
+    }
+
+    /**
+     * Starts the root span of a request when it is sampled, and makes it current.
+     */
+    public static Span startTrace(String name) {
+        double rate = sampleRate;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (rate <= 0 || (rate < 1 && random.nextDouble() >= rate)) {
+            return Span.NOOP;
+        }
+        Trace trace = new Trace(random.nextLong(), random.nextLong(), exporter);
+        return start(trace, null, name);
+    }
+
+    /**
+     * Starts a child of the current span and makes it current, NOOP when there is no current span.
+     */
+    public static Span startSpan(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        return start(parent.getTrace(), parent, name);
+    }
+
+    /**
+     * @return the current span, NOOP when there is none
+     */
+    public static Span current() {
+        Span span = CURRENT.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    /**
+     * Makes span (from current on another thread) current on this thread.
+     *
+     * @return the span current before, to give back to restore
+     */
+    public static Span resume(Span span) {
+        Span previous = CURRENT.get();
+        restore(span.isSampled() ? span : null);
+        return previous;
+    }
+
+    /**
+     * Makes the span current before span current again without ending span, when its request goes on on
+     * another thread.
+     */
+    public static void suspend(Span span) {
+        if (span.isSampled()) {
+            restore(span.getPrevious());
+        }
+    }
+
+    public static void restore(Span previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Adds value to the key count of the current span and of the QueryProbe of the thread.
+     */
+    public static void count(String key, long value) {
+        PROBE.get().add(key, value);
+        Span span = CURRENT.get();
+        if (span != null) {
+            Object current = span.getAttributes().get(key);
+            span.attribute(key, current instanceof Long ? (Long) current + value : value);
+        }
+    }
+
+    /**
+     * Clears the counts of the thread, called when a service call starts.
+     *
+     * @return the QueryProbe of the thread
+     */
+    public static QueryProbe startQuery() {
+        QueryProbe probe = PROBE.get();
+        probe.reset();
+        return probe;
+    }
+
+    private static Span start(Trace trace, Span parent, String name) {
+        long spanId;
+        do {
+            spanId = ThreadLocalRandom.current().nextLong();
+        } while (spanId == 0);
+        Span span = new Span(trace, parent, CURRENT.get(), spanId, name);
+        CURRENT.set(span);
+        return span;
+    }
+}
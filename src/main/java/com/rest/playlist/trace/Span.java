@@ -0,0 +1,99 @@
+package com.rest.playlist.trace;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Span class is one timed operation of a sampled trace : a request, a service call or a phase of it.
+ * Spans are started with SongTracer and closed on the thread that started them (try-with-resources),
+ * closing a span makes the span that was current before it current again.
+ * Requests that are not sampled only see NOOP, which records nothing.
+ */
+@Getter
+public final class Span implements AutoCloseable {
+    static final Span NOOP = new Span();
+
+    @Getter(AccessLevel.PACKAGE)
+    private final Trace trace;
+    private final Span parent;
+    private final long spanId;
+    private final long startEpochNanos;
+    private final Map<String, Object> attributes;
+    private volatile String name;
+    private volatile long endEpochNanos;
+
+    // the span current on the thread when this one was started, current again once it is closed
+    @Getter(AccessLevel.PACKAGE)
+    private final Span previous;
+
+    private Span() {
+        this.trace = null;
+        this.parent = null;
+        this.spanId = 0;
+        this.startEpochNanos = 0;
+        this.attributes = Collections.emptyMap();
+        this.previous = null;
+    }
+
+    Span(Trace trace, Span parent, Span previous, long spanId, String name) {
+        this.trace = trace;
+        this.parent = parent;
+        this.previous = previous;
+        this.spanId = spanId;
+        this.name = name;
+        this.startEpochNanos = trace.epochNanos(System.nanoTime());
+        this.attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+
+    /**
+     * @return false for NOOP, the span of the requests that are not sampled
+     */
+    public boolean isSampled() {
+        return trace != null;
+    }
+
+    public Span attribute(String key, Object value) {
+        if (trace != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    /**
+     * Renames the span, for example once the route of a request is known.
+     */
+    public Span rename(String name) {
+        if (trace != null) {
+            this.name = name;
+        }
+        return this;
+    }
+
+    /**
+     * @return the trace id, 32 hexadecimal digits
+     */
+    public String getTraceId() {
+        return trace == null ? "" : String.format("%016x%016x", trace.getTraceIdHigh(), trace.getTraceIdLow());
+    }
+
+    public long getDurationNanos() {
+        return endEpochNanos - startEpochNanos;
+    }
+
+    /**
+     * Ends the span and, when it is the root span, exports the trace.
+     */
+    @Override
+    public void close() {
+        if (trace == null || endEpochNanos != 0) {
+            return;
+        }
+        endEpochNanos = trace.epochNanos(System.nanoTime());
+        SongTracer.restore(previous);
+        trace.finished(this);
+    }
+}
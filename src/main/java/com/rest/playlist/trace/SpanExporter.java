@@ -0,0 +1,17 @@
+package com.rest.playlist.trace;
+
+import java.util.List;
+
+/**
+ * SpanExporter interface receives the spans of each sampled trace once its root span has ended.
+ * It is called on the request thread and must not block.
+ */
+public interface SpanExporter {
+
+    SpanExporter NONE = spans -> { };
+
+    /**
+     * @param spans the spans of one trace, the root span last
+     */
+    void export(List<Span> spans);
+}
@@ -0,0 +1,44 @@
+package com.rest.playlist.trace;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trace class gathers the spans of one sampled request, which may end on different threads
+ * (async requests), and exports them once the root span has ended.
+ * Span times are the wall clock time of the root span start plus the System.nanoTime elapsed since.
+ */
+@Getter
+final class Trace {
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final SpanExporter exporter;
+    private final long startEpochNanos;
+    private final long startNanos;
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    Trace(long traceIdHigh, long traceIdLow, SpanExporter exporter) {
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.exporter = exporter;
+        this.startNanos = System.nanoTime();
+        this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    long epochNanos(long nanoTime) {
+        return startEpochNanos + (nanoTime - startNanos);
+    }
+
+    void finished(Span span) {
+        spans.add(span);
+        if (span.getParent() == null) {
+            List<Span> all = new ArrayList<>(spans);
+            exporter.export(all);
+        }
+    }
+}
@@ -6,11 +6,14 @@ package com.rest.playlist.web.exception;
  * It's about a custom exception :
  * throwing an exception for resource already exist (conflict) in Spring Boot Service
  * AlreadyExistException is thrown with Http 409
+ * <p>
+ * It is an expected outcome, not a bug : it does not fill in its stack trace, so that a duplicate
+ * (client retries) stays cheap.
  */
 
 public class AlreadyExistException extends RuntimeException {
 
     public AlreadyExistException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,16 @@
+package com.rest.playlist.web.exception;
+
+
+/**
+ * BadRequestException class extends RuntimeException.
+ * It's about a custom exception :
+ * throwing an exception for invalid request parameters (e.g. paging) in Spring Boot Service
+ * BadRequestException is thrown with Http 400
+ */
+
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,39 @@
+package com.rest.playlist.web.exception;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+
+/**
+ * ErrorCounters class counts the errors answered by ServiceExceptionHandler and ReactiveServiceExceptionHandler
+ * in playlist.songs.errors, tagged with the kind of error.
+ */
+@Getter
+final class ErrorCounters {
+    static final String NAME = "playlist.songs.errors";
+
+    private final Counter notFound;
+    private final Counter alreadyExist;
+    private final Counter badRequest;
+    private final Counter preconditionFailed;
+    private final Counter serviceUnavailable;
+    private final Counter validation;
+    private final Counter internal;
+
+    ErrorCounters(MeterRegistry registry) {
+        this.notFound = counter(registry, "not_found");
+        this.alreadyExist = counter(registry, "already_exist");
+        this.badRequest = counter(registry, "bad_request");
+        this.preconditionFailed = counter(registry, "precondition_failed");
+        this.serviceUnavailable = counter(registry, "service_unavailable");
+        this.validation = counter(registry, "validation");
+        this.internal = counter(registry, "internal");
+    }
+
+    private static Counter counter(MeterRegistry registry, String error) {
+        return Counter.builder(NAME)
+                .description("Errors answered by the songs API")
+                .tag("error", error)
+                .register(registry);
+    }
+}
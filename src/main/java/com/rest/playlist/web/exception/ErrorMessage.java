@@ -1,9 +1,22 @@
 package com.rest.playlist.web.exception;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
 import lombok.*;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 
 /**
@@ -23,11 +36,30 @@ import java.util.List;
  *         }
  *     ]
  * }
+ * The body is written field by field (JsonSerializable) with pre-encoded names rather than by the bean serializer,
+ * and the time stamp is formatted once per millisecond : under a burst of 404 the errors share it.
  */
 
 
 @Getter
-class ErrorMessage {
+class ErrorMessage implements JsonSerializable {
+
+    private static final SerializableString STATUS_CODE = new SerializedString("statusCode");
+    private static final SerializableString TIME_STAMP = new SerializedString("timeStamp");
+    private static final SerializableString MESSAGE = new SerializedString("message");
+    private static final SerializableString DESCRIPTION = new SerializedString("description");
+    private static final SerializableString FIELD_ERRORS = new SerializedString("fieldErrors");
+    private static final SerializableString OBJECT_NAME = new SerializedString("objectName");
+    private static final SerializableString FIELD = new SerializedString("field");
+
+    private static final TimeZone UTC = TimeZone.getTimeZone(ZoneOffset.UTC);
+    /**
+     * The format of StdDateFormat, the default of the ObjectMapper, in UTC.
+     */
+    private static final DateTimeFormatter TIME_STAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx").withZone(ZoneOffset.UTC);
+
+    private static volatile FormattedTimeStamp lastTimeStamp = new FormattedTimeStamp(Long.MIN_VALUE, null);
 
     private int statusCode;
     private Date timeStamp;
@@ -43,4 +75,74 @@ class ErrorMessage {
         this.description = description;
         this.fieldErrors = fieldErrors;
     }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(STATUS_CODE);
+        gen.writeNumber(statusCode);
+        gen.writeFieldName(TIME_STAMP);
+        writeTimeStamp(gen, provider);
+        gen.writeFieldName(MESSAGE);
+        gen.writeString(message);
+        gen.writeFieldName(DESCRIPTION);
+        gen.writeString(description);
+        gen.writeFieldName(FIELD_ERRORS);
+        if (fieldErrors == null) {
+            gen.writeNull();
+        } else {
+            gen.writeStartArray();
+            for (FieldError fieldError : fieldErrors) {
+                gen.writeStartObject();
+                gen.writeFieldName(OBJECT_NAME);
+                gen.writeString(fieldError.getObjectName());
+                gen.writeFieldName(FIELD);
+                gen.writeString(fieldError.getField());
+                gen.writeFieldName(MESSAGE);
+                gen.writeString(fieldError.getMessage());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+        serialize(gen, provider);
+    }
+
+    /**
+     * Writes the cached time stamp when the ObjectMapper has the default date settings, else lets it format the date.
+     */
+    private void writeTimeStamp(JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (timeStamp == null) {
+            gen.writeNull();
+            return;
+        }
+        if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                || provider.getConfig().getDateFormat().getClass() != StdDateFormat.class
+                || !UTC.hasSameRules(provider.getTimeZone())) {
+            provider.defaultSerializeDateValue(timeStamp, gen);
+            return;
+        }
+        long millis = timeStamp.getTime();
+        FormattedTimeStamp last = lastTimeStamp;
+        if (last.millis != millis) {
+            last = new FormattedTimeStamp(millis, TIME_STAMP_FORMAT.format(Instant.ofEpochMilli(millis)));
+            lastTimeStamp = last;
+        }
+        gen.writeString(last.text);
+    }
+
+    private static final class FormattedTimeStamp {
+
+        private final long millis;
+        private final String text;
+
+        private FormattedTimeStamp(long millis, String text) {
+            this.millis = millis;
+            this.text = text;
+        }
+    }
 }
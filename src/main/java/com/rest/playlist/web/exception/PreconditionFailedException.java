@@ -0,0 +1,16 @@
+package com.rest.playlist.web.exception;
+
+
+/**
+ * PreconditionFailedException class extends RuntimeException.
+ * It's about a custom exception :
+ * throwing an exception when the version given in If-Match is not the current version of the song
+ * PreconditionFailedException is thrown with Http 412
+ */
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,95 @@
+package com.rest.playlist.web.exception;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebExchange;
+
+import static com.rest.playlist.web.exception.ServiceExceptionHandler.errorMessage;
+
+/**
+ * ReactiveServiceExceptionHandler class is the ServiceExceptionHandler of the reactive API :
+ * the same exceptions answer with the same status and ErrorMessage, WebExchangeBindException
+ * standing for MethodArgumentNotValidException.
+ */
+
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServiceExceptionHandler {
+
+    private final ErrorCounters errors;
+
+    /**
+     * Counts the errors in the MeterRegistry bean, or in the global registry when there is none (web slice tests).
+     */
+    @Autowired
+    public ReactiveServiceExceptionHandler(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    public ReactiveServiceExceptionHandler(MeterRegistry meterRegistry) {
+        this.errors = new ErrorCounters(meterRegistry);
+    }
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<ErrorMessage> handleResourceNotFoundException(ResourceNotFoundException e, ServerWebExchange exchange) {
+        errors.getNotFound().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.NOT_FOUND, e, description(exchange)), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(AlreadyExistException.class)
+    public ResponseEntity<ErrorMessage> handleAlreadyExistException(AlreadyExistException e, ServerWebExchange exchange) {
+        errors.getAlreadyExist().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.CONFLICT, e, description(exchange)), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorMessage> handleBadRequestException(BadRequestException e, ServerWebExchange exchange) {
+        errors.getBadRequest().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.BAD_REQUEST, e, description(exchange)), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorMessage> handlePreconditionFailedException(PreconditionFailedException e, ServerWebExchange exchange) {
+        errors.getPreconditionFailed().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.PRECONDITION_FAILED, e, description(exchange)), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler({ServiceUnavailableException.class, TransientDataAccessException.class})
+    public ResponseEntity<ErrorMessage> handleServiceUnavailableException(RuntimeException e, ServerWebExchange exchange) {
+        errors.getServiceUnavailable().increment();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorMessage(HttpStatus.SERVICE_UNAVAILABLE, e, description(exchange)));
+    }
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ErrorMessage> handleArgumentNotValidException(WebExchangeBindException e, ServerWebExchange exchange) {
+        errors.getValidation().increment();
+        ErrorMessage message = errorMessage(HttpStatus.BAD_REQUEST, e, description(exchange), e.getBindingResult());
+        return new ResponseEntity<>(message, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorMessage> globalException(Exception e, ServerWebExchange exchange) {
+        errors.getInternal().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.INTERNAL_SERVER_ERROR, e, description(exchange)),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    /**
+     * @return the description of WebRequest.getDescription(false) : uri=path
+     */
+    private static String description(ServerWebExchange exchange) {
+        return "uri=" + exchange.getRequest().getPath().value();
+    }
+}
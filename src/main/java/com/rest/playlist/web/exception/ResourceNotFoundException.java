@@ -6,11 +6,14 @@ package com.rest.playlist.web.exception;
  * It's about a custom exception :
  * throwing an exception for resource not found in Spring Boot Service
  * ResourceNotFoundException is thrown with Http 404
+ * <p>
+ * It is an expected outcome, not a bug : it does not fill in its stack trace, so that a lookup of a missing id
+ * (crawlers, retries) costs little more than a hit.
  */
 
 public class ResourceNotFoundException extends RuntimeException {
 
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
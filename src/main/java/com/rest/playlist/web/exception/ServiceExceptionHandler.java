@@ -1,8 +1,15 @@
 package com.rest.playlist.web.exception;
 
 import com.rest.playlist.service.SongServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -17,70 +24,98 @@ import java.util.stream.Collectors;
 
 /**
  * ServiceExceptionHandler class handles specific exceptions :
- * ResoureNotFoundException, AlreadyExistException, MethodArgumentNotValidException
+ * ResoureNotFoundException, AlreadyExistException, BadRequestException, PreconditionFailedException,
+ * ServiceUnavailableException (and TransientDataAccessException, e.g. a catalog still loading), MethodArgumentNotValidException
  * and global Exception in only one place.
  */
 
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ServiceExceptionHandler {
 
     private static final Logger log = LoggerFactory.getLogger(SongServiceImpl.class);
 
+    private final ErrorCounters errors;
+
+    /**
+     * Counts the errors in the MeterRegistry bean, or in the global registry when there is none (web slice tests).
+     */
+    @Autowired
+    public ServiceExceptionHandler(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    public ServiceExceptionHandler(MeterRegistry meterRegistry) {
+        this.errors = new ErrorCounters(meterRegistry);
+    }
 
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<ErrorMessage> handleResourceNotFoundException(ResourceNotFoundException e, WebRequest request) {
-        ErrorMessage message = ErrorMessage.builder()
-                .statusCode(HttpStatus.NOT_FOUND.value())
-                .timeStamp(new Date())
-                .message(e.getMessage())
-                .description(request.getDescription(false))
-                .build();
-
-        return new ResponseEntity<>(message, HttpStatus.NOT_FOUND);
+        errors.getNotFound().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.NOT_FOUND, e, request.getDescription(false)), HttpStatus.NOT_FOUND);
     }
 
     @ExceptionHandler(AlreadyExistException.class)
     public ResponseEntity<ErrorMessage> handleAlreadyExistException(AlreadyExistException e, WebRequest request) {
-        ErrorMessage message = ErrorMessage.builder()
-                .statusCode(HttpStatus.CONFLICT.value())
-                .timeStamp(new Date())
-                .message(e.getMessage())
-                .description(request.getDescription(false))
-                .build();
-        return new ResponseEntity<>(message, HttpStatus.CONFLICT);
+        errors.getAlreadyExist().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.CONFLICT, e, request.getDescription(false)), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorMessage> handleBadRequestException(BadRequestException e, WebRequest request) {
+        errors.getBadRequest().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.BAD_REQUEST, e, request.getDescription(false)), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorMessage> handlePreconditionFailedException(PreconditionFailedException e, WebRequest request) {
+        errors.getPreconditionFailed().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.PRECONDITION_FAILED, e, request.getDescription(false)), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler({ServiceUnavailableException.class, TransientDataAccessException.class})
+    public ResponseEntity<ErrorMessage> handleServiceUnavailableException(RuntimeException e, WebRequest request) {
+        errors.getServiceUnavailable().increment();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorMessage(HttpStatus.SERVICE_UNAVAILABLE, e, request.getDescription(false)));
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public final ResponseEntity<ErrorMessage> handleArgumentNotValidException(MethodArgumentNotValidException e, WebRequest request) {
+        errors.getValidation().increment();
+        ErrorMessage message = errorMessage(HttpStatus.BAD_REQUEST, e, request.getDescription(false), e.getBindingResult());
+        return new ResponseEntity<>(message, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorMessage> globalException(Exception e, WebRequest request) {
+        errors.getInternal().increment();
+        return new ResponseEntity<>(errorMessage(HttpStatus.INTERNAL_SERVER_ERROR, e, request.getDescription(false)),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+    }
 
-        BindingResult result = e.getBindingResult();
-        List<FieldError> fieldErrors = result.getFieldErrors().stream()
+    /**
+     * Builds the error response body, shared with ReactiveServiceExceptionHandler.
+     */
+    static ErrorMessage errorMessage(HttpStatus status, Exception e, String description) {
+        return errorMessage(status, e, description, null);
+    }
+
+    static ErrorMessage errorMessage(HttpStatus status, Exception e, String description, BindingResult result) {
+        List<FieldError> fieldErrors = result == null ? null : result.getFieldErrors().stream()
                 .map(f -> FieldError.builder()
                         .objectName(f.getObjectName())
                         .field(f.getField())
                         .message(f.getCode() + ": " + f.getDefaultMessage())
                         .build())
                 .collect(Collectors.toList());
-
-        ErrorMessage message = ErrorMessage.builder()
-                .statusCode(HttpStatus.BAD_REQUEST.value())
+        return ErrorMessage.builder()
+                .statusCode(status.value())
                 .timeStamp(new Date())
                 .message(e.getMessage())
-                .description(request.getDescription(false))
+                .description(description)
                 .fieldErrors(fieldErrors)
                 .build();
-        return new ResponseEntity<>(message, HttpStatus.BAD_REQUEST);
-    }
-
-    @ExceptionHandler(Exception.class)
-    public ResponseEntity<ErrorMessage> globalException(Exception e, WebRequest request) {
-        ErrorMessage message = ErrorMessage.builder()
-                .statusCode(HttpStatus.INTERNAL_SERVER_ERROR.value())
-                .timeStamp(new Date())
-                .message(e.getMessage())
-                .description(request.getDescription(false))
-                .build();
-
-        return new ResponseEntity<>(message, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 }
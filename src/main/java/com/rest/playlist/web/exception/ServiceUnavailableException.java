@@ -0,0 +1,16 @@
+package com.rest.playlist.web.exception;
+
+
+/**
+ * ServiceUnavailableException class extends RuntimeException.
+ * It's about a custom exception :
+ * throwing an exception when a request can not be queued because too many requests are in progress
+ * ServiceUnavailableException is thrown with Http 503
+ */
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
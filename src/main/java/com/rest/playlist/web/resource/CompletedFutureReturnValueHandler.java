@@ -0,0 +1,94 @@
+package com.rest.playlist.web.resource;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * CompletedFutureReturnValueHandler class handles the CompletableFuture returned by an endpoint when it is already
+ * completed, as the futures of SongRequestExecutor.blocking() are : its value is handled right away, as if the endpoint
+ * had returned it, instead of Spring MVC starting async processing and dispatching the request a second time
+ * through the filter chain to write it. A future that is not completed yet gets the default async handling.
+ */
+public final class CompletedFutureReturnValueHandler implements HandlerMethodReturnValueHandler {
+
+    private final HandlerMethodReturnValueHandlerComposite handlers = new HandlerMethodReturnValueHandlerComposite();
+
+    /**
+     * @param handlers the return value handlers of the RequestMappingHandlerAdapter, which handle the values
+     */
+    public CompletedFutureReturnValueHandler(List<HandlerMethodReturnValueHandler> handlers) {
+        this.handlers.addHandlers(handlers);
+    }
+
+    @Override
+    public boolean supportsReturnType(MethodParameter returnType) {
+        return CompletableFuture.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public void handleReturnValue(Object returnValue, MethodParameter returnType, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest) throws Exception {
+        CompletableFuture<?> future = (CompletableFuture<?>) returnValue;
+        if (future == null || !future.isDone()) {
+            handlers.handleReturnValue(returnValue, returnType, mavContainer, webRequest);
+            return;
+        }
+        Object value;
+        try {
+            value = future.join();
+        } catch (CompletionException e) {
+            // handled by the @ExceptionHandler methods as if the endpoint had thrown it
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        handlers.handleReturnValue(value, new CompletedValueParameter(returnType), mavContainer, webRequest);
+    }
+
+    /**
+     * The return type of the endpoint seen as the type of the future value, e.g. ResponseEntity&lt;List&lt;Song&gt;&gt;
+     * for CompletableFuture&lt;ResponseEntity&lt;List&lt;Song&gt;&gt;&gt;.
+     */
+    private static final class CompletedValueParameter extends MethodParameter {
+        private final Class<?> type;
+        private final Type genericType;
+
+        private CompletedValueParameter(MethodParameter returnType) {
+            super(returnType);
+            ResolvableType valueType = ResolvableType.forMethodParameter(returnType).getGeneric(0);
+            this.type = valueType.toClass();
+            this.genericType = valueType.getType();
+        }
+
+        private CompletedValueParameter(CompletedValueParameter original) {
+            super(original);
+            this.type = original.type;
+            this.genericType = original.genericType;
+        }
+
+        @Override
+        public Class<?> getParameterType() {
+            return type;
+        }
+
+        @Override
+        public Type getGenericParameterType() {
+            return genericType;
+        }
+
+        @Override
+        public CompletedValueParameter clone() {
+            return new CompletedValueParameter(this);
+        }
+    }
+}
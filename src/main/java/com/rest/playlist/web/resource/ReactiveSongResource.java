@@ -0,0 +1,201 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongChangeEvent;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.service.ReactiveSongService;
+import com.rest.playlist.service.SongChangeFeed;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Locale;
+
+import static com.rest.playlist.web.resource.SongChangesResource.LAST_EVENT_ID_HEADER;
+import static com.rest.playlist.web.resource.SongChangesResource.eventData;
+import static com.rest.playlist.web.resource.SongChangesResource.eventName;
+import static com.rest.playlist.web.resource.SongResource.NEXT_CURSOR_HEADER;
+import static com.rest.playlist.web.resource.SongResource.matchedVersion;
+import static com.rest.playlist.web.resource.SongResource.songETag;
+import static com.rest.playlist.web.resource.SongResource.songsETag;
+
+/**
+ * ReactiveSongResource class exposes the songs under /api/songs on WebFlux (spring.main.web-application-type=reactive),
+ * with the requests, responses and errors of SongResource.
+ * Without paging, /api/songs and /api/songs/category/{category} are read from ReactiveSongService.streamSongs :
+ * with Accept: application/x-ndjson, each song is written as soon as it is read.
+ * /api/songs/changes only sends the change events the client requested, the others wait in the SongChangeFeed ring.
+ */
+@RestController
+@RequestMapping("/api/songs")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSongResource {
+
+    final private ReactiveSongService songService;
+    final private SongChangeFeed changeFeed;
+
+    public ReactiveSongResource(ReactiveSongService songService, SongChangeFeed changeFeed) {
+        this.songService = songService;
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<Flux<Song>>> getAllSongs(SongPageRequest pageRequest, ServerWebExchange exchange) {
+        return songService.getSongsVersion(null).flatMap(version -> {
+            if (exchange.checkNotModified(songsETag("catalog", version))) {
+                return Mono.empty();
+            }
+            if (pageRequest.isUnpaged()) {
+                return Mono.just(ResponseEntity.ok(songService.streamSongs(null)));
+            }
+            return songService.getAllSongs(pageRequest).map(page -> pageResponse(page, exchange));
+        });
+    }
+
+    @GetMapping("/category/{category}")
+    public Mono<ResponseEntity<Flux<Song>>> getSongsByCategory(@PathVariable String category, SongPageRequest pageRequest,
+                                                               ServerWebExchange exchange) {
+        return songService.getSongsVersion(category).flatMap(version -> {
+            if (exchange.checkNotModified(songsETag(category.toUpperCase(Locale.ROOT), version))) {
+                return Mono.empty();
+            }
+            if (pageRequest.isUnpaged()) {
+                return Mono.just(ResponseEntity.ok(songService.streamSongs(category)));
+            }
+            return songService.getSongsByCategory(category, pageRequest).map(page -> pageResponse(page, exchange));
+        });
+    }
+
+    @GetMapping("/artist/{artistName}")
+    public Mono<ResponseEntity<Flux<Song>>> getSongsByArtistName(@PathVariable String artistName, SongPageRequest pageRequest,
+                                                                 ServerWebExchange exchange) {
+        if (pageRequest.isUnpaged()) {
+            return songService.getSongsByArtistName(artistName).map(songs -> ResponseEntity.ok(Flux.fromIterable(songs)));
+        }
+        return songService.getSongsByArtistName(artistName, pageRequest).map(page -> pageResponse(page, exchange));
+    }
+
+    @GetMapping("/search")
+    public Mono<ResponseEntity<List<Song>>> searchSongs(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        return songService.searchSongs(q, limit).map(songs -> new ResponseEntity<>(songs, HttpStatus.OK));
+    }
+
+    @GetMapping("/delta")
+    public Mono<SongDelta> getSongsDelta(@RequestParam(defaultValue = "0") long since,
+                                         @RequestParam(required = false) Integer after,
+                                         @RequestParam(defaultValue = "1000") int limit) {
+        return songService.getSongsDelta(since, after, limit);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Song> exportSongs(@RequestParam(required = false) String category) {
+        return songService.streamSongs(category);
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> getChanges(@RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        return Flux.create(sink -> {
+            SongChangeFeed.Subscription subscription = changeFeed.subscribe(lastEventId, new SongChangeFeed.Sink() {
+                @Override
+                public boolean send(SongChangeEvent event) {
+                    if (sink.requestedFromDownstream() <= 0) {
+                        return false;
+                    }
+                    sink.next(ServerSentEvent.builder(eventData(event)).id(event.getId()).event(eventName(event)).build());
+                    return true;
+                }
+
+                @Override
+                public void heartbeat() {
+                    if (sink.requestedFromDownstream() > 0) {
+                        sink.next(ServerSentEvent.builder().comment("keepalive").build());
+                    }
+                }
+
+                @Override
+                public void close() {
+                    sink.complete();
+                }
+            });
+            sink.onRequest(n -> subscription.request());
+            sink.onDispose(subscription::close);
+        });
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Song>> getSongById(@PathVariable int id, ServerWebExchange exchange) {
+        return songService.getSongById(id).flatMap(song -> {
+            if (exchange.checkNotModified(songETag(song))) {
+                return Mono.empty();
+            }
+            return Mono.just(new ResponseEntity<>(song, HttpStatus.OK));
+        });
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Song>> createSong(@Valid @RequestBody Song song) {
+        return songService.createSong(song)
+                .map(addedSong -> ResponseEntity.status(HttpStatus.CREATED).eTag(songETag(addedSong)).body(addedSong));
+    }
+
+    /**
+     * With If-Match, the song is only updated when the ETag is the one of its current version (412 otherwise).
+     */
+    @PutMapping
+    public Mono<ResponseEntity<Song>> updateSong(@Valid @RequestBody Song song,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Mono<Song> updatedSong;
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            updatedSong = songService.updateSong(song);
+        } else {
+            updatedSong = songService.updateSong(song, matchedVersion(ifMatch, song.getId()));
+        }
+        return updatedSong.map(updated -> ResponseEntity.ok().eTag(songETag(updated)).body(updated));
+    }
+
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<List<SongBatchResult>>> createSongs(@RequestBody List<Song> songs) {
+        return songService.createSongs(songs).map(results -> new ResponseEntity<>(results, HttpStatus.MULTI_STATUS));
+    }
+
+    @PutMapping("/batch")
+    public Mono<ResponseEntity<List<SongBatchResult>>> updateSongs(@RequestBody List<Song> songs) {
+        return songService.updateSongs(songs).map(results -> new ResponseEntity<>(results, HttpStatus.MULTI_STATUS));
+    }
+
+    @DeleteMapping("/batch")
+    public Mono<ResponseEntity<List<SongBatchResult>>> deleteSongsById(@RequestBody List<Integer> ids) {
+        return songService.deleteSongsById(ids).map(results -> new ResponseEntity<>(results, HttpStatus.MULTI_STATUS));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteSongById(@PathVariable int id) {
+        return songService.deleteSongById(id).thenReturn(new ResponseEntity<>(HttpStatus.NO_CONTENT));
+    }
+
+    private static ResponseEntity<Flux<Song>> pageResponse(SongPage page, ServerWebExchange exchange) {
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            String next = UriComponentsBuilder.fromHttpRequest(exchange.getRequest())
+                    .replaceQueryParam("page")
+                    .replaceQueryParam("after", page.getNextCursor())
+                    .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return new ResponseEntity<>(Flux.fromIterable(page.getSongs()), headers, HttpStatus.OK);
+    }
+}
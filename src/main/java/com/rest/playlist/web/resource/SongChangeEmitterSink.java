@@ -0,0 +1,133 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.model.SongChangeEvent;
+import com.rest.playlist.service.SongChangeFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SongChangeEmitterSink class is the SongChangeFeed.Sink of a GET /api/songs/changes connection. It never blocks the
+ * sender threads of the feed : the events wait in a buffer of bufferSize events that a writer task sends to the
+ * SseEmitter, and send returns false once the buffer is full. The subscription is requested again when the writer
+ * has emptied the buffer, so a client that stops reading falls behind and is dropped by the feed as a slow consumer.
+ * Its blocked write only holds its own writer thread, until the container times it out.
+ */
+public final class SongChangeEmitterSink implements SongChangeFeed.Sink {
+    private static final Logger log = LoggerFactory.getLogger(SongChangeEmitterSink.class);
+
+    private final SseEmitter emitter;
+    private final BlockingQueue<SseEmitter.SseEventBuilder> buffer;
+    private final Executor writer;
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile SongChangeFeed.Subscription subscription;
+    private volatile boolean refused;
+    private volatile boolean closed;
+
+    // only used by the writer
+    private boolean completed;
+
+    public SongChangeEmitterSink(SseEmitter emitter, int bufferSize, Executor writer) {
+        this.emitter = emitter;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.writer = writer;
+    }
+
+    /**
+     * Binds the sink to its subscription, requested again once the events it refused can be buffered.
+     */
+    public void subscribed(SongChangeFeed.Subscription subscription) {
+        this.subscription = subscription;
+        signal();
+    }
+
+    @Override
+    public boolean send(SongChangeEvent event) {
+        if (closed) {
+            return false;
+        }
+        boolean buffered = buffer.offer(SseEmitter.event()
+                .id(event.getId())
+                .name(SongChangesResource.eventName(event))
+                .data(SongChangesResource.eventData(event), MediaType.APPLICATION_JSON));
+        if (!buffered) {
+            refused = true;
+        }
+        signal();
+        return buffered;
+    }
+
+    /**
+     * Skipped when the buffer is full : the connection has events to write anyway.
+     */
+    @Override
+    public void heartbeat() {
+        if (buffer.offer(SseEmitter.event().comment("keepalive"))) {
+            signal();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        signal();
+    }
+
+    private void signal() {
+        if (wip.getAndIncrement() == 0) {
+            try {
+                writer.execute(this::write);
+            } catch (RejectedExecutionException e) {
+                // the application is stopping, its connections are closed by the container
+                log.debug("Song change writers are shut down", e);
+            }
+        }
+    }
+
+    private void write() {
+        int missed = 1;
+        do {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed && (event = buffer.poll()) != null) {
+                    emitter.send(event);
+                }
+                if (closed) {
+                    complete();
+                } else if (refused) {
+                    refused = false;
+                    SongChangeFeed.Subscription requested = subscription;
+                    if (requested != null) {
+                        requested.request();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // IllegalStateException as well once the emitter is completed, e.g. timed out
+                log.debug("Song change subscriber gone", e);
+                closed = true;
+                SongChangeFeed.Subscription gone = subscription;
+                if (gone != null) {
+                    gone.close();
+                }
+                buffer.clear();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void complete() {
+        buffer.clear();
+        if (!completed) {
+            completed = true;
+            emitter.complete();
+        }
+    }
+}
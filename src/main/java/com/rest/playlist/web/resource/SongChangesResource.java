@@ -0,0 +1,85 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.model.SongChangeEvent;
+import com.rest.playlist.service.SongChangeFeed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SongChangesResource class streams the song changes as Server-Sent Events : event created, updated or deleted
+ * with the song as data, and reset when the client must reload the songs. A client reconnecting with
+ * the Last-Event-ID header resumes after that event (see SongChangeFeed).
+ * The connection is ended after playlist.changes.timeout, EventSource reconnects on its own.
+ * The events are written by SongChangeEmitterSink, on a writer thread of the connection (virtual when the JDK has them)
+ * and not on the sender threads of the feed, with at most playlist.changes.send-buffer events waiting.
+ */
+@RestController
+@RequestMapping("/api/songs")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class SongChangesResource implements AutoCloseable {
+
+    static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    final private SongChangeFeed changeFeed;
+    final private Duration timeout;
+    final private int sendBuffer;
+    final private ExecutorService writers;
+
+    public SongChangesResource(SongChangeFeed changeFeed, @Value("${playlist.changes.timeout:30m}") Duration timeout,
+                               @Value("${playlist.changes.send-buffer:256}") int sendBuffer) {
+        this.changeFeed = changeFeed;
+        this.timeout = timeout;
+        this.sendBuffer = sendBuffer;
+        ExecutorService virtual = SongRequestExecutor.newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            this.writers = virtual;
+        } else {
+            AtomicInteger threads = new AtomicInteger();
+            this.writers = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "song-changes-writer-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        SongChangeEmitterSink sink = new SongChangeEmitterSink(emitter, sendBuffer, writers);
+        SongChangeFeed.Subscription subscription = changeFeed.subscribe(lastEventId, sink);
+        sink.subscribed(subscription);
+        emitter.onCompletion(subscription::close);
+        emitter.onError(e -> subscription.close());
+        return emitter;
+    }
+
+    @Override
+    public void close() {
+        writers.shutdown();
+    }
+
+    static String eventName(SongChangeEvent event) {
+        return event.getType().name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the song, or {} for a reset : EventSource does not dispatch events without data
+     */
+    static Object eventData(SongChangeEvent event) {
+        return event.getSong() != null ? event.getSong() : Collections.emptyMap();
+    }
+}
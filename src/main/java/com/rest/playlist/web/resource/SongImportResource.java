@@ -0,0 +1,42 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.model.SongImportReport;
+import com.rest.playlist.service.SongImporter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * SongImportResource class exposes the bulk import of songs.
+ * The request body is read as a stream, never buffered as a whole.
+ */
+@RestController
+@RequestMapping("/api/songs")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class SongImportResource {
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    final private SongImporter songImporter;
+
+    public SongImportResource(SongImporter songImporter) {
+        this.songImporter = songImporter;
+    }
+
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    public ResponseEntity<SongImportReport> importCsv(InputStream body) throws IOException {
+        return new ResponseEntity<>(songImporter.importCsv(body), HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<SongImportReport> importNdjson(InputStream body) throws IOException {
+        return new ResponseEntity<>(songImporter.importNdjson(body), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,198 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import com.rest.playlist.web.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * SongRequestExecutor class runs the work of the SongResource endpoints, which return its CompletableFuture.
+ * <p>
+ * blocking() runs the work on the servlet container thread and returns a completed future.
+ * async() runs it on a dedicated executor, so that requests waiting on a slow repository do not hold container
+ * threads : a virtual thread per request when the JDK has them (looked up by reflection, the code targets Java 8),
+ * a pool of maxConcurrency platform threads otherwise. At most maxConcurrency requests run at once and at most
+ * maxQueued wait for their turn, beyond that a request is rejected with ServiceUnavailableException (503).
+ * <p>
+ * Queue time is the time between the submission of a request and the start of its work.
+ * The request attributes and the current span of the request trace (SongTracer) follow the work to its thread.
+ */
+public final class SongRequestExecutor implements AutoCloseable, MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(SongRequestExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore running;
+    private final int capacity;
+    private final boolean virtualThreads;
+
+    // submitted and not finished, submitted and not started
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+
+    private SongRequestExecutor(ExecutorService executor, Semaphore running, int capacity, boolean virtualThreads) {
+        this.executor = executor;
+        this.running = running;
+        this.capacity = capacity;
+        this.virtualThreads = virtualThreads;
+    }
+
+    public static SongRequestExecutor blocking() {
+        return new SongRequestExecutor(null, null, 0, false);
+    }
+
+    public static SongRequestExecutor async(int maxConcurrency, int maxQueued, boolean preferVirtualThreads) {
+        ExecutorService virtual = preferVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtual != null) {
+            log.info("Song requests run on virtual threads, {} at once", maxConcurrency);
+            return new SongRequestExecutor(virtual, new Semaphore(maxConcurrency), maxConcurrency + maxQueued, true);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueued)), r -> {
+                    Thread thread = new Thread(r, "song-request-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        log.info("Song requests run on a pool of {} threads", maxConcurrency);
+        return new SongRequestExecutor(pool, null, maxConcurrency + maxQueued, false);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(work.get());
+        }
+        if (inFlight.incrementAndGet() > capacity) {
+            reject();
+        }
+        submitted.increment();
+        queued.incrementAndGet();
+        long submittedAt = System.nanoTime();
+        // ServletUriComponentsBuilder.fromCurrentRequest and the like read the request from the thread
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Span span = SongTracer.current();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(work, result, submittedAt, attributes, span));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            reject();
+        }
+        return result;
+    }
+
+    private void reject() {
+        inFlight.decrementAndGet();
+        rejected.increment();
+        throw new ServiceUnavailableException("Too many song requests in progress, retry later");
+    }
+
+    private <T> void run(Supplier<T> work, CompletableFuture<T> result, long submittedAt, RequestAttributes attributes,
+                         Span span) {
+        if (running != null) {
+            running.acquireUninterruptibly();
+        }
+        queued.decrementAndGet();
+        long queueNanos = System.nanoTime() - submittedAt;
+        totalQueueNanos.add(queueNanos);
+        maxQueueNanos.accumulate(queueNanos);
+        RequestContextHolder.setRequestAttributes(attributes);
+        Span previous = SongTracer.resume(span);
+        span.attribute("queue.micros", TimeUnit.NANOSECONDS.toMicros(queueNanos));
+        try {
+            result.complete(work.get());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        } finally {
+            SongTracer.restore(previous);
+            RequestContextHolder.resetRequestAttributes();
+            if (running != null) {
+                running.release();
+            }
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public Stats stats() {
+        long started = submitted.sum() - queued.get();
+        return new Stats(executor != null, virtualThreads, submitted.sum(), rejected.sum(), queued.get(),
+                started == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueueNanos.sum() / started),
+                TimeUnit.NANOSECONDS.toMicros(maxQueueNanos.get()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("playlist.songs.executor.submitted", submitted, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("playlist.songs.executor.rejected", rejected, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("playlist.songs.executor.queued", queued, AtomicInteger::get)
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor() when the JDK has it, null otherwise
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    @Getter
+    public static final class Stats {
+        private final boolean async;
+        private final boolean virtualThreads;
+        private final long submitted;
+        private final long rejected;
+        private final int queued;
+        private final long averageQueueMicros;
+        private final long maxQueueMicros;
+
+        private Stats(boolean async, boolean virtualThreads, long submitted, long rejected, int queued,
+                      long averageQueueMicros, long maxQueueMicros) {
+            this.async = async;
+            this.virtualThreads = virtualThreads;
+            this.submitted = submitted;
+            this.rejected = rejected;
+            this.queued = queued;
+            this.averageQueueMicros = averageQueueMicros;
+            this.maxQueueMicros = maxQueueMicros;
+        }
+    }
+}
@@ -1,70 +1,255 @@
 package com.rest.playlist.web.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
 import com.rest.playlist.service.ISongService;
 import com.rest.playlist.service.SongServiceImpl;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SongResource class exposes the songs under /api/songs. The endpoints return the CompletableFuture of a
+ * SongRequestExecutor, which runs their work on the servlet thread or, with playlist.async.enabled, on its own
+ * executor (see RequestExecutionConfig). In the default blocking mode, the future is already completed and
+ * CompletedFutureReturnValueHandler writes it synchronously. The export streams its body and keeps the servlet thread.
+ * ReactiveSongResource serves the same endpoints when the application runs on WebFlux.
+ */
 @RestController
 @RequestMapping("/api/songs")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class SongResource {
 
     final private ISongService ISongService;
+    final private SongRequestExecutor executor;
+    final private ObjectWriter songWriter;
     private static final Logger log = LoggerFactory.getLogger(SongServiceImpl.class);
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String SONG_ETAG_PREFIX = "song-";
 
-    public SongResource(ISongService ISongService) {
+    public SongResource(ISongService ISongService, SongRequestExecutor executor, ObjectMapper objectMapper) {
         this.ISongService = ISongService;
+        this.executor = executor;
+        this.songWriter = objectMapper.writerFor(Song.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
+    /**
+     * The list endpoints answer If-None-Match with 304 from the catalog or category version alone,
+     * before the songs are queried.
+     */
     @GetMapping
-    public ResponseEntity<List<Song>> getAllSongs() {
-
-        return new ResponseEntity<>(ISongService.getAllSongs(), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<Song>>> getAllSongs(SongPageRequest pageRequest, WebRequest request) {
+        return executor.submit(() -> {
+            if (request.checkNotModified(songsETag("catalog", ISongService.getSongsVersion(null)))) {
+                return null;
+            }
+            if (pageRequest.isUnpaged()) {
+                return new ResponseEntity<>(ISongService.getAllSongs(), HttpStatus.OK);
+            }
+            return pageResponse(ISongService.getAllSongs(pageRequest));
+        });
     }
 
 
     @GetMapping("/category/{category}")
-    public ResponseEntity<List<Song>> getSongsByCategory(@PathVariable String category) {
-        List<Song> songs = ISongService.getSongsByCategory(category);
-        return new ResponseEntity<>(songs, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<Song>>> getSongsByCategory(@PathVariable String category,
+                                                                            SongPageRequest pageRequest,
+                                                                            WebRequest request) {
+        return executor.submit(() -> {
+            long version = ISongService.getSongsVersion(category);
+            if (request.checkNotModified(songsETag(category.toUpperCase(Locale.ROOT), version))) {
+                return null;
+            }
+            if (pageRequest.isUnpaged()) {
+                List<Song> songs = ISongService.getSongsByCategory(category);
+                return new ResponseEntity<>(songs, HttpStatus.OK);
+            }
+            return pageResponse(ISongService.getSongsByCategory(category, pageRequest));
+        });
     }
 
 
     @GetMapping("/artist/{artistName}")
-    public ResponseEntity<List<Song>> getSongsByArtistName(@PathVariable String artistName) {
-        List<Song> songs = ISongService.getSongsByArtistName(artistName);
-        return new ResponseEntity<>(songs, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<Song>>> getSongsByArtistName(@PathVariable String artistName,
+                                                                              SongPageRequest pageRequest) {
+        return executor.submit(() -> {
+            if (pageRequest.isUnpaged()) {
+                List<Song> songs = ISongService.getSongsByArtistName(artistName);
+                return new ResponseEntity<>(songs, HttpStatus.OK);
+            }
+            return pageResponse(ISongService.getSongsByArtistName(artistName, pageRequest));
+        });
+    }
+
+    @GetMapping("/search")
+    public CompletableFuture<ResponseEntity<List<Song>>> searchSongs(@RequestParam String q,
+                                                                     @RequestParam(defaultValue = "10") int limit) {
+        return executor.submit(() -> {
+            List<Song> songs = ISongService.searchSongs(q, limit);
+            return new ResponseEntity<>(songs, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Pull-based sync : the changes after the revision since (0 : every song), see SongDelta.
+     * after is the nextCursor of the previous page of a reset.
+     */
+    @GetMapping("/delta")
+    public CompletableFuture<ResponseEntity<SongDelta>> getSongsDelta(@RequestParam(defaultValue = "0") long since,
+                                                                      @RequestParam(required = false) Integer after,
+                                                                      @RequestParam(defaultValue = "1000") int limit) {
+        return executor.submit(() -> new ResponseEntity<>(ISongService.getSongsDelta(since, after, limit), HttpStatus.OK));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportSongs(@RequestParam(required = false) String category,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        Stream<Song> songs = ISongService.streamSongs(category);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        StreamingResponseBody body = out -> writeNdjson(songs, gzip ? new GZIPOutputStream(out, 8192) : out);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Song> getSongById(@PathVariable int id) {
-        Song song = ISongService.getSongById(id);
-        return new ResponseEntity<>(song, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<Song>> getSongById(@PathVariable int id, WebRequest request) {
+        return executor.submit(() -> {
+            Song song = ISongService.getSongById(id);
+            if (request.checkNotModified(songETag(song))) {
+                return null;
+            }
+            return new ResponseEntity<>(song, HttpStatus.OK);
+        });
     }
 
     @PostMapping
-    public ResponseEntity<Song> createSong(@Valid @RequestBody Song song) {
-        Song addedSong = ISongService.createSong(song);
-        return new ResponseEntity<>(addedSong, HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<Song>> createSong(@Valid @RequestBody Song song) {
+        return executor.submit(() -> {
+            Song addedSong = ISongService.createSong(song);
+            return ResponseEntity.status(HttpStatus.CREATED).eTag(songETag(addedSong)).body(addedSong);
+        });
     }
 
 
+    /**
+     * With If-Match, the song is only updated when the ETag is the one of its current version (412 otherwise).
+     */
     @PutMapping
-    public ResponseEntity updateSong(@Valid @RequestBody Song song) {
-        ISongService.updateSong(song);
-        return new ResponseEntity<>(song, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<?>> updateSong(@Valid @RequestBody Song song,
+                                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return executor.submit(() -> {
+            Song updatedSong;
+            if (ifMatch == null || ifMatch.trim().equals("*")) {
+                updatedSong = ISongService.updateSong(song);
+            } else {
+                updatedSong = ISongService.updateSong(song, matchedVersion(ifMatch, song.getId()));
+            }
+            return ResponseEntity.ok().eTag(songETag(updatedSong)).body(updatedSong);
+        });
+    }
+
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<SongBatchResult>>> createSongs(@RequestBody List<Song> songs) {
+        return executor.submit(() -> new ResponseEntity<>(ISongService.createSongs(songs), HttpStatus.MULTI_STATUS));
+    }
+
+    @PutMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<SongBatchResult>>> updateSongs(@RequestBody List<Song> songs) {
+        return executor.submit(() -> new ResponseEntity<>(ISongService.updateSongs(songs), HttpStatus.MULTI_STATUS));
+    }
+
+    @DeleteMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<SongBatchResult>>> deleteSongsById(@RequestBody List<Integer> ids) {
+        return executor.submit(() -> new ResponseEntity<>(ISongService.deleteSongsById(ids), HttpStatus.MULTI_STATUS));
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity deleteSongById(@PathVariable int id) {
-        ISongService.deleteSongById(id);
-        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    public CompletableFuture<ResponseEntity<?>> deleteSongById(@PathVariable int id) {
+        return executor.submit(() -> {
+            ISongService.deleteSongById(id);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        });
+    }
+
+    private void writeNdjson(Stream<Song> songs, OutputStream out) throws IOException {
+        try (Stream<Song> source = songs;
+             JsonGenerator generator = songWriter.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            Iterator<Song> iterator = source.iterator();
+            while (iterator.hasNext()) {
+                songWriter.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    static String songETag(Song song) {
+        return "\"" + SONG_ETAG_PREFIX + song.getId() + "-" + song.getVersion() + "\"";
+    }
+
+    static String songsETag(String scope, long version) {
+        return "\"" + scope + "-" + version + "\"";
+    }
+
+    /**
+     * @return the song version named by the strong ETag of If-Match
+     */
+    static long matchedVersion(String ifMatch, int id) {
+        String tag = ifMatch.trim();
+        String prefix = "\"" + SONG_ETAG_PREFIX + id + "-";
+        if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+            try {
+                return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // not one of our ETags, handled below
+            }
+        }
+        throw new PreconditionFailedException("If-Match " + tag + " is not an ETag of Song with id = " + id);
+    }
+
+    private ResponseEntity<List<Song>> pageResponse(SongPage page) {
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("page")
+                    .replaceQueryParam("after", page.getNextCursor())
+                    .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return new ResponseEntity<>(page.getSongs(), headers, HttpStatus.OK);
     }
 }
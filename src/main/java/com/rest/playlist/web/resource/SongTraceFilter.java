@@ -0,0 +1,75 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * SongTraceFilter class starts the root span of the sampled /api/songs requests and ends it once the response
+ * is written, named after the route (GET /api/songs/artist/{artistName}).
+ * <p>
+ * An async request goes on after the first dispatch : its span is kept as a request attribute, carried to the
+ * executor thread by SongRequestExecutor, and resumed by the async dispatch that writes the response.
+ */
+public class SongTraceFilter extends OncePerRequestFilter {
+
+    static final String SPAN = SongTraceFilter.class.getName() + ".span";
+    static final String WRITE_SPAN = SongTraceFilter.class.getName() + ".writeSpan";
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Span span;
+        if (isAsyncDispatch(request)) {
+            span = (Span) request.getAttribute(SPAN);
+            if (span != null) {
+                SongTracer.resume(span);
+            }
+        } else {
+            span = SongTracer.startTrace(request.getMethod() + " " + request.getRequestURI());
+        }
+        if (span == null || !span.isSampled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.setAttribute(SPAN, span);
+                SongTracer.suspend(span);
+            } else {
+                end(request, response, span);
+            }
+        }
+    }
+
+    private static void end(HttpServletRequest request, HttpServletResponse response, Span span) {
+        Span writeSpan = (Span) request.getAttribute(WRITE_SPAN);
+        if (writeSpan != null) {
+            writeSpan.close();
+        }
+        Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (route != null) {
+            span.rename(request.getMethod() + " " + route)
+                    .attribute("http.route", route);
+        }
+        span.attribute("http.method", request.getMethod())
+                .attribute("http.target", request.getQueryString() == null ? request.getRequestURI()
+                        : request.getRequestURI() + "?" + request.getQueryString())
+                .attribute("http.status_code", response.getStatus())
+                .close();
+    }
+}
@@ -0,0 +1,40 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * SongTraceResponseAdvice class starts the "write response" span of the sampled SongResource requests just before
+ * the body is serialized, SongTraceFilter ends it once the response is written.
+ */
+@ControllerAdvice(assignableTypes = SongResource.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class SongTraceResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (SongTracer.current().isSampled() && request instanceof ServletServerHttpRequest) {
+            Span span = SongTracer.startSpan("write response")
+                    .attribute("content.type", String.valueOf(selectedContentType))
+                    .attribute("converter", selectedConverterType.getSimpleName());
+            ((ServletServerHttpRequest) request).getServletRequest().setAttribute(SongTraceFilter.WRITE_SPAN, span);
+        }
+        return body;
+    }
+}
@@ -3,7 +3,7 @@ package com.rest.playlist;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"playlist.storage.enabled=true", "playlist.storage.directory=target/test-data"})
 class PlaylistApplicationTests {
 
 	@Test
@@ -0,0 +1,24 @@
+package com.rest.playlist;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@SpringBootTest(properties = {"playlist.storage.enabled=false", "spring.main.web-application-type=reactive"})
+@AutoConfigureWebTestClient
+class ReactivePlaylistApplicationTests {
+
+	@Autowired
+	private WebTestClient webClient;
+
+	@Test
+	void contextLoads() {
+		webClient.get().uri("/api/songs/category/JAZZ")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$[0].category").isEqualTo("JAZZ");
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.service.CachingSongService;
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.service.SongChangedEvent;
+import com.rest.playlist.service.SongServiceImpl;
+
+import javax.validation.Validation;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BenchmarkSongs class builds the catalogs and services the benchmarks run against :
+ * size songs with unique titles, spread over the categories and ARTISTS artists.
+ */
+final class BenchmarkSongs {
+
+    static final int ARTISTS = 1000;
+    private static final int LOAD_BATCH = 100_000;
+    private static final SongCategory[] CATEGORIES = SongCategory.values();
+
+    private BenchmarkSongs() {
+    }
+
+    static Song song(long n) {
+        return Song.builder()
+                .title("song " + n)
+                .description("description of song " + n)
+                .category(CATEGORIES[(int) (n % CATEGORIES.length)])
+                .duration((3 + n % 4) + ":" + (10 + n % 50))
+                .artistName(artistName(n))
+                .build();
+    }
+
+    static String artistName(long n) {
+        return "artist " + (n % ARTISTS);
+    }
+
+    static List<Song> songs(long first, int count) {
+        List<Song> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            songs.add(song(first + i));
+        }
+        return songs;
+    }
+
+    /**
+     * @return a catalog of size songs, with the ids 1 to size
+     */
+    static SongCatalog catalog(int size) {
+        SongCatalog catalog = new SongCatalog();
+        for (int loaded = 0; loaded < size; loaded += LOAD_BATCH) {
+            catalog.saveAll(songs(loaded, Math.min(LOAD_BATCH, size - loaded)));
+        }
+        return catalog;
+    }
+
+    static SongServiceImpl service(SongCatalog catalog) {
+        return new SongServiceImpl(catalog, Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+    }
+
+    /**
+     * @return service behind the query cache the web layer uses by default, invalidated on each change
+     */
+    static ISongService cached(SongCatalog catalog) {
+        CachingSongService[] cache = new CachingSongService[1];
+        SongServiceImpl service = new SongServiceImpl(catalog, Validation.buildDefaultValidatorFactory().getValidator(),
+                event -> cache[0].onSongChanged((SongChangedEvent) event));
+        cache[0] = new CachingSongService(service, 100_000, Duration.ofMinutes(5));
+        return cache[0];
+    }
+}
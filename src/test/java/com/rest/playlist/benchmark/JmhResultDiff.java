@@ -0,0 +1,88 @@
+package com.rest.playlist.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JmhResultDiff class compares two JMH JSON result files (-rf json), typically the ones of two builds :
+ * java JmhResultDiff baseline.json current.json [threshold percent, 10 by default]
+ * <p>
+ * For each benchmark and parameters found in both files it prints the scores and the change, and the change of
+ * gc.alloc.rate.norm when the GC profiler ran. A change worse than the threshold is a regression
+ * (a higher time per operation, a lower throughput), the exit status is then 1.
+ */
+public final class JmhResultDiff {
+
+    private static final String ALLOCATION = "·gc.alloc.rate.norm";
+
+    private JmhResultDiff() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: JmhResultDiff baseline.json current.json [threshold percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s %12s%n", "benchmark", "baseline", "current", "change", "alloc B/op");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f%n", entry.getKey(), "-", score(entry.getValue()));
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            double change = 100 * (score(after) - score(before)) / score(before);
+            boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+            boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%% %12s%s%n", entry.getKey(), score(before), score(after), change,
+                    allocation(before, after), regression ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d regression(s) over %.1f%%%n", regressions, threshold);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return the results of file by benchmark name and parameters
+     */
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            Map<String, String> params = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            results.put(result.path("benchmark").asText() + (params.isEmpty() ? "" : " " + params), result);
+        }
+        return results;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static String allocation(JsonNode before, JsonNode after) {
+        JsonNode allocationBefore = before.path("secondaryMetrics").path(ALLOCATION).path("score");
+        JsonNode allocationAfter = after.path("secondaryMetrics").path(ALLOCATION).path("score");
+        if (allocationBefore.isMissingNode() || allocationAfter.isMissingNode()) {
+            return "-";
+        }
+        return String.format("%.0f>%.0f", allocationBefore.asDouble(), allocationAfter.asDouble());
+    }
+}
@@ -0,0 +1,120 @@
+package com.rest.playlist.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.web.exception.ResourceNotFoundException;
+import com.rest.playlist.web.exception.ServiceExceptionHandler;
+import com.rest.playlist.web.exception.ServiceUnavailableException;
+import com.rest.playlist.web.resource.SongResource;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.validation.Validation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the error paths of the song endpoints, from the exception thrown by the service to the JSON body
+ * written by ServiceExceptionHandler, next to the success path of the same lookup (foundSong).
+ * notFound is GET /api/songs/{id} for a missing id, invalidSong a POST rejected by bean validation,
+ * serviceUnavailable a request refused by SongRequestExecutor and unexpected the fallback handler.
+ * The handler counts the errors in a Prometheus registry and the dates are written as text, as in the application.
+ * ResourceNotFoundException and AlreadyExistException have no stack trace and ErrorMessage writes itself, so notFound
+ * should stay within a small factor of foundSong. Its throughput before and after a change :
+ * mvn -Pbenchmark test -Djmh.include='SongErrorPathBenchmark.(notFound|foundSong)' -Djmh.args="-bm thrpt -tu ms"
+ * then JmhResultDiff on the two target/jmh-result.json.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SongErrorPathBenchmark {
+
+    private static final int SIZE = 10_000;
+
+    private ISongService songService;
+    private ServiceExceptionHandler handler;
+    private ObjectMapper objectMapper;
+    private WebRequest request;
+    private SpringValidatorAdapter validator;
+    private MethodParameter songParameter;
+    private Song invalidSong;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchMethodException {
+        songService = BenchmarkSongs.service(BenchmarkSongs.catalog(SIZE));
+        handler = new ServiceExceptionHandler(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        objectMapper = Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/songs/" + (SIZE + 1)));
+        validator = new SpringValidatorAdapter(Validation.buildDefaultValidatorFactory().getValidator());
+        songParameter = new MethodParameter(SongResource.class.getMethod("createSong", Song.class), 0);
+        invalidSong = BenchmarkSongs.song(0).toBuilder().title("S").duration(null).build();
+    }
+
+    @Benchmark
+    public byte[] foundSong() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(songService.getSongById(SIZE));
+    }
+
+    @Benchmark
+    public byte[] notFound() throws JsonProcessingException {
+        try {
+            return objectMapper.writeValueAsBytes(songService.getSongById(SIZE + 1));
+        } catch (ResourceNotFoundException e) {
+            return body(handler.handleResourceNotFoundException(e, request));
+        }
+    }
+
+    @Benchmark
+    public byte[] invalidSong() throws JsonProcessingException {
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(invalidSong, "song");
+        validator.validate(invalidSong, bindingResult);
+        MethodArgumentNotValidException e = new MethodArgumentNotValidException(songParameter, bindingResult);
+        return body(handler.handleArgumentNotValidException(e, request));
+    }
+
+    @Benchmark
+    public byte[] serviceUnavailable() throws JsonProcessingException {
+        return body(handler.handleServiceUnavailableException(
+                new ServiceUnavailableException("Too many song requests in progress, retry later"), request));
+    }
+
+    @Benchmark
+    public byte[] unexpected() throws JsonProcessingException {
+        return body(handler.globalException(new IllegalStateException("unexpected"), request));
+    }
+
+    private byte[] body(ResponseEntity<?> response) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response.getBody());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SongErrorPathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + SongErrorPathBenchmark.class.getSimpleName() + ".json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.repository.SongStorage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the write throughput of a persistent SongCatalog with 8 concurrent writers,
+ * with group commit (one fsync for all the writes waiting) versus one fsync per write.
+ * Snapshots are disabled so that only the journal is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SongJournalBenchmark {
+
+    @Param({"GROUP", "PER_OP"})
+    private SongStorage.FsyncMode fsync;
+
+    private Path directory;
+    private SongCatalog catalog;
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("song-journal-benchmark");
+        catalog = new SongCatalog(new SongStorage(directory, fsync, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        catalog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        int id = ids.incrementAndGet();
+        Song song = Song.builder()
+                .id(id)
+                // titles are unique in a category
+                .title("title " + id)
+                .description("description")
+                .category(SongCategory.POP)
+                .duration("3:00")
+                .artistName("artist")
+                .build();
+        catalog.save(song);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SongJournalBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
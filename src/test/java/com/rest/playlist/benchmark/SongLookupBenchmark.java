@@ -0,0 +1,109 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.IntSongMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the id lookup strategies behind GET /api/songs/{id} :
+ * the former stream scan over a CopyOnWriteArrayList, a ConcurrentHashMap<Integer, Song>
+ * and IntSongMap.
+ * Run it with the GC profiler (see main) : gc.alloc.rate.norm is expected to be ~0 B/op for intSongMap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class SongLookupBenchmark {
+
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"10000", "1000000", "10000000"})
+    private int size;
+
+    private CopyOnWriteArrayList<Song> songList;
+    private ConcurrentHashMap<Integer, Song> concurrentHashMap;
+    private IntSongMap intSongMap;
+    private int[] ids;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Song[] songs = new Song[size];
+        concurrentHashMap = new ConcurrentHashMap<>(size * 2);
+        intSongMap = new IntSongMap();
+        for (int i = 0; i < size; i++) {
+            Song song = Song.builder()
+                    .id(i + 1)
+                    .title("title")
+                    .description("description")
+                    .category(SongCategory.POP)
+                    .duration("3:00")
+                    .artistName("artist")
+                    .build();
+            songs[i] = song;
+            concurrentHashMap.put(song.getId(), song);
+            intSongMap.put(song.getId(), song);
+        }
+        songList = new CopyOnWriteArrayList<>(songs);
+
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public Song streamScan(Cursor cursor) {
+        int id = nextId(cursor);
+        return find(songList, id);
+    }
+
+    @Benchmark
+    public Song concurrentHashMap(Cursor cursor) {
+        return concurrentHashMap.get(nextId(cursor));
+    }
+
+    @Benchmark
+    public Song intSongMap(Cursor cursor) {
+        return intSongMap.get(nextId(cursor));
+    }
+
+    private int nextId(Cursor cursor) {
+        return ids[cursor.next++ & (LOOKUPS - 1)];
+    }
+
+    private static Song find(List<Song> songs, int id) {
+        return songs.stream()
+                .filter(p -> id == p.getId())
+                .findAny()
+                .orElse(null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SongLookupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,108 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.service.ISongService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reads and writes running at the same time on the cached service, as the web layer sees it :
+ * readHeavy runs 7 readers for 1 writer, balanced 4 readers for 4 writers.
+ * The readers alternate a lookup by id and the category page that follows it, the writers update random songs
+ * and so contend with the readers on the catalog indexes.
+ * JMH reports the score of each group and of its readers and writers apart.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Group)
+public class SongMixedWorkloadBenchmark {
+
+    private static final int KEYS = 1 << 12;
+
+    @Param({"10000", "1000000"})
+    private int size;
+
+    private ISongService songService;
+    private int[] ids;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        songService = BenchmarkSongs.cached(BenchmarkSongs.catalog(size));
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(7)
+    public Object readHeavyRead(Cursor cursor) {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public Song readHeavyWrite(Cursor cursor) {
+        return write(cursor);
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(4)
+    public Object balancedRead(Cursor cursor) {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(4)
+    public Song balancedWrite(Cursor cursor) {
+        return write(cursor);
+    }
+
+    private Object read(Cursor cursor) {
+        int n = cursor.next++;
+        Song song = songService.getSongById(ids[n & (KEYS - 1)]);
+        if ((n & 1) == 0) {
+            return song;
+        }
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setAfter(song.getId());
+        return songService.getSongsByCategory(song.getCategory().name(), pageRequest);
+    }
+
+    private Song write(Cursor cursor) {
+        Song current = songService.getSongById(ids[cursor.next++ & (KEYS - 1)]);
+        return songService.updateSong(current.toBuilder().duration(current.getVersion() % 2 == 0 ? "4:00" : "5:00").build());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SongMixedWorkloadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + SongMixedWorkloadBenchmark.class.getSimpleName() + ".json")
+                .build();
+        new Runner(options).run();
+    }
+}
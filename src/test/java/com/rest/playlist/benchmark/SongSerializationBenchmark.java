@@ -0,0 +1,96 @@
+package com.rest.playlist.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.rest.playlist.model.Song;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Jackson work of the song endpoints on lists of 1 to 10000 songs :
+ * a JSON array as returned by the list endpoints, the same array read back as a batch request body,
+ * and NDJSON written one song at a time by a single generator, as the export does.
+ * The mapper is built like the Spring Boot one, which reads Song through its constructor parameter names.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SongSerializationBenchmark {
+
+    private static final TypeReference<List<Song>> SONG_LIST = new TypeReference<List<Song>>() { };
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter songWriter;
+    private List<Song> songs;
+    private byte[] json;
+    private final OutputStream out = StreamUtils.nonClosing(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).build();
+        songWriter = objectMapper.writerFor(Song.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        songs = BenchmarkSongs.songs(0, size);
+        json = objectMapper.writeValueAsBytes(songs);
+    }
+
+    @Benchmark
+    public byte[] writeJsonArray() throws IOException {
+        return objectMapper.writeValueAsBytes(songs);
+    }
+
+    @Benchmark
+    public List<Song> readJsonArray() throws IOException {
+        return objectMapper.readValue(json, SONG_LIST);
+    }
+
+    @Benchmark
+    public void writeNdjson() throws IOException {
+        try (JsonGenerator generator = songWriter.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            for (Song song : songs) {
+                songWriter.writeValue(generator, song);
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SongSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + SongSerializationBenchmark.class.getSimpleName() + ".json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,203 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.service.ISongService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures every ISongService method on catalogs of 10 to 10M songs, through SongServiceImpl alone
+ * and behind CachingSongService (cached=true), the one the web layer uses by default.
+ * The writes keep the catalog size : a created song is deleted in the same invocation, updates rewrite
+ * an existing song. The whole-catalog reads (getAllSongs, streamSongs, ...) are expected to grow with size,
+ * the others not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class SongServiceBenchmark {
+
+    private static final int KEYS = 1 << 12;
+    private static final int BATCH = 100;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private ISongService songService;
+    private int[] ids;
+    private String[] artistNames;
+    private String[] categories;
+    private long revision;
+    private final AtomicLong created = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        private int next() {
+            return next++ & (KEYS - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SongCatalog catalog = BenchmarkSongs.catalog(size);
+        songService = cached ? BenchmarkSongs.cached(catalog) : BenchmarkSongs.service(catalog);
+        created.set(size);
+        SongDelta delta = songService.getSongsDelta(0, null, SongPageRequest.MAX_SIZE);
+        while (delta.isMore()) {
+            delta = songService.getSongsDelta(delta.getRevision(), delta.getNextCursor(), SongPageRequest.MAX_SIZE);
+        }
+        revision = delta.getRevision();
+
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new int[KEYS];
+        artistNames = new String[KEYS];
+        categories = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            int n = random.nextInt(size);
+            ids[i] = n + 1;
+            artistNames[i] = BenchmarkSongs.artistName(n);
+            categories[i] = BenchmarkSongs.song(n).getCategory().name().toLowerCase();
+        }
+    }
+
+    @Benchmark
+    public List<Song> getAllSongs() {
+        return songService.getAllSongs();
+    }
+
+    @Benchmark
+    public SongPage getAllSongsPage(Cursor cursor) {
+        return songService.getAllSongs(page(ids[cursor.next()]));
+    }
+
+    @Benchmark
+    public List<Song> getSongsByCategory(Cursor cursor) {
+        return songService.getSongsByCategory(categories[cursor.next()]);
+    }
+
+    @Benchmark
+    public SongPage getSongsByCategoryPage(Cursor cursor) {
+        int key = cursor.next();
+        return songService.getSongsByCategory(categories[key], page(ids[key]));
+    }
+
+    @Benchmark
+    public List<Song> getSongsByArtistName(Cursor cursor) {
+        return songService.getSongsByArtistName(artistNames[cursor.next()]);
+    }
+
+    @Benchmark
+    public SongPage getSongsByArtistNamePage(Cursor cursor) {
+        return songService.getSongsByArtistName(artistNames[cursor.next()], page(null));
+    }
+
+    @Benchmark
+    public List<Song> searchSongs(Cursor cursor) {
+        return songService.searchSongs(artistNames[cursor.next()] + " description", 10);
+    }
+
+    @Benchmark
+    public long streamSongs(Cursor cursor) {
+        try (Stream<Song> songs = songService.streamSongs(categories[cursor.next()])) {
+            return songs.count();
+        }
+    }
+
+    @Benchmark
+    public Song getSongById(Cursor cursor) {
+        return songService.getSongById(ids[cursor.next()]);
+    }
+
+    @Benchmark
+    public long getSongsVersion(Cursor cursor) {
+        return songService.getSongsVersion(categories[cursor.next()]);
+    }
+
+    /**
+     * Changes since the end of the setup, there are none : the poll of a client that is up to date.
+     */
+    @Benchmark
+    public SongDelta getSongsDelta() {
+        return songService.getSongsDelta(revision, null, SongPageRequest.MAX_SIZE);
+    }
+
+    @Benchmark
+    public void createAndDeleteSong(Blackhole blackhole) {
+        Song song = songService.createSong(BenchmarkSongs.song(created.getAndIncrement()));
+        blackhole.consume(song);
+        songService.deleteSongById(song.getId());
+    }
+
+    @Benchmark
+    public Song updateSong(Cursor cursor) {
+        Song current = songService.getSongById(ids[cursor.next()]);
+        return songService.updateSong(current.toBuilder().duration(current.getVersion() % 2 == 0 ? "4:00" : "5:00").build());
+    }
+
+    @Benchmark
+    public Song updateSongExpectedVersion(Cursor cursor) {
+        Song current = songService.getSongById(ids[cursor.next()]);
+        return songService.updateSong(current.toBuilder().duration(current.getVersion() % 2 == 0 ? "4:00" : "5:00").build(),
+                current.getVersion());
+    }
+
+    /**
+     * BATCH songs created, updated then deleted with the batch methods.
+     */
+    @Benchmark
+    public List<SongBatchResult> createUpdateAndDeleteSongs(Blackhole blackhole) {
+        List<SongBatchResult> results = songService.createSongs(BenchmarkSongs.songs(created.getAndAdd(BATCH), BATCH));
+        List<Song> updates = new ArrayList<>(BATCH);
+        List<Integer> createdIds = new ArrayList<>(BATCH);
+        for (SongBatchResult result : results) {
+            Song song = songService.getSongById(result.getId());
+            updates.add(song.toBuilder().duration("4:00").build());
+            createdIds.add(result.getId());
+        }
+        blackhole.consume(songService.updateSongs(updates));
+        return songService.deleteSongsById(createdIds);
+    }
+
+    private static SongPageRequest page(Integer after) {
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setSize(SongPageRequest.DEFAULT_SIZE);
+        pageRequest.setAfter(after);
+        return pageRequest;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SongServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + SongServiceBenchmark.class.getSimpleName() + ".json")
+                .build();
+        new Runner(options).run();
+    }
+}
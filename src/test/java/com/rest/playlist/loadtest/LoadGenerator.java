@@ -0,0 +1,204 @@
+package com.rest.playlist.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * LoadGenerator class sends a weighted mix of the Postman collection requests to the songs API at a fixed rate,
+ * whatever the response times (open model) : request i is meant to be sent at start + i / rate. Its latency is
+ * measured from that time, not from the time it was actually sent, so that the requests delayed by a slow server
+ * or by the connection pool count their wait (no coordinated omission).
+ * <p>
+ * The requests of the collection are templates : the song of GET and PUT is a random existing song, POST and PUT
+ * titles get a unique suffix so that they do not conflict, and DELETE removes a song created by an earlier POST
+ * of the run (keep the weight of deleteSongById below the one of createSong). Any status above 399 is an error.
+ */
+public final class LoadGenerator {
+
+    private static final Pattern SONG_ID = Pattern.compile("/\\d+$");
+    private static final int MAX_TITLE_LENGTH = 50;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final WebClient webClient;
+    private final ConnectionProvider connections;
+    private final Map<String, PostmanCollection.Request> requests;
+    private final String[] weightedNames;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Queue<Integer> createdIds = new ConcurrentLinkedQueue<>();
+    private int[] songIds;
+
+    /**
+     * @param apiUrl      the URL {{url}} stands for in the collection, http://host:port/api
+     * @param mix         request name to weight, for example getSongById=10,createSong=1
+     * @param connections maximum number of connections, requests beyond wait for one
+     */
+    public LoadGenerator(String apiUrl, Map<String, PostmanCollection.Request> requests, Map<String, Integer> mix,
+                         int connections) {
+        this.connections = ConnectionProvider.builder("load-test")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(TIMEOUT)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(apiUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(this.connections)))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+                .build();
+        this.requests = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, Integer> weight : mix.entrySet()) {
+            PostmanCollection.Request request = requests.get(weight.getKey());
+            if (request == null) {
+                throw new IllegalArgumentException("No request named " + weight.getKey() + " in " + requests.keySet());
+            }
+            this.requests.put(weight.getKey(), request);
+            for (int i = 0; i < weight.getValue(); i++) {
+                names.add(weight.getKey());
+            }
+        }
+        this.weightedNames = names.toArray(new String[0]);
+    }
+
+    /**
+     * @param mix name=weight pairs separated by commas
+     */
+    public static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split("=");
+            weights.put(nameAndWeight[0].trim(), nameAndWeight.length > 1 ? Integer.parseInt(nameAndWeight[1].trim()) : 1);
+        }
+        return weights;
+    }
+
+    /**
+     * Sends requests at rate per second for warmup then duration, and waits for their responses.
+     *
+     * @return the latencies of the requests meant to be sent after the warmup
+     */
+    public LoadTestReport run(double rate, Duration warmup, Duration duration) throws InterruptedException {
+        songIds = webClient.get().uri("/songs")
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(songs -> {
+                    int[] ids = new int[songs.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = songs.get(i).path("id").asInt();
+                    }
+                    return ids;
+                })
+                .block(TIMEOUT);
+
+        LoadTestReport report = new LoadTestReport(rate, requests.keySet());
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long measureStart = start + warmup.toNanos();
+        long end = measureStart + duration.toNanos();
+        long sent = 0;
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong pending = new AtomicLong(1);
+        for (long intended = start; intended < end; intended = start + ++sent * intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String name = weightedNames[random.nextInt(weightedNames.length)];
+            boolean measured = intended >= measureStart;
+            long intendedTime = intended;
+            pending.incrementAndGet();
+            send(requests.get(name)).subscribe(success -> {
+                if (measured) {
+                    report.record(name, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedTime), success);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            });
+        }
+        if (pending.decrementAndGet() == 0) {
+            done.countDown();
+        }
+        done.await(TIMEOUT.getSeconds() * 2, TimeUnit.SECONDS);
+        report.finish((System.nanoTime() - measureStart) / 1e9);
+        connections.dispose();
+        return report;
+    }
+
+    /**
+     * @return whether the response status is below 400, false on any failure
+     */
+    private Mono<Boolean> send(PostmanCollection.Request template) {
+        HttpMethod method = template.getMethod();
+        String path = template.getPath();
+        String body = template.getBody();
+        if (method == HttpMethod.GET && SONG_ID.matcher(path).find()) {
+            path = withId(path, songIds[random.nextInt(songIds.length)]);
+        } else if (method == HttpMethod.DELETE) {
+            Integer created = createdIds.poll();
+            path = withId(path, created == null ? -1 : created);
+        } else if (method == HttpMethod.PUT && body != null) {
+            body = uniqueTitle(body, songIds[random.nextInt(songIds.length)]);
+        } else if (method == HttpMethod.POST && body != null) {
+            body = uniqueTitle(body, null);
+        }
+        WebClient.RequestHeadersSpec<?> request = body == null ? webClient.method(method).uri(path)
+                : webClient.method(method).uri(path).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+        boolean create = method == HttpMethod.POST;
+        return request.exchangeToMono(response -> {
+                    boolean success = !response.statusCode().isError();
+                    if (create && success) {
+                        return response.bodyToMono(JsonNode.class)
+                                .doOnNext(song -> createdIds.add(song.path("id").asInt()))
+                                .thenReturn(true);
+                    }
+                    return response.releaseBody().thenReturn(success);
+                })
+                .timeout(TIMEOUT)
+                .onErrorReturn(false);
+    }
+
+    private String uniqueTitle(String body, Integer id) {
+        try {
+            ObjectNode song = (ObjectNode) objectMapper.readTree(body);
+            String suffix = " " + sequence.incrementAndGet();
+            String title = song.path("title").asText("song");
+            song.put("title", title.substring(0, Math.min(title.length(), MAX_TITLE_LENGTH - suffix.length())) + suffix);
+            if (id != null) {
+                song.put("id", id);
+            }
+            return objectMapper.writeValueAsString(song);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String withId(String path, int id) {
+        return SONG_ID.matcher(path).replaceFirst("/" + id);
+    }
+}
@@ -0,0 +1,150 @@
+package com.rest.playlist.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadTestReport class records the latencies of a load test run, in microseconds, per endpoint (request name),
+ * and reports the count, errors, throughput and percentiles of each endpoint and of all of them.
+ * Latencies are measured from the time a request was meant to be sent, see LoadGenerator.
+ */
+public final class LoadTestReport {
+
+    static final String TOTAL = "total";
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final double targetRate;
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    private volatile double measuredSeconds;
+
+    LoadTestReport(double targetRate, Iterable<String> names) {
+        this.targetRate = targetRate;
+        for (String name : names) {
+            endpoints.put(name, new Endpoint(name));
+        }
+    }
+
+    void record(String name, long latencyMicros, boolean success) {
+        Endpoint endpoint = endpoints.get(name);
+        endpoint.latencies.recordValue(latencyMicros);
+        if (!success) {
+            endpoint.errors.increment();
+        }
+    }
+
+    void finish(double measuredSeconds) {
+        this.measuredSeconds = measuredSeconds;
+    }
+
+    public Endpoint endpoint(String name) {
+        return endpoints.get(name);
+    }
+
+    public Endpoint total() {
+        Endpoint total = new Endpoint(TOTAL);
+        for (Endpoint endpoint : endpoints.values()) {
+            total.latencies.add(endpoint.latencies);
+            total.errors.add(endpoint.errors.sum());
+        }
+        return total;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Target rate %.0f req/s over %.1f s%n", targetRate, measuredSeconds);
+        out.printf("%-22s %9s %8s %10s %10s %10s %10s %10s %10s%n",
+                "endpoint", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Endpoint endpoint : endpoints.values()) {
+            print(out, endpoint);
+        }
+        print(out, total());
+    }
+
+    /**
+     * Writes report.json, the numbers of print, and one HdrHistogram percentile distribution per endpoint
+     * (name.hgrm, in milliseconds) to directory.
+     */
+    public void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode report = objectMapper.createObjectNode()
+                .put("targetRate", targetRate)
+                .put("seconds", measuredSeconds);
+        ObjectNode results = report.putObject("endpoints");
+        for (Endpoint endpoint : endpoints.values()) {
+            results.set(endpoint.name, json(objectMapper, endpoint));
+            histogram(directory, endpoint);
+        }
+        Endpoint total = total();
+        results.set(TOTAL, json(objectMapper, total));
+        histogram(directory, total);
+        objectMapper.writeValue(new File(directory, "report.json"), report);
+    }
+
+    private void print(PrintStream out, Endpoint endpoint) {
+        out.printf("%-22s %9d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f%n", endpoint.name, endpoint.getCount(),
+                endpoint.getErrors(), throughput(endpoint), endpoint.percentileMillis(50), endpoint.percentileMillis(90),
+                endpoint.percentileMillis(99), endpoint.percentileMillis(99.9), endpoint.getMaxMillis());
+    }
+
+    private ObjectNode json(ObjectMapper objectMapper, Endpoint endpoint) {
+        return objectMapper.createObjectNode()
+                .put("count", endpoint.getCount())
+                .put("errors", endpoint.getErrors())
+                .put("throughput", throughput(endpoint))
+                .put("p50Ms", endpoint.percentileMillis(50))
+                .put("p90Ms", endpoint.percentileMillis(90))
+                .put("p99Ms", endpoint.percentileMillis(99))
+                .put("p999Ms", endpoint.percentileMillis(99.9))
+                .put("maxMs", endpoint.getMaxMillis());
+    }
+
+    private static void histogram(File directory, Endpoint endpoint) throws IOException {
+        try (PrintStream out = new PrintStream(new File(directory, endpoint.name + ".hgrm"), "UTF-8")) {
+            endpoint.latencies.outputPercentileDistribution(out, MICROS_PER_MILLI);
+        }
+    }
+
+    public double throughput(Endpoint endpoint) {
+        return measuredSeconds == 0 ? 0 : endpoint.getCount() / measuredSeconds;
+    }
+
+    @Getter
+    public static final class Endpoint {
+        private final String name;
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+
+        private Endpoint(String name) {
+            this.name = name;
+        }
+
+        public long getCount() {
+            return latencies.getTotalCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public double percentileMillis(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+        }
+
+        public double getMaxMillis() {
+            return latencies.getMaxValue() / MICROS_PER_MILLI;
+        }
+    }
+}
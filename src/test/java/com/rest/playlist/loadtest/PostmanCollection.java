@@ -0,0 +1,63 @@
+package com.rest.playlist.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.http.HttpMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PostmanCollection class reads the requests of a Postman collection (v2.1) by name :
+ * method, path after {{url}} and raw JSON body. Folders are flattened.
+ */
+final class PostmanCollection {
+
+    static final File SONGS = new File("src/main/resources/postman/playlist.postman_collection.json");
+
+    private static final String URL_VARIABLE = "{{url}}";
+
+    private PostmanCollection() {
+    }
+
+    static Map<String, Request> read(File file) throws IOException {
+        Map<String, Request> requests = new LinkedHashMap<>();
+        read(new ObjectMapper().readTree(file).path("item"), requests);
+        return requests;
+    }
+
+    private static void read(JsonNode items, Map<String, Request> requests) {
+        for (JsonNode item : items) {
+            if (item.has("item")) {
+                read(item.path("item"), requests);
+                continue;
+            }
+            JsonNode request = item.path("request");
+            JsonNode url = request.path("url");
+            String raw = url.isTextual() ? url.asText() : url.path("raw").asText();
+            String body = request.path("body").path("raw").asText(null);
+            requests.put(item.path("name").asText(), new Request(item.path("name").asText(),
+                    HttpMethod.valueOf(request.path("method").asText()),
+                    raw.startsWith(URL_VARIABLE) ? raw.substring(URL_VARIABLE.length()) : raw,
+                    body == null || body.trim().isEmpty() ? null : body));
+        }
+    }
+
+    @Getter
+    static final class Request {
+        private final String name;
+        private final HttpMethod method;
+        private final String path;
+        private final String body;
+
+        Request(String name, HttpMethod method, String path, String body) {
+            this.name = name;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.rest.playlist.loadtest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.File;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test of the songs API on an embedded server started on a random port, or on loadtest.url when it is set.
+ * Only run with the load-test profile : mvn -Pload-test test
+ * <p>
+ * Options (system properties) : loadtest.rate (requests per second), loadtest.warmup and loadtest.duration
+ * (ISO-8601 or seconds), loadtest.connections, loadtest.mix (name=weight of the Postman collection requests),
+ * loadtest.max-p99 (milliseconds, 0 : not checked) and loadtest.max-error-rate.
+ * The playlist.* properties configure the embedded server the same way.
+ * The report is printed and written to target/load-test.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "playlist.storage.enabled=false")
+public class SongLoadTest {
+
+    private static final String DEFAULT_MIX = "getSongById=40,getSongs=5,getSongsByCategory=20,getSongsByArtist=20,"
+            + "createSong=6,updateSong=5,deleteSongById=4";
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void testSongsApiSustainsTheRate() throws Exception {
+        String apiUrl = System.getProperty("loadtest.url", "http://127.0.0.1:" + port) + "/api";
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "500"));
+        LoadGenerator generator = new LoadGenerator(apiUrl, PostmanCollection.read(PostmanCollection.SONGS),
+                LoadGenerator.parseMix(System.getProperty("loadtest.mix", DEFAULT_MIX)),
+                Integer.getInteger("loadtest.connections", 64));
+
+        LoadTestReport report = generator.run(rate, duration("loadtest.warmup", "10"), duration("loadtest.duration", "30"));
+        report.print(System.out);
+        report.write(new File("target/load-test"));
+
+        LoadTestReport.Endpoint total = report.total();
+        double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+        double maxP99 = Double.parseDouble(System.getProperty("loadtest.max-p99", "0"));
+        assertThat(total.getCount()).isPositive();
+        assertThat((double) total.getErrors() / total.getCount()).as("error rate").isLessThanOrEqualTo(maxErrorRate);
+        if (maxP99 > 0) {
+            assertThat(total.percentileMillis(99)).as("p99 ms").isLessThanOrEqualTo(maxP99);
+        }
+    }
+
+    private static Duration duration(String property, String defaultSeconds) {
+        String value = System.getProperty(property, defaultSeconds);
+        return value.startsWith("P") ? Duration.parse(value) : Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+    }
+}
@@ -0,0 +1,69 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntSongMapTest {
+
+    private final IntSongMap map = new IntSongMap();
+
+    @Test
+    public void testPutGetRemove() {
+        Song song = song();
+        assertThat(map.put(7, song)).isNull();
+        assertThat(map.get(7)).isSameAs(song);
+        assertThat(map.get(8)).isNull();
+        assertThat(map.size()).isEqualTo(1);
+
+        assertThat(map.remove(7)).isSameAs(song);
+        assertThat(map.get(7)).isNull();
+        assertThat(map.remove(7)).isNull();
+        assertThat(map.size()).isZero();
+    }
+
+    @Test
+    public void testPutReplacesExistingValue() {
+        Song first = song();
+        Song second = song();
+        map.put(-3, first);
+
+        assertThat(map.put(-3, second)).isSameAs(first);
+        assertThat(map.get(-3)).isSameAs(second);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGrowsAndReusesRemovedSlots() {
+        Song song = song();
+        for (int i = 0; i < 100_000; i++) {
+            map.put(i, song);
+        }
+        for (int i = 0; i < 100_000; i += 2) {
+            map.remove(i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100_000; i += 2) {
+                map.put(i, song);
+                map.remove(i);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(50_000);
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(map.get(i)).isEqualTo(i % 2 == 0 ? null : song);
+        }
+    }
+
+    private static Song song() {
+        return Song.builder()
+                .title("title")
+                .description("description")
+                .category(SongCategory.POP)
+                .duration("3:00")
+                .artistName("artist")
+                .build();
+    }
+}
@@ -0,0 +1,262 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JdbcSongRepositoryTest {
+
+    private EmbeddedDatabase database;
+    private JdbcSongRepository repository;
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        repository = new JdbcSongRepository(database, 2);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testSaveAndFind() {
+        List<Song> songs = stored(repository.saveAll(Arrays.asList(
+                song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla"),
+                song("So What", SongCategory.JAZZ, "Miles Davis"),
+                song("Stay With Me", SongCategory.POP, "Sam Smith"))));
+        Song oblivion = songs.get(0);
+        Song soWhat = songs.get(1);
+        Song stay = songs.get(2);
+
+        assertThat(repository.size()).isEqualTo(3);
+        assertThat(repository.count(SongCategory.JAZZ)).isEqualTo(1);
+        assertThat(repository.findById(soWhat.getId()).getTitle()).isEqualTo("So What");
+        assertThat(repository.findById(soWhat.getId()).getCategory()).isEqualTo(SongCategory.JAZZ);
+        assertThat(repository.findById(stay.getId() + 1)).isNull();
+        assertThat(repository.findAll()).extracting(Song::getId).containsExactly(oblivion.getId(), soWhat.getId(), stay.getId());
+        assertThat(repository.findByCategory(SongCategory.JAZZ)).extracting(Song::getTitle).containsExactly("So What");
+        assertThat(repository.findByArtistName("piazz")).extracting(Song::getTitle).containsExactly("Oblivion");
+        assertThat(repository.findByArtistName("100%")).isEmpty();
+        assertThat(repository.existsByTitleAndCategory("Oblivion", SongCategory.CLASSICAL, 0)).isTrue();
+        assertThat(repository.existsByTitleAndCategory("Oblivion", SongCategory.CLASSICAL, oblivion.getId())).isFalse();
+        try (Stream<Song> pop = repository.stream(SongCategory.POP)) {
+            assertThat(pop.map(Song::getTitle).collect(Collectors.toList())).containsExactly("Stay With Me");
+        }
+    }
+
+    @Test
+    public void testSaveReplacesExistingSong() {
+        Song oblivion = repository.save(song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla")).getAfter();
+        assertThat(oblivion.getId()).isPositive();
+
+        Song libertango = song("Libertango", SongCategory.JAZZ, "Astor Piazzolla").toBuilder().id(oblivion.getId()).build();
+        assertThat(repository.save(libertango, 0)).isNull();
+        assertThat(repository.save(libertango, 1).getBefore().getTitle()).isEqualTo("Oblivion");
+
+        assertThat(repository.size()).isEqualTo(1);
+        assertThat(repository.findById(oblivion.getId()).getTitle()).isEqualTo("Libertango");
+        assertThat(repository.findByCategory(SongCategory.CLASSICAL)).isEmpty();
+        assertThat(repository.findById(oblivion.getId()).getVersion()).isEqualTo(2);
+        assertThat(repository.version(null)).isEqualTo(2);
+        assertThat(repository.version(SongCategory.CLASSICAL)).isEqualTo(2);
+        assertThat(repository.version(SongCategory.JAZZ)).isEqualTo(1);
+        assertThat(repository.version(SongCategory.POP)).isZero();
+    }
+
+    @Test
+    public void testTitleAndCategoryAreUnique() {
+        Song oblivion = repository.save(song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla")).getAfter();
+
+        assertThatThrownBy(() -> repository.save(song(" OBLIVION", SongCategory.CLASSICAL, "Other artist"), 0))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.existsByTitleAndCategory("oblivion  ", SongCategory.CLASSICAL, 0)).isTrue();
+
+        List<SongChange> changes = repository.saveAll(Arrays.asList(
+                song("Libertango", SongCategory.CLASSICAL, "Astor Piazzolla"),
+                song("LIBERTANGO", SongCategory.CLASSICAL, "Astor Piazzolla"),
+                oblivion.toBuilder().title("Adios Nonino").build(),
+                song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla")));
+        assertThat(changes.get(0)).isNotNull();
+        assertThat(changes.get(1)).isNull();
+        assertThat(changes.get(2).getBefore().getTitle()).isEqualTo("Oblivion");
+        assertThat(changes.get(3)).isNotNull();
+        assertThat(repository.findByCategory(SongCategory.CLASSICAL)).extracting(Song::getTitle)
+                .containsExactly("Adios Nonino", "Libertango", "Oblivion");
+    }
+
+    @Test
+    public void testSaveAllChecksExpectedVersions() {
+        List<Song> songs = stored(repository.saveAll(Arrays.asList(
+                song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla"),
+                song("So What", SongCategory.JAZZ, "Miles Davis"))));
+        repository.remove(songs.get(1).getId());
+
+        List<SongChange> changes = repository.saveAll(
+                Arrays.asList(songs.get(0).toBuilder().duration("4:00").build(), songs.get(1).toBuilder().duration("4:00").build()),
+                Arrays.asList(2L, 1L));
+
+        assertThat(changes).containsExactly(null, null);
+        assertThat(repository.findById(songs.get(0).getId()).getDuration()).isEqualTo("3:00");
+        assertThat(repository.findById(songs.get(1).getId())).isNull();
+        assertThat(repository.saveAll(Collections.singletonList(songs.get(0).toBuilder().duration("4:00").build()),
+                Collections.singletonList(1L)).get(0).getAfter().getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRemove() {
+        List<Song> songs = stored(repository.saveAll(Arrays.asList(
+                song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla"),
+                song("So What", SongCategory.JAZZ, "Miles Davis"),
+                song("Stay With Me", SongCategory.POP, "Sam Smith"))));
+        Song oblivion = songs.get(0);
+        Song soWhat = songs.get(1);
+        Song stay = songs.get(2);
+
+        assertThat(repository.remove(oblivion.getId()).getTitle()).isEqualTo("Oblivion");
+        assertThat(repository.remove(oblivion.getId())).isNull();
+        List<Song> removed = repository.removeAll(Arrays.asList(stay.getId(), null, stay.getId() + 1, soWhat.getId()));
+        assertThat(removed).extracting(song -> song == null ? null : song.getTitle())
+                .containsExactly("Stay With Me", null, null, "So What");
+        assertThat(repository.size()).isZero();
+    }
+
+    @Test
+    public void testPages() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            songs.add(song("title " + i, i % 2 == 0 ? SongCategory.POP : SongCategory.JAZZ, "artist " + i));
+        }
+        songs = stored(repository.saveAll(songs));
+
+        SongPage first = repository.findAll(pageRequest(null, 3, null, null));
+        assertThat(first.getSongs()).extracting(Song::getTitle).containsExactly("title 0", "title 1", "title 2");
+        assertThat(first.getNextCursor()).isEqualTo(songs.get(2).getId());
+
+        SongPage next = repository.findAll(pageRequest(null, 3, first.getNextCursor(), null));
+        assertThat(next.getSongs()).extracting(Song::getTitle).containsExactly("title 3", "title 4", "title 5");
+
+        SongPage last = repository.findAll(pageRequest(2, 3, null, null));
+        assertThat(last.getSongs()).extracting(Song::getTitle).containsExactly("title 6");
+        assertThat(last.getNextCursor()).isNull();
+
+        SongPage pop = repository.findByCategory(SongCategory.POP, pageRequest(null, 2, null, "desc"));
+        assertThat(pop.getSongs()).extracting(Song::getTitle).containsExactly("title 6", "title 4");
+        assertThat(pop.getNextCursor()).isEqualTo(songs.get(4).getId());
+    }
+
+    @Test
+    public void testSearchRanksTitleAndArtistHigher() {
+        Song inDescription = song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla").toBuilder()
+                .description("Piazzolla and the blue moon")
+                .build();
+        Song inTitle = song("Blue in Green", SongCategory.JAZZ, "Miles Davis");
+        Song unrelated = song("Stay With Me", SongCategory.POP, "Sam Smith");
+        repository.saveAll(Arrays.asList(inDescription, inTitle, unrelated));
+
+        assertThat(repository.search("blue", 10)).extracting(Song::getTitle).containsExactly("Blue in Green", "Oblivion");
+        assertThat(repository.search("blue", 1)).extracting(Song::getTitle).containsExactly("Blue in Green");
+    }
+
+    @Test
+    public void testSearchRanksAllTheMatchingSongs() {
+        List<Song> inDescription = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            inDescription.add(song("Song " + i, SongCategory.POP, "Artist " + i).toBuilder()
+                    .description("a blue song")
+                    .build());
+        }
+        repository.saveAll(inDescription);
+        repository.save(song("Blue in Green", SongCategory.JAZZ, "Miles Davis"));
+
+        assertThat(repository.search("blue", 2)).extracting(Song::getTitle).containsExactly("Blue in Green", "Song 0");
+    }
+
+    @Test(timeout = 10000)
+    public void testWritesNeedASingleConnection() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(1);
+        config.setConnectionTimeout(1000);
+        try (HikariDataSource dataSource = new HikariDataSource(config)) {
+            JdbcSongRepository single = new JdbcSongRepository(dataSource, 2);
+            List<Song> songs = stored(single.saveAll(Arrays.asList(
+                    song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla"),
+                    song("So What", SongCategory.JAZZ, "Miles Davis"))));
+            Song stay = single.save(song("Stay With Me", SongCategory.POP, "Sam Smith"), 0).getAfter();
+
+            assertThat(single.findAll()).extracting(Song::getId)
+                    .containsExactly(songs.get(0).getId(), songs.get(1).getId(), stay.getId());
+        }
+    }
+
+    @Test
+    public void testIdsAreOnlyGivenToCreatedSongsAndNeverReused() {
+        Song oblivion = repository.save(song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla")).getAfter();
+        assertThatThrownBy(() -> repository.save(song("Oblivion", SongCategory.CLASSICAL, "Astor Piazzolla")))
+                .isInstanceOf(DuplicateKeyException.class);
+        Song soWhat = repository.save(song("So What", SongCategory.JAZZ, "Miles Davis")).getAfter();
+        assertThat(soWhat.getId()).isEqualTo(oblivion.getId() + 1);
+
+        // another instance on the same database reserves the following block
+        Song stay = new JdbcSongRepository(database, 2).save(song("Stay With Me", SongCategory.POP, "Sam Smith")).getAfter();
+        assertThat(stay.getId()).isGreaterThan(soWhat.getId());
+
+        repository.remove(stay.getId());
+        Song chosen = repository.save(song("Blue in Green", SongCategory.JAZZ, "Miles Davis").toBuilder().id(5000).build())
+                .getAfter();
+        assertThat(chosen.getId()).isEqualTo(5000);
+        JdbcSongRepository restarted = new JdbcSongRepository(database, 2);
+        assertThat(restarted.save(song("Libertango", SongCategory.CLASSICAL, "Astor Piazzolla")).getAfter().getId())
+                .isGreaterThan(5000);
+    }
+
+    private static List<Song> stored(List<SongChange> changes) {
+        return changes.stream().map(SongChange::getAfter).collect(Collectors.toList());
+    }
+
+    private static SongPageRequest pageRequest(Integer page, Integer size, Integer after, String direction) {
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setPage(page);
+        pageRequest.setSize(size);
+        pageRequest.setAfter(after);
+        pageRequest.setDirection(direction);
+        return pageRequest;
+    }
+
+    private static Song song(String title, SongCategory category, String artistName) {
+        return Song.builder()
+                .title(title)
+                .description("description of " + title)
+                .category(category)
+                .duration("3:00")
+                .artistName(artistName)
+                .build();
+    }
+}
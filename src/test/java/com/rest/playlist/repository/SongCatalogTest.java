@@ -0,0 +1,372 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SongCatalogTest {
+
+    private SongCatalog catalog;
+
+    @Before
+    public void setup() {
+        catalog = new SongCatalog();
+    }
+
+    @Test
+    public void testSaveIndexesSong() {
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+
+        assertThat(catalog.findById(song.getId())).isSameAs(song);
+        assertThat(catalog.findByCategory(SongCategory.CLASSICAL)).containsExactly(song);
+        assertThat(catalog.findByCategory(SongCategory.POP)).isEmpty();
+        assertThat(catalog.existsByTitleAndCategory("Oblivion", SongCategory.CLASSICAL, 0)).isTrue();
+        assertThat(catalog.existsByTitleAndCategory("Oblivion", SongCategory.CLASSICAL, song.getId())).isFalse();
+    }
+
+    @Test
+    public void testSaveReindexesChangedSong() {
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+
+        SongChange change = catalog.save(song.toBuilder().title("Libertango").category(SongCategory.JAZZ).build());
+
+        assertThat(change.getBefore()).isSameAs(song);
+        assertThat(song.getTitle()).isEqualTo("Oblivion");
+        assertThat(catalog.findByCategory(SongCategory.CLASSICAL)).isEmpty();
+        assertThat(catalog.findByCategory(SongCategory.JAZZ)).containsExactly(change.getAfter());
+        assertThat(catalog.count(SongCategory.CLASSICAL)).isZero();
+        assertThat(catalog.count(SongCategory.JAZZ)).isEqualTo(1);
+        assertThat(catalog.existsByTitleAndCategory("Oblivion", SongCategory.CLASSICAL, 0)).isFalse();
+        assertThat(catalog.existsByTitleAndCategory("Libertango", SongCategory.JAZZ, 0)).isTrue();
+    }
+
+    @Test
+    public void testWritesIncrementVersions() {
+        long catalogVersion = catalog.version(null);
+        long classicalVersion = catalog.version(SongCategory.CLASSICAL);
+        long popVersion = catalog.version(SongCategory.POP);
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+        assertThat(song.getVersion()).isEqualTo(1);
+        assertThat(catalog.version(null)).isGreaterThan(catalogVersion);
+        assertThat(catalog.version(SongCategory.CLASSICAL)).isGreaterThan(classicalVersion);
+
+        long jazzVersion = catalog.version(SongCategory.JAZZ);
+        classicalVersion = catalog.version(SongCategory.CLASSICAL);
+        song = catalog.save(song.toBuilder().category(SongCategory.JAZZ).build()).getAfter();
+        assertThat(song.getVersion()).isEqualTo(2);
+        assertThat(catalog.version(SongCategory.CLASSICAL)).isGreaterThan(classicalVersion);
+        assertThat(catalog.version(SongCategory.JAZZ)).isGreaterThan(jazzVersion);
+
+        catalogVersion = catalog.version(null);
+        catalog.remove(song.getId() + 1);
+        assertThat(catalog.version(null)).isEqualTo(catalogVersion);
+        assertThat(catalog.version(SongCategory.POP)).isEqualTo(popVersion);
+    }
+
+    @Test
+    public void testSaveWithExpectedVersionIsACompareAndSet() {
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla"), 0).getAfter();
+        assertThat(catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla").toBuilder().id(song.getId()).build(), 0))
+                .isNull();
+
+        assertThat(catalog.save(song.toBuilder().title("Libertango").build(), 1).getAfter().getVersion()).isEqualTo(2);
+        assertThat(catalog.save(song.toBuilder().title("Adios Nonino").build(), 1)).isNull();
+        assertThat(catalog.findById(song.getId()).getTitle()).isEqualTo("Libertango");
+    }
+
+    @Test
+    public void testConcurrentCompareAndSetUpdatesAreNotLost() throws InterruptedException {
+        // duration counts the updates
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla").toBuilder().duration("0").build())
+                .getAfter();
+        int threads = 8;
+        int updatesPerThread = 250;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < updatesPerThread; i++) {
+                    while (true) {
+                        Song current = catalog.findById(song.getId());
+                        int plays = Integer.parseInt(current.getDuration());
+                        Song next = current.toBuilder().duration(String.valueOf(plays + 1)).build();
+                        if (catalog.save(next, current.getVersion()) != null) {
+                            break;
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        Song last = catalog.findById(song.getId());
+        assertThat(last.getVersion()).isEqualTo(1 + threads * updatesPerThread);
+        assertThat(last.getDuration()).isEqualTo(String.valueOf(threads * updatesPerThread));
+    }
+
+    @Test
+    public void testSaveRejectsTakenNormalizedKey() {
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+
+        assertThatThrownBy(() -> catalog.save(song("  oblivion ", SongCategory.CLASSICAL, "Other artist")))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(catalog.existsByTitleAndCategory("OBLIVION", SongCategory.CLASSICAL, 0)).isTrue();
+        assertThat(catalog.save(song("Oblivion", SongCategory.JAZZ, "Piazzolla"))).isNotNull();
+
+        List<SongChange> changes = catalog.saveAll(Arrays.asList(
+                song("Libertango", SongCategory.CLASSICAL, "Piazzolla"),
+                song("libertango", SongCategory.CLASSICAL, "Piazzolla"),
+                song.toBuilder().title("Adios  Nonino").build(),
+                song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")));
+        assertThat(changes.get(0)).isNotNull();
+        assertThat(changes.get(1)).isNull();
+        assertThat(changes.get(2).getBefore()).isSameAs(song);
+        // the key released by the update is free for the songs that follow
+        assertThat(changes.get(3)).isNotNull();
+        assertThat(catalog.findByCategory(SongCategory.CLASSICAL)).hasSize(3);
+    }
+
+    @Test
+    public void testConcurrentCreatesOfTheSameKeyStoreOneSong() throws InterruptedException {
+        int threads = 8;
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            String title = t % 2 == 0 ? "Oblivion" : "OBLIVION ";
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    catalog.save(song(title, SongCategory.CLASSICAL, "Piazzolla"), 0);
+                    created.incrementAndGet();
+                } catch (DuplicateKeyException | InterruptedException e) {
+                    // another thread took the key
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(created.get()).isEqualTo(1);
+        assertThat(catalog.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void testIdsAreOnlyGivenToCreatedSongs() {
+        Song built = song("Oblivion", SongCategory.CLASSICAL, "Piazzolla");
+        assertThat(built.getId()).isZero();
+        Song oblivion = catalog.save(built).getAfter();
+        assertThat(oblivion.getId()).isPositive();
+
+        assertThatThrownBy(() -> catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(catalog.save(song("Libertango", SongCategory.CLASSICAL, "Piazzolla")).getAfter().getId())
+                .isEqualTo(oblivion.getId() + 1);
+
+        Song chosen = catalog.save(song("Adios Nonino", SongCategory.CLASSICAL, "Piazzolla").toBuilder().id(5000).build())
+                .getAfter();
+        assertThat(chosen.getId()).isEqualTo(5000);
+        assertThat(catalog.save(song("So What", SongCategory.JAZZ, "Miles Davis")).getAfter().getId()).isEqualTo(5001);
+    }
+
+    @Test(timeout = 5000)
+    public void testSaveRejectsIdsOutOfTheAllocatedRange() {
+        for (int id : new int[]{-1, Integer.MAX_VALUE, Integer.MAX_VALUE - 1000}) {
+            assertThatThrownBy(() -> catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla").toBuilder().id(id).build()))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        assertThat(catalog.size()).isZero();
+        assertThat(catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter().getId()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemoveUnindexesSong() {
+        Song song = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+
+        assertThat(catalog.remove(song.getId())).isSameAs(song);
+        assertThat(catalog.remove(song.getId())).isNull();
+        assertThat(catalog.findById(song.getId())).isNull();
+        assertThat(catalog.findAll()).isEmpty();
+        assertThat(catalog.findByCategory(SongCategory.CLASSICAL)).isEmpty();
+        assertThat(catalog.count(SongCategory.CLASSICAL)).isZero();
+        assertThat(catalog.existsByTitleAndCategory("Oblivion", SongCategory.CLASSICAL, 0)).isFalse();
+    }
+
+    @Test
+    public void testFindByArtistNameIgnoresCase() {
+        Song song = catalog.save(song("Burning", SongCategory.POP, "Sam Smith")).getAfter();
+        catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla"));
+
+        assertThat(catalog.findByArtistName("sam")).containsExactly(song);
+        assertThat(catalog.findByArtistName("SMITH")).containsExactly(song);
+        assertThat(catalog.findByArtistName("unknown")).isEmpty();
+    }
+
+    @Test
+    public void testFindByArtistNameMatchesAnySubstring() {
+        List<Song> songs = stored(catalog.saveAll(Arrays.asList(
+                song("Burning", SongCategory.POP, "Sam Smith"),
+                song("For The Lover That I Lost", SongCategory.POP, "Sam Smith"),
+                song("Blues In My Bottle", SongCategory.JAZZ, "Christian Willisohn"))));
+        Song burning = songs.get(0);
+        Song lover = songs.get(1);
+        Song blues = songs.get(2);
+
+        assertThat(catalog.findByArtistName("m sm")).containsExactly(burning, lover);
+        assertThat(catalog.findByArtistName("S")).containsExactly(burning, lover, blues);
+        assertThat(catalog.findByArtistName("is")).containsExactly(blues);
+        assertThat(catalog.findByArtistName("smithy")).isEmpty();
+        assertThat(catalog.findByArtistName("sam willisohn")).isEmpty();
+    }
+
+    @Test
+    public void testFindByArtistNameFollowsUpdatesAndRemovals() {
+        Song song = catalog.save(song("Burning", SongCategory.POP, "Sam Smith")).getAfter();
+
+        song = catalog.save(song.toBuilder().artistName("Daniel Castro").build()).getAfter();
+        assertThat(catalog.findByArtistName("sam")).isEmpty();
+        assertThat(catalog.findByArtistName("castro")).containsExactly(song);
+
+        catalog.remove(song.getId());
+        assertThat(catalog.findByArtistName("castro")).isEmpty();
+    }
+
+    @Test
+    public void testSearchFoldsAccentsAndRanksResults() {
+        List<Song> songs = stored(catalog.saveAll(Arrays.asList(
+                song("14 Romances", SongCategory.CLASSICAL, "Rachmaninov").toBuilder()
+                        .description("Album musical de Sergueï Rachmaninov").build(),
+                song("The Falls", SongCategory.CLASSICAL, "Morricone").toBuilder()
+                        .description("Album musical d'Ennio Morricone").build(),
+                song("Burning", SongCategory.POP, "Sam Smith"))));
+        Song romances = songs.get(0);
+        Song falls = songs.get(1);
+
+        assertThat(catalog.search("serguei", 10)).containsExactly(romances);
+        assertThat(catalog.search("ENNIO", 10)).containsExactly(falls);
+        assertThat(catalog.search("morricone album", 10)).containsExactly(falls, romances);
+        assertThat(catalog.search("album", 1)).hasSize(1);
+        assertThat(catalog.search("opera", 10)).isEmpty();
+
+        catalog.remove(falls.getId());
+        assertThat(catalog.search("ennio", 10)).isEmpty();
+    }
+
+    @Test
+    public void testFindAllWalksKeysetCursors() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            songs.add(song("title " + i, SongCategory.POP, "artist " + i));
+        }
+        songs = stored(catalog.saveAll(songs));
+
+        SongPage first = catalog.findAll(pageRequest(null, 2, null, null));
+        assertThat(first.getSongs()).containsExactly(songs.get(0), songs.get(1));
+        assertThat(first.getNextCursor()).isEqualTo(songs.get(1).getId());
+
+        SongPage second = catalog.findAll(pageRequest(null, 2, first.getNextCursor(), null));
+        assertThat(second.getSongs()).containsExactly(songs.get(2), songs.get(3));
+
+        SongPage last = catalog.findAll(pageRequest(null, 2, second.getNextCursor(), null));
+        assertThat(last.getSongs()).containsExactly(songs.get(4));
+        assertThat(last.getNextCursor()).isNull();
+
+        SongPage descending = catalog.findAll(pageRequest(null, 2, songs.get(2).getId(), "desc"));
+        assertThat(descending.getSongs()).containsExactly(songs.get(1), songs.get(0));
+        assertThat(descending.getNextCursor()).isNull();
+
+        SongPage offset = catalog.findAll(pageRequest(1, 3, null, null));
+        assertThat(offset.getSongs()).containsExactly(songs.get(3), songs.get(4));
+    }
+
+    @Test
+    public void testFindByArtistNamePages() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            songs.add(song("title " + i, SongCategory.POP, i % 2 == 0 ? "Sam Smith" : "Piazzolla"));
+        }
+        songs = stored(catalog.saveAll(songs));
+
+        SongPage first = catalog.findByArtistName("smith", pageRequest(null, 2, null, null));
+        assertThat(first.getSongs()).containsExactly(songs.get(0), songs.get(2));
+
+        SongPage second = catalog.findByArtistName("smith", pageRequest(null, 2, first.getNextCursor(), null));
+        assertThat(second.getSongs()).containsExactly(songs.get(4));
+        assertThat(second.getNextCursor()).isNull();
+
+        SongPage descending = catalog.findByArtistName("smith", pageRequest(null, 5, songs.get(3).getId(), "desc"));
+        assertThat(descending.getSongs()).containsExactly(songs.get(2), songs.get(0));
+    }
+
+    @Test
+    public void testConcurrentWritesKeepIndexesConsistent() throws InterruptedException {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            songs.add(song("title " + i, SongCategory.values()[i % SongCategory.values().length], "artist " + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (Song song : songs) {
+            executor.execute(() -> {
+                Song stored = catalog.save(song).getAfter();
+                if (stored.getId() % 2 == 0) {
+                    catalog.remove(stored.getId());
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(catalog.size()).isEqualTo(1000);
+        assertThat(catalog.findAll()).hasSize(1000);
+        int indexedByCategory = 0;
+        for (SongCategory category : SongCategory.values()) {
+            indexedByCategory += catalog.findByCategory(category).size();
+        }
+        assertThat(indexedByCategory).isEqualTo(1000);
+    }
+
+    private static List<Song> stored(List<SongChange> changes) {
+        return changes.stream().map(SongChange::getAfter).collect(Collectors.toList());
+    }
+
+    private static SongPageRequest pageRequest(Integer page, Integer size, Integer after, String direction) {
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setPage(page);
+        pageRequest.setSize(size);
+        pageRequest.setAfter(after);
+        pageRequest.setDirection(direction);
+        return pageRequest;
+    }
+
+    private static Song song(String title, SongCategory category, String artistName) {
+        return Song.builder()
+                .title(title)
+                .description("description of " + title)
+                .category(category)
+                .duration("3:00")
+                .artistName(artistName)
+                .build();
+    }
+}
@@ -0,0 +1,322 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SongStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SongCatalog catalog;
+
+    @After
+    public void tearDown() throws IOException {
+        if (catalog != null) {
+            catalog.close();
+        }
+    }
+
+    @Test
+    public void testRecoverReplaysJournal() throws IOException {
+        catalog = open(SongStorage.FsyncMode.GROUP, 0);
+        Song oblivion = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+        List<SongChange> changes = catalog.saveAll(Arrays.asList(
+                song("Stay With Me", SongCategory.POP, "Sam Smith"),
+                song("So What", SongCategory.JAZZ, "Miles Davis")));
+        Song stay = changes.get(0).getAfter();
+        Song soWhat = changes.get(1).getAfter();
+        catalog.save(oblivion.toBuilder().title("Libertango").build());
+        catalog.remove(stay.getId());
+
+        catalog = reopen(SongStorage.FsyncMode.GROUP, 0);
+
+        assertThat(catalog.findAll()).extracting(Song::getTitle).containsExactly("Libertango", "So What");
+        assertThat(catalog.findById(oblivion.getId()).getArtistName()).isEqualTo("Piazzolla");
+        assertThat(catalog.findById(oblivion.getId()).getVersion()).isEqualTo(2);
+        assertThat(catalog.existsByTitleAndCategory("So What", SongCategory.JAZZ, 0)).isTrue();
+        assertThat(catalog.findByArtistName("miles")).extracting(Song::getId).containsExactly(soWhat.getId());
+        assertThat(catalog.save(song("Peace Piece", SongCategory.JAZZ, "Bill Evans")).getAfter().getId())
+                .isGreaterThan(soWhat.getId());
+    }
+
+    @Test
+    public void testSnapshotCompactsJournal() throws Exception {
+        catalog = open(SongStorage.FsyncMode.PER_OP, 10);
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 35; i++) {
+            songs.add(catalog.save(song("title " + i, SongCategory.POP, "artist " + i)).getAfter());
+        }
+        catalog.removeAll(Arrays.asList(songs.get(0).getId(), songs.get(1).getId()));
+
+        catalog = reopen(SongStorage.FsyncMode.PER_OP, 10);
+
+        assertThat(files("snapshot-")).isNotEmpty();
+        assertThat(files("journal-").size()).isLessThan(4);
+        assertThat(catalog.size()).isEqualTo(33);
+        assertThat(catalog.findById(songs.get(34).getId()).getTitle()).isEqualTo("title 34");
+        assertThat(catalog.findById(songs.get(0).getId())).isNull();
+        catalog.awaitHydrated();
+        assertThat(catalog.findByArtistName("artist 34")).extracting(Song::getTitle).containsExactly("title 34");
+        assertThat(catalog.size()).isEqualTo(33);
+    }
+
+    @Test
+    public void testIdsAreNotReusedAfterRestart() throws IOException {
+        catalog = open(SongStorage.FsyncMode.PER_OP, 3);
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            songs.add(catalog.save(song("title " + i, SongCategory.POP, "artist " + i)).getAfter());
+        }
+        int removedId = songs.get(4).getId();
+        catalog.remove(removedId);
+        catalog = reopen(SongStorage.FsyncMode.PER_OP, 3);
+
+        Song created = catalog.save(song("title 5", SongCategory.POP, "artist 5")).getAfter();
+        assertThat(created.getId()).isGreaterThan(removedId);
+
+        // the snapshots compacted away the journal segments that reserved the first id blocks
+        for (int i = 6; i < 12; i++) {
+            catalog.save(song("title " + i, SongCategory.POP, "artist " + i));
+        }
+        catalog.removeAll(catalog.findAll().stream().map(Song::getId).collect(Collectors.toList()));
+        catalog = reopen(SongStorage.FsyncMode.PER_OP, 3);
+        assertThat(catalog.save(song("title 12", SongCategory.POP, "artist 12")).getAfter().getId())
+                .isGreaterThan(created.getId() + 6);
+    }
+
+    @Test
+    public void testMappedSnapshotSharesStrings() throws IOException {
+        List<Song> songs = Arrays.asList(
+                song(1, "Oblivion", SongCategory.CLASSICAL, "Piazzolla"),
+                song(2, "Libertango", SongCategory.CLASSICAL, "Piazzolla").toBuilder().version(4).build(),
+                song(3, "So What", SongCategory.JAZZ, "Miles Davis"));
+        Path file = folder.newFile("snapshot-1.bin").toPath();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            MappedSongSnapshot.write(channel, songs);
+        }
+
+        MappedSongSnapshot snapshot = MappedSongSnapshot.open(file);
+
+        // 3 titles, 3 descriptions, 2 artists and a single duration
+        assertThat(snapshot.stringCount()).isEqualTo(9);
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.maxId()).isEqualTo(songs.get(2).getId());
+        assertThat(snapshot.categoryAt(2)).isEqualTo(SongCategory.JAZZ);
+        Song libertango = snapshot.get(songs.get(1).getId());
+        assertThat(libertango.getTitle()).isEqualTo("Libertango");
+        assertThat(libertango.getArtistName()).isEqualTo("Piazzolla");
+        assertThat(libertango.getCategory()).isEqualTo(SongCategory.CLASSICAL);
+        assertThat(libertango.getVersion()).isEqualTo(4);
+        assertThat(snapshot.get(songs.get(2).getId() + 1)).isNull();
+    }
+
+    @Test
+    public void testMappedViewOverlaysReplayedJournal() throws IOException {
+        Song oblivion = song(1, "Oblivion", SongCategory.CLASSICAL, "Piazzolla");
+        Song libertango = song(2, "Libertango", SongCategory.CLASSICAL, "Piazzolla");
+        Song soWhat = song(3, "So What", SongCategory.JAZZ, "Miles Davis");
+        Path file = folder.newFile("snapshot-1.bin").toPath();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            MappedSongSnapshot.write(channel, Arrays.asList(oblivion, libertango, soWhat));
+        }
+        Song peacePiece = song(4, "Peace Piece", SongCategory.JAZZ, "Bill Evans");
+        Song adiosNonino = oblivion.toBuilder().title("Adios Nonino").build();
+        Map<Integer, Song> replayed = new HashMap<>();
+        replayed.put(libertango.getId(), null);
+        replayed.put(oblivion.getId(), adiosNonino);
+        replayed.put(peacePiece.getId(), peacePiece);
+
+        MappedSongView view = new MappedSongView(MappedSongSnapshot.open(file), replayed);
+
+        assertThat(view.size()).isEqualTo(3);
+        assertThat(view.get(libertango.getId())).isNull();
+        assertThat(view.get(oblivion.getId()).getTitle()).isEqualTo("Adios Nonino");
+        assertThat(view.get(soWhat.getId()).getTitle()).isEqualTo("So What");
+        assertThat(titles(view.songs(null, false, null))).containsExactly("Adios Nonino", "So What", "Peace Piece");
+        assertThat(titles(view.songs(SongCategory.JAZZ, true, null))).containsExactly("Peace Piece", "So What");
+        assertThat(titles(view.songs(null, false, soWhat.getId()))).containsExactly("Peace Piece");
+        assertThat(titles(view.songs(null, true, soWhat.getId()))).containsExactly("Adios Nonino");
+    }
+
+    @Test
+    public void testMappedViewAnswersArtistAndKeyQueries() throws IOException {
+        Song oblivion = song(1, "Oblivion", SongCategory.CLASSICAL, "Piazzolla");
+        Song libertango = song(2, "Libertango", SongCategory.CLASSICAL, "Piazzolla");
+        Song soWhat = song(3, "So What", SongCategory.JAZZ, "Miles Davis");
+        Path file = folder.newFile("snapshot-1.bin").toPath();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            MappedSongSnapshot.write(channel, Arrays.asList(oblivion, libertango, soWhat));
+        }
+        Song milestones = song(4, "Milestones", SongCategory.JAZZ, "Miles Davis");
+        Map<Integer, Song> replayed = new HashMap<>();
+        replayed.put(libertango.getId(), null);
+        replayed.put(milestones.getId(), milestones);
+
+        MappedSongView view = new MappedSongView(MappedSongSnapshot.open(file), replayed);
+
+        assertThat(titles(view.songsByArtist("piazz", false, null))).containsExactly("Oblivion");
+        assertThat(titles(view.songsByArtist("MILES", true, null))).containsExactly("Milestones", "So What");
+        assertThat(titles(view.songsByArtist("miles", false, soWhat.getId()))).containsExactly("Milestones");
+        assertThat(view.containsKey(SongKey.of(" so  what", SongCategory.JAZZ), 0)).isTrue();
+        assertThat(view.containsKey(SongKey.of("So What", SongCategory.JAZZ), soWhat.getId())).isFalse();
+        assertThat(view.containsKey(SongKey.of("milestones", SongCategory.JAZZ), 0)).isTrue();
+        assertThat(view.containsKey(SongKey.of("Libertango", SongCategory.CLASSICAL), 0)).isFalse();
+    }
+
+    @Test
+    public void testCorruptSnapshotIsDetectedByTheHydration() throws IOException {
+        catalog = open(SongStorage.FsyncMode.PER_OP, 3);
+        for (int i = 0; i < 4; i++) {
+            catalog.save(song("title " + i, SongCategory.POP, "artist " + i));
+        }
+        catalog.close();
+        catalog = null;
+        List<Path> snapshots = files("snapshot-");
+        Path snapshot = snapshots.get(snapshots.size() - 1);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot, bytes);
+
+        // opening the snapshot does not read it whole
+        MappedSongSnapshot.open(snapshot);
+        catalog = open(SongStorage.FsyncMode.PER_OP, 3);
+
+        assertThatThrownBy(catalog::awaitHydrated).isInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("Corrupt song snapshot (checksum mismatch): " + snapshot);
+        assertThatThrownBy(catalog::findAll).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testRecoverTruncatesTornRecord() throws IOException {
+        catalog = open(SongStorage.FsyncMode.GROUP, 0);
+        catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla"));
+        catalog.close();
+
+        Path lastSegment = files("journal-").get(files("journal-").size() - 1);
+        long validLength = Files.size(lastSegment);
+        // a record header announcing 200 bytes, followed by only a few of them
+        Files.write(lastSegment, new byte[]{0, 0, 0, (byte) 200, 1, 2, 3, 4, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        catalog = open(SongStorage.FsyncMode.GROUP, 0);
+        assertThat(Files.size(lastSegment)).isEqualTo(validLength);
+        assertThat(catalog.findAll()).extracting(Song::getTitle).containsExactly("Oblivion");
+
+        catalog.save(song("Stay With Me", SongCategory.POP, "Sam Smith"));
+        catalog = reopen(SongStorage.FsyncMode.GROUP, 0);
+        assertThat(catalog.findAll()).extracting(Song::getTitle).containsExactly("Oblivion", "Stay With Me");
+    }
+
+    @Test
+    public void testConcurrentWritesAreCheckedAgainstPendingWrites() throws Exception {
+        // snapshots are taken while the writes go on
+        catalog = open(SongStorage.FsyncMode.GROUP, 20);
+        Song oblivion = catalog.save(song("Oblivion", SongCategory.CLASSICAL, "Piazzolla")).getAfter();
+        int threads = 8;
+        int keys = 50;
+        AtomicInteger updates = new AtomicInteger();
+        AtomicInteger creates = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < keys; i++) {
+                        Song current = catalog.findById(oblivion.getId());
+                        if (catalog.save(current.toBuilder().duration(i + ":00").build(), current.getVersion()) != null) {
+                            updates.incrementAndGet();
+                        }
+                        try {
+                            catalog.save(song("shared " + i, SongCategory.POP, "artist"));
+                            creates.incrementAndGet();
+                        } catch (DuplicateKeyException e) {
+                            // another thread created it first
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(creates.get()).isEqualTo(keys);
+        assertThat(catalog.findById(oblivion.getId()).getVersion()).isEqualTo(1 + updates.get());
+        assertThat(catalog.size()).isEqualTo(keys + 1);
+        List<Song> before = catalog.findAll();
+
+        catalog = reopen(SongStorage.FsyncMode.GROUP, 20);
+
+        assertThat(files("snapshot-")).isNotEmpty();
+        assertThat(catalog.findAll()).usingElementComparatorOnFields("id", "title", "duration", "version")
+                .containsExactlyElementsOf(before);
+    }
+
+    private static List<String> titles(Iterator<Song> songs) {
+        List<String> titles = new ArrayList<>();
+        songs.forEachRemaining(song -> titles.add(song.getTitle()));
+        return titles;
+    }
+
+    private SongCatalog open(SongStorage.FsyncMode fsyncMode, long snapshotEvery) throws IOException {
+        return new SongCatalog(new SongStorage(folder.getRoot().toPath(), fsyncMode, snapshotEvery));
+    }
+
+    private SongCatalog reopen(SongStorage.FsyncMode fsyncMode, long snapshotEvery) throws IOException {
+        catalog.close();
+        return open(fsyncMode, snapshotEvery);
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Song song(String title, SongCategory category, String artistName) {
+        return song(0, title, category, artistName);
+    }
+
+    private static Song song(int id, String title, SongCategory category, String artistName) {
+        return Song.builder()
+                .id(id)
+                .title(title)
+                .description("description of " + title)
+                .category(category)
+                .duration("3:00")
+                .artistName(artistName)
+                .build();
+    }
+}
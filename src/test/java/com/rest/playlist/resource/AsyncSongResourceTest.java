@@ -0,0 +1,10 @@
+package com.rest.playlist.resource;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the SongResourceTest requests with playlist.async.enabled, on the executor of the endpoints.
+ */
+@TestPropertySource(properties = "playlist.async.enabled=true")
+public class AsyncSongResourceTest extends SongResourceTest {
+}
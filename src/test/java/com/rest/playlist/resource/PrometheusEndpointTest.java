@@ -0,0 +1,46 @@
+package com.rest.playlist.resource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Scrapes /actuator/prometheus after a found and a missing song : the service timers, the error counters
+ * and the catalog gauges are exported.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "playlist.storage.enabled=false")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class PrometheusEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testScrapeExportsSongMetrics() throws Exception {
+        mockMvc.perform(get("/api/songs/1")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/songs/" + Integer.MAX_VALUE)).andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(
+                        "playlist_songs_service_seconds_count{application=\"playlist\",method=\"getSongById\",outcome=\"success\",}")))
+                .andExpect(content().string(containsString(
+                        "playlist_songs_service_seconds{application=\"playlist\",method=\"getSongById\",outcome=\"error\",quantile=\"0.99\",}")))
+                .andExpect(content().string(containsString(
+                        "playlist_songs_errors_total{application=\"playlist\",error=\"not_found\",} 1.0")))
+                .andExpect(content().string(containsString("playlist_songs_category_size{application=\"playlist\",category=\"JAZZ\",}")))
+                .andExpect(content().string(containsString("playlist_songs_cache_requests_total")));
+    }
+}
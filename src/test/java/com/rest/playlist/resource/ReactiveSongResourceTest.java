@@ -0,0 +1,248 @@
+package com.rest.playlist.resource;
+
+import com.rest.playlist.config.ReactiveConfig;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.service.SongChangeFeed;
+import com.rest.playlist.service.SongChangedEvent;
+import com.rest.playlist.web.exception.PreconditionFailedException;
+import com.rest.playlist.web.exception.ResourceNotFoundException;
+import com.rest.playlist.web.resource.ReactiveSongResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@WebFluxTest(ReactiveSongResource.class)
+@Import({ReactiveConfig.class, SongChangeFeed.class})
+public class ReactiveSongResourceTest {
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @MockBean
+    private ISongService songService;
+
+    @Autowired
+    private SongChangeFeed changeFeed;
+
+    private Song mySong = Song.builder()
+            .id(1)
+            .title("test Song #1")
+            .description("test description Song #1")
+            .category(SongCategory.CLASSICAL)
+            .duration("3:01")
+            .artistName("artist1")
+            .build();
+
+    private List<Song> songs = Arrays.asList(mySong, mySong.toBuilder().id(2).title("test Song #2").build());
+
+    @Test
+    public void testGetSongs() {
+        given(songService.streamSongs(null)).willAnswer(invocation -> songs.stream());
+        webClient.get().uri("/api/songs")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].title").isEqualTo("test Song #2");
+    }
+
+    @Test
+    public void testSongsAreStreamedAsNdjson() {
+        given(songService.streamSongs("CLASSICAL")).willAnswer(invocation -> songs.stream());
+        Flux<Song> body = webClient.get().uri("/api/songs/category/CLASSICAL")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .returnResult(Song.class).getResponseBody();
+
+        StepVerifier.create(body)
+                .expectNextMatches(song -> song.getId() == 1)
+                .expectNextMatches(song -> song.getId() == 2)
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetSongsPage() {
+        given(songService.getAllSongs(any(SongPageRequest.class))).willReturn(SongPage.builder()
+                .songs(songs.subList(0, 1))
+                .nextCursor(1)
+                .build());
+        webClient.get().uri("/api/songs?size=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Next-Cursor", "1")
+                .expectHeader().valueEquals(HttpHeaders.LINK, "</api/songs?size=1&after=1>; rel=\"next\"")
+                .expectBody().jsonPath("$.length()").isEqualTo(1);
+    }
+
+    @Test
+    public void testGetSongsDelta() {
+        given(songService.getSongsDelta(0L, null, 1000)).willReturn(SongDelta.builder()
+                .revision(2L)
+                .reset(true)
+                .songs(songs)
+                .deletedIds(Collections.emptyList())
+                .build());
+        webClient.get().uri("/api/songs/delta")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("revision").isEqualTo(2)
+                .jsonPath("reset").isEqualTo(true)
+                .jsonPath("songs.length()").isEqualTo(2);
+    }
+
+    @Test
+    public void testGetSongsWithNonExistCategory() {
+        doThrow(new ResourceNotFoundException("Not found Category with value = popy")).when(songService).getSongsVersion("popy");
+        webClient.get().uri("/api/songs/category/popy")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("statusCode").isEqualTo(404)
+                .jsonPath("message").isEqualTo("Not found Category with value = popy")
+                .jsonPath("description").isEqualTo("uri=/api/songs/category/popy");
+    }
+
+    @Test
+    public void testExportSongsWithNonExistingCategory() {
+        given(songService.streamSongs("popy")).willThrow(new ResourceNotFoundException("Not found Category with value = popy"));
+        webClient.get().uri("/api/songs/export?category=popy")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("message").isEqualTo("Not found Category with value = popy");
+    }
+
+    @Test
+    public void testGetSongByIdNotModified() {
+        mySong = mySong.toBuilder().version(3).build();
+        given(songService.getSongById(1)).willReturn(mySong);
+        webClient.get().uri("/api/songs/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"song-1-3\"")
+                .expectBody().jsonPath("$.version").isEqualTo(3);
+        webClient.get().uri("/api/songs/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"song-1-3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    public void testCreateSong() {
+        given(songService.createSong(any(Song.class))).willReturn(mySong);
+        webClient.post().uri("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mySong)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"song-1-0\"");
+    }
+
+    @Test
+    public void testCreateSongWithoutTitle() {
+        webClient.post().uri("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mySong.toBuilder().title(null).build())
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("statusCode").isEqualTo(400)
+                .jsonPath("fieldErrors[0].message").isEqualTo("NotBlank: titre ne doit pas être null ou vide");
+    }
+
+    @Test
+    public void testUpdateSongWithStaleIfMatch() {
+        doThrow(new PreconditionFailedException("Song with id = 1 is at version 3, not 2"))
+                .when(songService).updateSong(any(Song.class), eq(2L));
+        webClient.put().uri("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"song-1-2\"")
+                .bodyValue(mySong)
+                .exchange()
+                .expectStatus().isEqualTo(412);
+        webClient.put().uri("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"song-2-2\"")
+                .bodyValue(mySong)
+                .exchange()
+                .expectStatus().isEqualTo(412);
+    }
+
+    @Test
+    public void testDeleteSongById() {
+        webClient.delete().uri("/api/songs/1")
+                .exchange()
+                .expectStatus().isNoContent();
+        verify(songService).deleteSongById(1);
+    }
+
+    @Test
+    public void testStreamIsClosedWhenTheClientCancels() {
+        AtomicBoolean closed = new AtomicBoolean();
+        given(songService.streamSongs(null)).willAnswer(invocation -> Stream.generate(() -> mySong).onClose(() -> closed.set(true)));
+        Flux<Song> body = webClient.get().uri("/api/songs/export")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Song.class).getResponseBody();
+
+        StepVerifier.create(body.take(3))
+                .expectNextCount(3)
+                .verifyComplete();
+        StepVerifier.create(Flux.interval(Duration.ofMillis(10)).filter(tick -> closed.get()).next())
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testChangesAreStreamedAsServerSentEvents() {
+        Flux<ServerSentEvent<Song>> events = webClient.get().uri("/api/songs/changes")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Song>>() { })
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .expectNextMatches(event -> event.event().equals("reset"))
+                .then(() -> changeFeed.onSongChanged(new SongChangedEvent(Collections.singletonList(new SongChange(null, mySong)))))
+                .expectNextMatches(event -> event.event().equals("created") && event.data().getId() == 1
+                        && event.id().equals(changeFeed.lastEventId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,157 @@
+package com.rest.playlist.resource;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.service.SongChangeFeed;
+import com.rest.playlist.service.SongChangedEvent;
+import com.rest.playlist.web.resource.SongChangeEmitterSink;
+import com.rest.playlist.web.resource.SongChangesResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(SongChangesResource.class)
+@Import(SongChangeFeed.class)
+public class SongChangesResourceTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SongChangeFeed changeFeed;
+
+    private Song mySong = Song.builder()
+            .id(7)
+            .version(1)
+            .title("test Song #1")
+            .description("test description Song #1")
+            .category(SongCategory.CLASSICAL)
+            .duration("3:01")
+            .artistName("artist1")
+            .build();
+
+    @Test
+    public void testChangesAreStreamedAsServerSentEvents() throws Exception {
+        String lastEventId = changeFeed.lastEventId();
+        MvcResult result = mockMvc.perform(get("/api/songs/changes"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        changeFeed.onSongChanged(new SongChangedEvent(Collections.singletonList(new SongChange(null, mySong))));
+
+        String body = awaitContent(result, "event:created");
+        assertThat(MediaType.parseMediaType(result.getResponse().getContentType()).isCompatibleWith(MediaType.TEXT_EVENT_STREAM)).isTrue();
+        assertThat(body).startsWith("id:" + lastEventId + "\nevent:reset\ndata:{}\n\n");
+        assertThat(body).contains("id:" + changeFeed.lastEventId() + "\nevent:created\ndata:{\"id\":7,");
+    }
+
+    @Test
+    public void testLastEventIdResumesTheFeed() throws Exception {
+        String lastEventId = changeFeed.lastEventId();
+        changeFeed.onSongChanged(new SongChangedEvent(Collections.singletonList(new SongChange(mySong, null))));
+
+        MvcResult result = mockMvc.perform(get("/api/songs/changes").header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = awaitContent(result, "event:deleted");
+        assertThat(body).startsWith("id:" + changeFeed.lastEventId() + "\nevent:deleted\n");
+    }
+
+    @Test(timeout = 10000)
+    public void testClientsThatStopReadingDoNotHoldTheSenderThreads() throws Exception {
+        SongChangeFeed feed = new SongChangeFeed(100, 50, SongChangeFeed.SlowConsumerPolicy.DISCONNECT, Duration.ZERO, 2);
+        ExecutorService writers = Executors.newCachedThreadPool();
+        CountDownLatch stopped = new CountDownLatch(1);
+        try {
+            // more clients that stopped reading than sender threads
+            for (int i = 0; i < 8; i++) {
+                SongChangeEmitterSink sink = new SongChangeEmitterSink(new CountingEmitter(stopped), 2, writers);
+                sink.subscribed(feed.subscribe(null, sink));
+            }
+            CountingEmitter reading = new CountingEmitter(null);
+            SongChangeEmitterSink readingSink = new SongChangeEmitterSink(reading, 64, writers);
+            readingSink.subscribed(feed.subscribe(null, readingSink));
+
+            for (int batch = 1; batch <= 6; batch++) {
+                for (int i = 0; i < 10; i++) {
+                    feed.onSongChanged(new SongChangedEvent(Collections.singletonList(new SongChange(null, mySong))));
+                }
+                // the reset then every change
+                int expected = 1 + 10 * batch;
+                await(() -> reading.sent.get() == expected);
+            }
+            await(() -> feed.stats().getSlowConsumers() == 8);
+            assertThat(feed.stats().getSubscribers()).isEqualTo(1);
+        } finally {
+            stopped.countDown();
+            feed.close();
+            writers.shutdownNow();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Counts the events sent, or blocks like the write to a client that stopped reading until stopped is released.
+     */
+    private static final class CountingEmitter extends SseEmitter {
+        private final CountDownLatch stopped;
+        private final AtomicInteger sent = new AtomicInteger();
+
+        private CountingEmitter(CountDownLatch stopped) {
+            this.stopped = stopped;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (stopped != null) {
+                try {
+                    stopped.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            sent.incrementAndGet();
+        }
+    }
+
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        String body = result.getResponse().getContentAsString();
+        // an event is complete once followed by an empty line
+        while (!(body.contains(expected) && body.endsWith("\n\n")) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            body = result.getResponse().getContentAsString();
+        }
+        return body;
+    }
+}
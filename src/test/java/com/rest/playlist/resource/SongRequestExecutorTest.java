@@ -0,0 +1,77 @@
+package com.rest.playlist.resource;
+
+import com.rest.playlist.web.exception.ServiceUnavailableException;
+import com.rest.playlist.web.resource.SongRequestExecutor;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class SongRequestExecutorTest {
+
+    @Test
+    public void testBlockingRunsOnTheCallerThread() {
+        try (SongRequestExecutor executor = SongRequestExecutor.blocking()) {
+            CompletableFuture<Thread> thread = executor.submit(Thread::currentThread);
+
+            assertThat(thread).isCompletedWithValue(Thread.currentThread());
+            assertThrows(IllegalStateException.class, () -> executor.submit(() -> {
+                throw new IllegalStateException();
+            }));
+            assertThat(executor.stats().isAsync()).isFalse();
+        }
+    }
+
+    @Test
+    public void testAsyncRunsOnItsOwnThreads() throws Exception {
+        try (SongRequestExecutor executor = SongRequestExecutor.async(2, 10, false)) {
+            Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+
+            assertThat(thread).isNotSameAs(Thread.currentThread());
+            assertThat(thread.getName()).startsWith("song-request-");
+            assertThat(executor.stats().isAsync()).isTrue();
+            assertThat(executor.stats().getSubmitted()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testRequestsBeyondTheQueueAreRejected() throws Exception {
+        try (SongRequestExecutor executor = SongRequestExecutor.async(1, 1, false)) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> running = executor.submit(() -> {
+                started.countDown();
+                return await(release);
+            });
+            CompletableFuture<Boolean> queued = executor.submit(() -> true);
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThrows(ServiceUnavailableException.class, () -> executor.submit(() -> true));
+            assertThat(executor.stats().getRejected()).isEqualTo(1);
+            assertThat(executor.stats().getQueued()).isEqualTo(1);
+
+            Thread.sleep(20);
+            release.countDown();
+            assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(executor.stats().getQueued()).isZero();
+            assertThat(executor.stats().getMaxQueueMicros()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(20));
+
+            // the slots are free again
+            assertThat(executor.submit(() -> true).get(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
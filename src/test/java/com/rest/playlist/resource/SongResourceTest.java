@@ -1,9 +1,17 @@
 package com.rest.playlist.resource;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.config.RequestExecutionConfig;
+import com.rest.playlist.enums.BatchItemStatus;
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
 import com.rest.playlist.service.ISongService;
 
 import com.rest.playlist.web.resource.SongResource;
@@ -12,15 +20,36 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
-
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultHandler;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -29,12 +58,16 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(SongResource.class)
+@Import(RequestExecutionConfig.class)
 public class SongResourceTest {
     private static final Logger log = LoggerFactory.getLogger(SongResourceTest.class);
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Value("${playlist.async.enabled:false}")
+    private boolean asyncEnabled;
+
     @MockBean
     private ISongService songService;
     private Song mySong = Song.builder()
@@ -58,7 +91,7 @@ public class SongResourceTest {
     public void testGetSongs() throws Exception {
 
         given(songService.getAllSongs()).willReturn(songs);
-        mockMvc.perform(get("/api/songs")
+        perform(get("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -69,10 +102,47 @@ public class SongResourceTest {
                 .andExpect(jsonPath("$[*].duration").value(songs.get(0).getDuration()));
     }
 
+    @Test
+    public void testGetSongsPage() throws Exception {
+        given(songService.getAllSongs(any(SongPageRequest.class))).willReturn(SongPage.builder()
+                .songs(songs)
+                .nextCursor(songs.get(0).getId())
+                .build());
+        perform(get("/api/songs?size=1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[*].title").value(songs.get(0).getTitle()))
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(songs.get(0).getId())))
+                .andExpect(header().string("Link", "<http://localhost/api/songs?size=1&after=" + songs.get(0).getId() + ">; rel=\"next\""));
+    }
+
+    @Test
+    public void testGetSongsLastPage() throws Exception {
+        given(songService.getAllSongs(any(SongPageRequest.class))).willReturn(SongPage.builder()
+                .songs(songs)
+                .build());
+        perform(get("/api/songs?size=1&after=3")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    public void testGetSongsWithInvalidPageSize() throws Exception {
+        doThrow(new BadRequestException("size must be between 1 and 1000")).when(songService).getAllSongs(any(SongPageRequest.class));
+        perform(get("/api/songs?size=0")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message").value("size must be between 1 and 1000"));
+    }
+
     @Test
     public void testGetSongsByCategory() throws Exception {
         given(songService.getSongsByCategory(mySong.getCategory().toString())).willReturn(songs);
-        mockMvc.perform(get("/api/songs/category/" + mySong.getCategory().toString())
+        perform(get("/api/songs/category/" + mySong.getCategory().toString())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -86,7 +156,7 @@ public class SongResourceTest {
     @Test
     public void testGetSongsWithNonExistingCategory() throws Exception {
         doThrow(new ResourceNotFoundException("Not found Category with value = popy")).when(songService).getSongsByCategory("popy");
-        mockMvc.perform(get("/api/songs/category/popy")
+        perform(get("/api/songs/category/popy")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().is4xxClientError())
                 .andExpect(jsonPath("message").value("Not found Category with value = popy"));
@@ -94,7 +164,7 @@ public class SongResourceTest {
 
     @Test
     public void testGetEmptyListSongsByCategory() throws Exception {
-        mockMvc.perform(get("/api/songs/category/POP")
+        perform(get("/api/songs/category/POP")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(0)));
@@ -103,7 +173,7 @@ public class SongResourceTest {
     @Test
     public void testGetSongsByArtistName() throws Exception {
         given(songService.getSongsByArtistName(songs.get(0).getArtistName())).willReturn(songs);
-        mockMvc.perform(get("/api/songs/artist/" + songs.get(0).getArtistName())
+        perform(get("/api/songs/artist/" + songs.get(0).getArtistName())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -116,16 +186,79 @@ public class SongResourceTest {
 
     @Test
     public void testGetEmptyListSongsArtistName() throws Exception {
-        mockMvc.perform(get("/api/songs/artist/sam")
+        perform(get("/api/songs/artist/sam")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    public void testSearchSongs() throws Exception {
+        given(songService.searchSongs("artist2", 10)).willReturn(songs);
+        perform(get("/api/songs/search?q=artist2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[*].title").value(songs.get(0).getTitle()))
+                .andExpect(jsonPath("$[*].artistName").value(songs.get(0).getArtistName()));
+    }
+
+    @Test
+    public void testGetSongsDelta() throws Exception {
+        given(songService.getSongsDelta(41L, null, 1000)).willReturn(SongDelta.builder()
+                .revision(43L)
+                .songs(songs)
+                .deletedIds(Arrays.asList(7))
+                .build());
+        perform(get("/api/songs/delta?since=41"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.revision").value(43))
+                .andExpect(jsonPath("$.reset").value(false))
+                .andExpect(jsonPath("$.songs[0].title").value(songs.get(0).getTitle()))
+                .andExpect(jsonPath("$.deletedIds[0]").value(7));
+    }
+
+    @Test
+    public void testExportSongs() throws Exception {
+        given(songService.streamSongs(null)).willReturn(Stream.of(songs.get(0), mySong));
+        MvcResult result = mockMvc.perform(get("/api/songs/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(asJsonString(songs.get(0)) + "\n" + asJsonString(mySong) + "\n"));
+    }
+
+    @Test
+    public void testExportSongsGzip() throws Exception {
+        given(songService.streamSongs("CLASSICAL")).willReturn(Stream.of(songs.get(0)));
+        MvcResult result = mockMvc.perform(get("/api/songs/export?category=CLASSICAL")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals(asJsonString(songs.get(0)) + "\n", StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testExportSongsWithNonExistingCategory() throws Exception {
+        doThrow(new ResourceNotFoundException("Not found Category with value = popy")).when(songService).streamSongs("popy");
+        mockMvc.perform(get("/api/songs/export?category=popy"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("message").value("Not found Category with value = popy"));
+    }
+
     @Test
     public void testGetSongById() throws Exception {
         given(songService.getSongById(mySong.getId())).willReturn(mySong);
-        mockMvc.perform(get("/api/songs/" + mySong.getId())
+        perform(get("/api/songs/" + mySong.getId())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(mySong.getId()))
@@ -137,30 +270,98 @@ public class SongResourceTest {
 
     }
 
+    @Test
+    public void testGetSongByIdNotModified() throws Exception {
+        mySong = mySong.toBuilder().version(3).build();
+        String etag = "\"song-" + mySong.getId() + "-3\"";
+        given(songService.getSongById(mySong.getId())).willReturn(mySong);
+        perform(get("/api/songs/" + mySong.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(jsonPath("$.version").value(3));
+        perform(get("/api/songs/" + mySong.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void testRequestsStartAsyncProcessingOnlyWhenAsyncIsEnabled() throws Exception {
+        mySong = mySong.toBuilder().version(3).build();
+        given(songService.getSongById(mySong.getId())).willReturn(mySong);
+        MvcResult result = mockMvc.perform(get("/api/songs/" + mySong.getId())).andReturn();
+        assertEquals(asyncEnabled, result.getRequest().isAsyncStarted());
+        if (asyncEnabled) {
+            return;
+        }
+        mockMvc.perform(get("/api/songs/" + mySong.getId()))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value(mySong.getTitle()));
+        mockMvc.perform(get("/api/songs/" + mySong.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"song-" + mySong.getId() + "-3\""))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotModified());
+
+        doThrow(new ResourceNotFoundException("Not found Song with id = 42")).when(songService).getSongById(42);
+        mockMvc.perform(get("/api/songs/42"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("message").value("Not found Song with id = 42"));
+    }
+
+    @Test
+    public void testListsAreNotModifiedUntilTheirVersionChanges() throws Exception {
+        given(songService.getSongsVersion(null)).willReturn(41L);
+        given(songService.getSongsVersion("jazz")).willReturn(7L);
+        perform(get("/api/songs")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"catalog-41\""))
+                .andExpect(status().isNotModified());
+        perform(get("/api/songs/category/jazz")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"JAZZ-7\""))
+                .andExpect(status().isNotModified());
+        verify(songService, never()).getAllSongs();
+        verify(songService, never()).getSongsByCategory(anyString());
+
+        given(songService.getSongsVersion(null)).willReturn(42L);
+        given(songService.getAllSongs()).willReturn(songs);
+        perform(get("/api/songs")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"catalog-41\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"catalog-42\""))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
     @Test
     public void testGetSongByNonExistingId() throws Exception {
         doThrow(new ResourceNotFoundException("Not found Song with id = 10000")).when(songService).getSongById(10000);
-        mockMvc.perform(get("/api/songs/10000")
+        perform(get("/api/songs/10000")
                 .contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().is4xxClientError())
-                .andExpect(jsonPath("message").value("Not found Song with id = 10000"));
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("statusCode").value(404))
+                .andExpect(jsonPath("timeStamp").value(matchesPattern("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}\\+00:00")))
+                .andExpect(jsonPath("message").value("Not found Song with id = 10000"))
+                .andExpect(jsonPath("description").value("uri=/api/songs/10000"))
+                .andExpect(jsonPath("fieldErrors").value(nullValue()));
     }
 
     @Test
     public void testCreateSong() throws Exception {
-        when(songService.createSong(mySong)).thenReturn(mySong);
-        mockMvc.perform(post("/api/songs")
+        when(songService.createSong(any(Song.class))).thenReturn(mySong);
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
-                .andExpect(status().isCreated());
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"song-" + mySong.getId() + "-0\""));
     }
 
     @Test
     public void testCreateSongWithTitleSizeLessThanThree() throws Exception {
-        mySong.setTitle("S");
+        mySong = mySong.toBuilder().title("S").build();
         doThrow(new ResourceNotFoundException("Size: titre doit être compris entre 3 et 50 caractères")).when(songService).createSong(mySong);
-        mockMvc.perform(post("/api/songs")
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
@@ -170,9 +371,9 @@ public class SongResourceTest {
 
     @Test
     public void testCreateSongWithDescriptionSizeLessThanThree() throws Exception {
-        mySong.setDescription("S");
+        mySong = mySong.toBuilder().description("S").build();
         doThrow(new ResourceNotFoundException("Size: description doit être compris entre 3 et 50 caractères")).when(songService).createSong(mySong);
-        mockMvc.perform(post("/api/songs")
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
@@ -182,9 +383,9 @@ public class SongResourceTest {
 
     @Test
     public void testCreateSongWithTitleNull() throws Exception {
-        mySong.setTitle(null);
+        mySong = mySong.toBuilder().title(null).build();
         doThrow(new ResourceNotFoundException("NotBlank: titre ne doit pas être null ou vide")).when(songService).createSong(mySong);
-        mockMvc.perform(post("/api/songs")
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
@@ -194,19 +395,49 @@ public class SongResourceTest {
 
     @Test
     public void testUpdateSong() throws Exception {
-        doNothing().when(songService).updateSong(mySong);
-        mockMvc.perform(put("/api/songs")
+        Song updatedSong = mySong.toBuilder().version(2).build();
+        when(songService.updateSong(any(Song.class))).thenReturn(updatedSong);
+        perform(put("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(2))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"song-" + mySong.getId() + "-2\""));
+    }
+
+    @Test
+    public void testUpdateSongWithIfMatch() throws Exception {
+        when(songService.updateSong(any(Song.class), eq(2L))).thenReturn(mySong.toBuilder().version(3).build());
+        perform(put("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"song-" + mySong.getId() + "-2\"")
+                .content(asJsonString(mySong)))
                 .andExpect(status().isOk());
+        verify(songService).updateSong(any(Song.class), eq(2L));
+    }
+
+    @Test
+    public void testUpdateSongWithStaleIfMatch() throws Exception {
+        doThrow(new PreconditionFailedException("Song with id = " + mySong.getId() + " is at version 3, not 2"))
+                .when(songService).updateSong(any(Song.class), eq(2L));
+        perform(put("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"song-" + mySong.getId() + "-2\"")
+                .content(asJsonString(mySong)))
+                .andExpect(status().isPreconditionFailed());
+        perform(put("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"song-" + (mySong.getId() + 1) + "-2\"")
+                .content(asJsonString(mySong)))
+                .andExpect(status().isPreconditionFailed());
     }
 
     @Test
     public void testUpdateSongWithTitleSizeLessThanThree() throws Exception {
-        mySong.setTitle("S");
+        mySong = mySong.toBuilder().title("S").build();
         doThrow(new ResourceNotFoundException("Size: titre doit être compris entre 3 et 50 caractères")).when(songService).updateSong(mySong);
-        mockMvc.perform(post("/api/songs")
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
@@ -216,9 +447,9 @@ public class SongResourceTest {
 
     @Test
     public void testUpdateSongWithDescriptionSizeLessThanThree() throws Exception {
-        mySong.setDescription("S");
+        mySong = mySong.toBuilder().description("S").build();
         doThrow(new ResourceNotFoundException("Size: description doit être compris entre 3 et 50 caractères")).when(songService).updateSong(mySong);
-        mockMvc.perform(post("/api/songs")
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
@@ -228,9 +459,9 @@ public class SongResourceTest {
 
     @Test
     public void testUpdateSongWithTitleNull() throws Exception {
-        mySong.setTitle(null);
+        mySong = mySong.toBuilder().title(null).build();
         doThrow(new ResourceNotFoundException("NotBlank: titre ne doit pas être null ou vide")).when(songService).updateSong(mySong);
-        mockMvc.perform(post("/api/songs")
+        perform(post("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(asJsonString(mySong)))
@@ -238,21 +469,78 @@ public class SongResourceTest {
                 .andExpect(jsonPath("fieldErrors[0].message").value("NotBlank: titre ne doit pas être null ou vide"));
     }
 
+    @Test
+    public void testCreateSongs() throws Exception {
+        given(songService.createSongs(anyList())).willReturn(Arrays.asList(
+                SongBatchResult.builder().index(0).id(mySong.getId()).status(BatchItemStatus.CREATED).build(),
+                SongBatchResult.builder().index(1).status(BatchItemStatus.CONFLICT).message("Song Already Exists.").build()));
+        perform(post("/api/songs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(asJsonString(Arrays.asList(mySong, mySong))))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[0].id").value(mySong.getId()))
+                .andExpect(jsonPath("$[1].status").value("CONFLICT"))
+                .andExpect(jsonPath("$[1].message").value("Song Already Exists."));
+    }
+
+    @Test
+    public void testDeleteSongs() throws Exception {
+        given(songService.deleteSongsById(Arrays.asList(1, 10000))).willReturn(Arrays.asList(
+                SongBatchResult.builder().index(0).id(1).status(BatchItemStatus.DELETED).build(),
+                SongBatchResult.builder().index(1).id(10000).status(BatchItemStatus.NOT_FOUND).build()));
+        perform(delete("/api/songs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 10000]"))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].status").value("DELETED"))
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+    }
+
     @Test
     public void testDeleteSongById() throws Exception {
         doNothing().when(songService).deleteSongById(mySong.getId());
-        mockMvc.perform(delete("/api/songs/" + mySong.getId()))
+        perform(delete("/api/songs/" + mySong.getId()))
                 .andExpect(status().isNoContent());
     }
 
     @Test
     public void testDeleteNotFoundSong() throws Exception {
         doThrow(new ResourceNotFoundException("Not found Song with id = 10000")).when(songService).deleteSongById(10000);
-        mockMvc.perform(delete("/api/songs/10000"))
+        perform(delete("/api/songs/10000"))
                 .andExpect(status().is4xxClientError())
                 .andExpect(jsonPath("message").value("Not found Song with id = 10000"));
     }
 
+    /**
+     * Performs the request and, as the endpoints return a CompletableFuture, its async dispatch.
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mockMvc.perform(asyncDispatch(result));
+        }
+        return new ResultActions() {
+            @Override
+            public ResultActions andExpect(ResultMatcher matcher) throws Exception {
+                matcher.match(result);
+                return this;
+            }
+
+            @Override
+            public ResultActions andDo(ResultHandler handler) throws Exception {
+                handler.handle(result);
+                return this;
+            }
+
+            @Override
+            public MvcResult andReturn() {
+                return result;
+            }
+        };
+    }
 
     private static String asJsonString(final Object obj) {
         try {
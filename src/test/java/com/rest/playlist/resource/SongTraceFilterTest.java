@@ -0,0 +1,88 @@
+package com.rest.playlist.resource;
+
+import com.rest.playlist.config.RequestExecutionConfig;
+import com.rest.playlist.config.TracingConfig;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import com.rest.playlist.trace.SpanExporter;
+import com.rest.playlist.web.resource.SongResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Traces every request (sample rate 1) through the async executor : the root span ends once the async dispatch
+ * has written the response, after the "write response" span.
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(SongResource.class)
+@Import({RequestExecutionConfig.class, TracingConfig.class})
+@TestPropertySource(properties = "playlist.async.enabled=true")
+public class SongTraceFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ISongService songService;
+
+    private final List<List<Span>> traces = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() {
+        SongTracer.configure(1, traces::add);
+    }
+
+    @After
+    public void tearDown() {
+        SongTracer.configure(0, SpanExporter.NONE);
+    }
+
+    @Test
+    public void testRequestSpanCoversTheResponseWriting() throws Exception {
+        Song song = Song.builder().id(1).title("So What").description("Kind of Blue").category(SongCategory.JAZZ)
+                .duration("9:22").artistName("Miles Davis").build();
+        given(songService.getSongsByArtistName("miles")).willAnswer(invocation -> {
+            SongTracer.startSpan("ISongService.getSongsByArtistName").close();
+            return Collections.singletonList(song);
+        });
+
+        MvcResult result = mockMvc.perform(get("/api/songs/artist/miles")).andReturn();
+        assertThat(traces).isEmpty();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        assertThat(traces).hasSize(1);
+        List<Span> spans = traces.get(0);
+        assertThat(spans).extracting(Span::getName).containsExactly("ISongService.getSongsByArtistName",
+                "write response", "GET /api/songs/artist/{artistName}");
+        Span root = spans.get(2);
+        assertThat(spans.get(0).getParent()).isSameAs(root);
+        assertThat(spans.get(1).getParent()).isSameAs(root);
+        assertThat(root.getAttributes())
+                .containsEntry("http.route", "/api/songs/artist/{artistName}")
+                .containsEntry("http.status_code", 200);
+        assertThat(SongTracer.current().isSampled()).isFalse();
+    }
+}
@@ -0,0 +1,141 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongCatalog;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.validation.Validation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingSongServiceTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private SongQueryCache cache;
+    private CachingSongService cachingService;
+
+    @Before
+    public void setup() {
+        cache = new SongQueryCache(10_000, TimeUnit.MINUTES.toNanos(1), 4, clock::get, CachingSongService.ARTIST_KEY);
+        CachingSongService[] listener = new CachingSongService[1];
+        SongServiceImpl songService = new SongServiceImpl(new SongCatalog(), Validation.buildDefaultValidatorFactory().getValidator(),
+                event -> listener[0].onSongChanged((SongChangedEvent) event));
+        cachingService = new CachingSongService(songService, cache);
+        listener[0] = cachingService;
+    }
+
+    @Test
+    public void testRepeatedQueriesHitTheCache() {
+        List<Song> first = cachingService.getSongsByCategory("jazz");
+        List<Song> second = cachingService.getSongsByCategory("JAZZ");
+        List<Song> byArtist = cachingService.getSongsByArtistName("Miles");
+
+        assertThat(second).isSameAs(first);
+        assertThat(cachingService.getSongsByArtistName("MILES")).isSameAs(byArtist);
+        assertThat(cachingService.stats().getHits()).isEqualTo(2);
+        assertThat(cachingService.stats().getMisses()).isEqualTo(2);
+        assertThat(cachingService.stats().getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void testWritesOnlyInvalidateMatchingQueries() {
+        List<Song> jazz = cachingService.getSongsByCategory("JAZZ");
+        List<Song> pop = cachingService.getSongsByCategory("POP");
+        List<Song> sam = cachingService.getSongsByArtistName("sam");
+        List<Song> miles = cachingService.getSongsByArtistName("miles");
+
+        cachingService.createSong(song("Too Good at Goodbyes", SongCategory.POP, "Sam Smith"));
+
+        assertThat(cachingService.getSongsByCategory("JAZZ")).isSameAs(jazz);
+        assertThat(cachingService.getSongsByArtistName("miles")).isSameAs(miles);
+        assertThat(cachingService.getSongsByCategory("POP")).hasSize(pop.size() + 1);
+        assertThat(cachingService.getSongsByArtistName("sam")).hasSize(sam.size() + 1);
+    }
+
+    @Test
+    public void testUpdateInvalidatesOldAndNewCategory() {
+        Song song = cachingService.createSong(song("Blue in Green", SongCategory.JAZZ, "Bill Evans"));
+        List<Song> jazz = cachingService.getSongsByCategory("JAZZ");
+        List<Song> classical = cachingService.getSongsByCategory("CLASSICAL");
+
+        cachingService.updateSong(song.toBuilder().category(SongCategory.CLASSICAL).build());
+
+        assertThat(cachingService.getSongsByCategory("JAZZ")).hasSize(jazz.size() - 1);
+        assertThat(cachingService.getSongsByCategory("CLASSICAL")).hasSize(classical.size() + 1);
+
+        cachingService.deleteSongById(song.getId());
+        assertThat(cachingService.getSongsByCategory("CLASSICAL")).hasSize(classical.size());
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        List<Song> jazz = cachingService.getSongsByCategory("JAZZ");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertThat(cachingService.getSongsByCategory("JAZZ")).isSameAs(jazz);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(cachingService.getSongsByCategory("JAZZ")).isNotSameAs(jazz);
+        assertThat(cachingService.stats().getExpirations()).isEqualTo(1);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvictedByWeight() {
+        // a single segment holding 6 songs worth of results
+        SongQueryCache small = new SongQueryCache(6, Long.MAX_VALUE, 1, clock::get);
+        List<Song> twoSongs = Arrays.asList(song("a", SongCategory.POP, "x"), song("b", SongCategory.POP, "x"));
+        small.put("first", twoSongs, small.generation("first"));
+        small.put("second", twoSongs, small.generation("second"));
+        small.get("first");
+        small.put("third", twoSongs, small.generation("third"));
+
+        assertThat(small.get("second")).isNull();
+        assertThat(small.get("first")).isSameAs(twoSongs);
+        assertThat(small.get("third")).isSameAs(twoSongs);
+        assertThat(small.stats().getEvictions()).isEqualTo(1);
+        assertThat(small.stats().getWeight()).isEqualTo(6);
+    }
+
+    @Test
+    public void testResultLoadedBeforeAnInvalidationIsNotCached() {
+        long generation = cache.generation("category:POP");
+        cache.invalidate(Collections.singleton("category:POP"));
+        cache.put("category:POP", Collections.emptyList(), generation);
+
+        assertThat(cache.get("category:POP")).isNull();
+    }
+
+    @Test
+    public void testInvalidationDoesNotDiscardTheLoadsOfOtherKeys() {
+        long generation = cache.generation("category:JAZZ");
+        cachingService.createSong(song("Too Good at Goodbyes", SongCategory.POP, "Sam Smith"));
+        cache.put("category:JAZZ", Collections.emptyList(), generation);
+
+        assertThat(cache.get("category:JAZZ")).isEmpty();
+    }
+
+    @Test
+    public void testWritesInvalidateTheArtistQueriesLoadingWhenTheyHappen() {
+        long generation = cache.generation("artist:SAM");
+        cachingService.createSong(song("Too Good at Goodbyes", SongCategory.POP, "Sam Smith"));
+        cache.put("artist:SAM", Collections.emptyList(), generation);
+
+        assertThat(cache.get("artist:SAM")).isNull();
+    }
+
+    private static Song song(String title, SongCategory category, String artistName) {
+        return Song.builder()
+                .title(title)
+                .description("description of " + title)
+                .category(category)
+                .duration("3:00")
+                .artistName(artistName)
+                .build();
+    }
+}
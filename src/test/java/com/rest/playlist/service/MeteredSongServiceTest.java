@@ -0,0 +1,117 @@
+package com.rest.playlist.service;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.trace.SongTracer;
+import com.rest.playlist.trace.Span;
+import com.rest.playlist.trace.SpanExporter;
+import com.rest.playlist.web.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.Validation;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MeteredSongServiceTest {
+
+    private SimpleMeterRegistry registry;
+    private SongCatalog catalog;
+    private SongServiceImpl songService;
+    private MeteredSongService meteredService;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        catalog = new SongCatalog();
+        songService = new SongServiceImpl(catalog, Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+        meteredService = new MeteredSongService(songService, catalog, registry, Duration.ZERO);
+    }
+
+    @Test
+    public void testCallsAreTimedByMethodAndOutcome() {
+        int id = meteredService.getAllSongs().get(0).getId();
+
+        meteredService.getSongById(id);
+        meteredService.getSongById(id);
+        assertThatThrownBy(() -> meteredService.getSongById(Integer.MAX_VALUE)).isInstanceOf(ResourceNotFoundException.class);
+
+        assertThat(timer("getAllSongs", "success").count()).isEqualTo(1);
+        assertThat(timer("getSongById", "success").count()).isEqualTo(2);
+        assertThat(timer("getSongById", "error").count()).isEqualTo(1);
+        assertThat(timer("createSong", "success").count()).isZero();
+        assertThat(timer("getSongById", "success").takeSnapshot().percentileValues()).hasSize(4);
+    }
+
+    @Test
+    public void testGaugesFollowTheCatalog() {
+        int size = catalog.size();
+        int pop = catalog.count(SongCategory.POP);
+
+        meteredService.createSong(Song.builder()
+                .title("Too Good at Goodbyes")
+                .description("description of Too Good at Goodbyes")
+                .category(SongCategory.POP)
+                .duration("3:00")
+                .artistName("Sam Smith")
+                .build());
+
+        assertThat(registry.get(MeteredSongService.CATALOG_SIZE).gauge().value()).isEqualTo(size + 1);
+        assertThat(registry.get(MeteredSongService.CATEGORY_SIZE).tag("category", "POP").gauge().value()).isEqualTo(pop + 1);
+    }
+
+    @Test
+    public void testSampledCallsAreTracedDownToTheIndex() {
+        List<List<Span>> traces = new CopyOnWriteArrayList<>();
+        SongTracer.configure(1, traces::add);
+        try {
+            Span root = SongTracer.startTrace("GET /api/songs/artist/{artistName}");
+            meteredService.getSongsByArtistName("sam smith");
+            root.close();
+        } finally {
+            SongTracer.configure(0, SpanExporter.NONE);
+        }
+
+        List<Span> spans = traces.get(0);
+        assertThat(spans).extracting(Span::getName).containsExactly("ArtistNameIndex.find", "SongCatalog.resolve",
+                "ISongService.getSongsByArtistName", "GET /api/songs/artist/{artistName}");
+        assertThat(spans.get(0).getAttributes()).containsKeys("artist.candidates", "artist.matches")
+                .containsEntry("songs", 2L);
+        assertThat(spans.get(2).getAttributes()).containsEntry("results", 2);
+    }
+
+    @Test
+    public void testSlowQueriesAreLoggedWithTheirIndexCounts() {
+        MeteredSongService slowLogged = new MeteredSongService(songService, catalog, registry, Duration.ofNanos(1));
+        Logger logger = (Logger) LoggerFactory.getLogger(MeteredSongService.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            slowLogged.getSongsByArtistName("sam smith");
+        } finally {
+            logger.detachAppender(appender);
+        }
+
+        assertThat(appender.list).hasSize(1);
+        assertThat(appender.list.get(0).getFormattedMessage())
+                .startsWith("Slow query getSongsByArtistName('sam smith') took ")
+                .contains("2 results, artist.candidates=")
+                .contains("songs=2");
+    }
+
+    private Timer timer(String method, String outcome) {
+        return registry.get(MeteredSongService.TIMER).tag("method", method).tag("outcome", outcome).timer();
+    }
+}
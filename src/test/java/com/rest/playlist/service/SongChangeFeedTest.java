@@ -0,0 +1,202 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.enums.SongChangeType;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongChangeEvent;
+import com.rest.playlist.repository.SongCatalog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.validation.Validation;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SongChangeFeedTest {
+
+    private SongChangeFeed changeFeed;
+    private SongServiceImpl songService;
+
+    @Before
+    public void setup() {
+        setup(SongChangeFeed.SlowConsumerPolicy.DISCONNECT);
+    }
+
+    private void setup(SongChangeFeed.SlowConsumerPolicy policy) {
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        changeFeed = new SongChangeFeed(100, 3, policy, Duration.ZERO, 2);
+        songService = new SongServiceImpl(new SongCatalog(), Validation.buildDefaultValidatorFactory().getValidator(),
+                event -> changeFeed.onSongChanged((SongChangedEvent) event));
+    }
+
+    @After
+    public void close() {
+        changeFeed.close();
+    }
+
+    @Test
+    public void testNewSubscriberGetsAResetThenTheChanges() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        changeFeed.subscribe(null, sink);
+
+        Song created = songService.createSong(song("Blue in Green"));
+        Song updated = songService.updateSong(created.toBuilder().duration("5:37").build());
+        songService.deleteSongById(created.getId());
+
+        await(() -> sink.events.size() == 4);
+        assertThat(sink.events).extracting(SongChangeEvent::getType).containsExactly(
+                SongChangeType.RESET, SongChangeType.CREATED, SongChangeType.UPDATED, SongChangeType.DELETED);
+        assertThat(sink.events.get(1).getSong().getId()).isEqualTo(created.getId());
+        assertThat(sink.events.get(2).getSong().getVersion()).isEqualTo(updated.getVersion());
+        assertThat(sink.events.get(3).getSong().getVersion()).isEqualTo(updated.getVersion());
+        assertThat(sink.events.get(3).getId()).isEqualTo(changeFeed.lastEventId());
+    }
+
+    @Test
+    public void testSubscriberResumesAfterLastEventId() throws Exception {
+        String lastEventId = changeFeed.lastEventId();
+        songService.createSong(song("So What"));
+        songService.createSong(song("Freddie Freeloader"));
+
+        RecordingSink sink = new RecordingSink();
+        changeFeed.subscribe(lastEventId, sink);
+
+        await(() -> sink.events.size() == 2);
+        assertThat(sink.events).extracting(SongChangeEvent::getType).containsExactly(SongChangeType.CREATED, SongChangeType.CREATED);
+        assertThat(sink.events.get(1).getSong().getTitle()).isEqualTo("Freddie Freeloader");
+    }
+
+    @Test
+    public void testLastEventIdOfAnotherRunOrTooOldGetsAReset() throws Exception {
+        String tooOld = changeFeed.lastEventId();
+        for (int i = 0; i < 4; i++) {
+            songService.createSong(song("song " + i));
+        }
+
+        RecordingSink otherRun = new RecordingSink();
+        changeFeed.subscribe("1-1", otherRun);
+        RecordingSink behind = new RecordingSink();
+        changeFeed.subscribe(tooOld, behind);
+
+        await(() -> otherRun.events.size() == 1 && behind.events.size() == 1);
+        assertThat(otherRun.events.get(0).getType()).isEqualTo(SongChangeType.RESET);
+        assertThat(behind.events.get(0).getType()).isEqualTo(SongChangeType.RESET);
+        assertThat(behind.events.get(0).getId()).isEqualTo(changeFeed.lastEventId());
+    }
+
+    @Test
+    public void testSlowConsumerIsDisconnected() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.blocked = new CountDownLatch(1);
+        changeFeed.subscribe(null, sink);
+        // the sender is stuck writing the first event
+        await(() -> sink.events.size() == 1);
+        for (int i = 0; i < 5; i++) {
+            songService.createSong(song("song " + i));
+        }
+        sink.blocked.countDown();
+
+        await(() -> sink.closed);
+        assertThat(sink.events).extracting(SongChangeEvent::getType).containsExactly(SongChangeType.RESET);
+        assertThat(changeFeed.stats().getSubscribers()).isZero();
+        assertThat(changeFeed.stats().getSlowConsumers()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSlowConsumerIsResetWithResetPolicy() throws Exception {
+        setup(SongChangeFeed.SlowConsumerPolicy.RESET);
+        RecordingSink sink = new RecordingSink();
+        sink.blocked = new CountDownLatch(1);
+        changeFeed.subscribe(null, sink);
+        // the sender is stuck writing the first event
+        await(() -> sink.events.size() == 1);
+        for (int i = 0; i < 5; i++) {
+            songService.createSong(song("song " + i));
+        }
+        sink.blocked.countDown();
+        await(() -> sink.events.size() == 2);
+        songService.createSong(song("song 5"));
+
+        await(() -> sink.events.size() == 3);
+        assertThat(sink.events).extracting(SongChangeEvent::getType).containsExactly(
+                SongChangeType.RESET, SongChangeType.RESET, SongChangeType.CREATED);
+        assertThat(sink.events.get(2).getSong().getTitle()).isEqualTo("song 5");
+        assertThat(sink.closed).isFalse();
+        assertThat(changeFeed.stats().getSlowConsumers()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefusedEventsAreSentOnRequest() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.accepted = 1;
+        SongChangeFeed.Subscription subscription = changeFeed.subscribe(null, sink);
+        songService.createSong(song("So What"));
+        songService.createSong(song("Freddie Freeloader"));
+        await(() -> sink.events.size() == 1);
+
+        sink.accepted = 3;
+        subscription.request();
+
+        await(() -> sink.events.size() == 3);
+        assertThat(sink.events.get(2).getSong().getTitle()).isEqualTo("Freddie Freeloader");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static Song song(String title) {
+        return Song.builder()
+                .title(title)
+                .description("description of " + title)
+                .category(SongCategory.JAZZ)
+                .duration("3:00")
+                .artistName("Miles Davis")
+                .build();
+    }
+
+    private static class RecordingSink implements SongChangeFeed.Sink {
+        private final List<SongChangeEvent> events = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch blocked;
+        private volatile int accepted = Integer.MAX_VALUE;
+        private volatile boolean closed;
+
+        @Override
+        public boolean send(SongChangeEvent event) {
+            if (events.size() >= accepted) {
+                return false;
+            }
+            events.add(event);
+            if (blocked != null) {
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.rest.playlist.service;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.rest.playlist.enums.BatchItemStatus;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongImportRejection;
+import com.rest.playlist.model.SongImportReport;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.web.exception.BadRequestException;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SongImporterTest {
+
+    private SongServiceImpl songService;
+    private SongImporter songImporter;
+
+    @Before
+    public void setup() {
+        songService = new SongServiceImpl(new SongCatalog(), Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+        songImporter = new SongImporter(songService, new ObjectMapper().registerModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT)), 2, 2, 200);
+    }
+
+    @Test
+    public void testImportCsv() throws IOException {
+        int sizeBeforeImport = songService.getAllSongs().size();
+        String csv = "artistName,title,description,category,duration\r\n"
+                + "Sam Smith,Stay With Me,\"In the Lonely Hour, 2014\",pop,2:52\r\n"
+                + "\r\n"
+                + "Nina Simone,\"Feeling \"\"Good\"\"\",\"I Put a Spell\non You\",JAZZ,2:53\n"
+                + "Miles Davis,So What,Kind of Blue,BEBOP,9:22\n"
+                + "Piazzolla,Oblivion,Album musical d'Astor Piazzolla,CLASSICAL,6:05\n"
+                + "Bill Evans,Peace Piece,Everybody Digs,JAZZ\n";
+
+        SongImportReport report = songImporter.importCsv(stream(csv));
+
+        assertThat(report.getRowsRead()).isEqualTo(5);
+        assertThat(report.getCreated()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(report.getRejections()).hasSize(2);
+        assertThat(report.isRejectionsTruncated()).isTrue();
+        assertThat(report.getRejections().get(0).getLine()).isEqualTo(6);
+        assertThat(report.getRejections().get(0).getMessage()).isEqualTo("Not found Category with value = BEBOP");
+        assertThat(report.getRejections().get(1).getLine()).isEqualTo(8);
+
+        List<Song> songs = songService.getAllSongs();
+        assertThat(songs).hasSize(sizeBeforeImport + 2);
+        assertThat(songService.getSongsByArtistName("nina").get(0).getTitle()).isEqualTo("Feeling \"Good\"");
+        assertThat(songService.getSongsByArtistName("nina").get(0).getDescription()).isEqualTo("I Put a Spell\non You");
+        assertThat(songService.getSongsByArtistName("sam smith")).extracting(Song::getTitle).contains("Stay With Me");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testImportCsvWithoutHeader() throws IOException {
+        songImporter.importCsv(stream("Sam Smith,Stay With Me,In the Lonely Hour,POP,2:52\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeAboveTheServiceLimitIsRejected() {
+        new SongImporter(songService, new ObjectMapper(), SongServiceImpl.MAX_BATCH_SIZE + 1, 2, 200);
+    }
+
+    @Test
+    public void testRowsLongerThanTheLimitAreRejected() throws IOException {
+        int sizeBeforeImport = songService.getAllSongs().size();
+        String csv = "artistName,title,description,category,duration\n"
+                + "Sam Smith,Stay With Me,In the Lonely Hour,POP,2:52\n"
+                + "Sam Smith,Too Good at Goodbyes," + StringUtils.repeat('x', 300) + ",POP,3:21\n"
+                + "Nina Simone,\"Feeling Good," + StringUtils.repeat("\n,", 300) + "\n";
+        SongImportReport csvReport = songImporter.importCsv(stream(csv));
+
+        assertThat(csvReport.getCreated()).isEqualTo(1);
+        assertThat(csvReport.getRejected()).isEqualTo(2);
+        assertThat(csvReport.getRejections().get(0).getLine()).isEqualTo(3);
+        assertThat(csvReport.getRejections().get(0).getMessage()).isEqualTo("row longer than 200 characters");
+
+        String ndjson = "{\"title\":\"" + StringUtils.repeat('x', 300) + "\"}\r\n"
+                + "{\"title\":\"Adios Nonino\",\"description\":\"Libertango\",\"category\":\"CLASSICAL\",\"duration\":\"6:05\",\"artistName\":\"Piazzolla\"}\r\n";
+        SongImportReport ndjsonReport = songImporter.importNdjson(stream(ndjson));
+
+        assertThat(ndjsonReport.getCreated()).isEqualTo(1);
+        assertThat(ndjsonReport.getRejections()).extracting(SongImportRejection::getLine).containsExactly(1L);
+        assertThat(songService.getAllSongs()).hasSize(sizeBeforeImport + 2);
+    }
+
+    @Test
+    public void testImportNdjson() throws IOException {
+        String ndjson = "{\"title\":\"Stay With Me\",\"description\":\"In the Lonely Hour\",\"category\":\"POP\",\"duration\":\"2:52\",\"artistName\":\"Sam Smith\"}\n"
+                + "{\"title\":\"S\",\"description\":\"In the Lonely Hour\",\"category\":\"POP\",\"duration\":\"2:52\",\"artistName\":\"Sam Smith\"}\n"
+                + "\n"
+                + "{not json\n"
+                + "{\"title\":\"So What\",\"description\":\"Kind of Blue\",\"category\":\"JAZZ\",\"duration\":\"9:22\",\"artistName\":\"Miles Davis\"}";
+
+        SongImportReport report = songImporter.importNdjson(stream(ndjson));
+
+        assertThat(report.getRowsRead()).isEqualTo(4);
+        assertThat(report.getCreated()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(2);
+        assertThat(report.getRejections()).extracting(r -> r.getLine()).containsExactlyInAnyOrder(2L, 4L);
+        assertThat(report.getRejections()).extracting(r -> r.getStatus()).containsOnly(BatchItemStatus.INVALID);
+        assertThat(songService.getSongsByArtistName("miles")).hasSize(1);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,14 +1,30 @@
 package com.rest.playlist.service;
 
+import com.rest.playlist.enums.BatchItemStatus;
 import com.rest.playlist.enums.SongCategory;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.model.SongBatchResult;
+import com.rest.playlist.model.SongChange;
+import com.rest.playlist.model.SongDelta;
+import com.rest.playlist.model.SongPage;
+import com.rest.playlist.model.SongPageRequest;
+import com.rest.playlist.repository.SongCatalog;
+import com.rest.playlist.repository.SongStorage;
 import com.rest.playlist.web.exception.AlreadyExistException;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.validation.Validation;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -18,6 +34,9 @@ public class SongServiceTest {
     private static final Logger log = LoggerFactory.getLogger(SongServiceImpl.class);
 
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private SongServiceImpl playlistService;
 
     private Song mySong = Song.builder()
@@ -31,7 +50,7 @@ public class SongServiceTest {
 
     @Before
     public void setup() {
-        playlistService = new SongServiceImpl();
+        playlistService = new SongServiceImpl(new SongCatalog(), Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
     }
 
     @Test
@@ -48,6 +67,17 @@ public class SongServiceTest {
         assertThat(songs.get(0).getCategory()).isNotNull();
     }
 
+    @Test
+    public void testEmptiedPersistentCatalogIsNotSeededAgain() throws IOException {
+        SongCatalog catalog = new SongCatalog(new SongStorage(folder.getRoot().toPath(), SongStorage.FsyncMode.GROUP, 100));
+        try {
+            SongServiceImpl service = new SongServiceImpl(catalog, Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+            assertThat(service.getAllSongs()).isEmpty();
+        } finally {
+            catalog.close();
+        }
+    }
+
     @Test
     public void testGetSongsByCategory() {
 
@@ -79,13 +109,72 @@ public class SongServiceTest {
     }
 
 
+    @Test
+    public void testGetSongsPage() {
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setSize(2);
+
+        SongPage page = playlistService.getAllSongs(pageRequest);
+        assertThat(page.getSongs()).hasSize(2);
+        assertThat(page.getNextCursor()).isEqualTo(page.getSongs().get(1).getId());
+
+        pageRequest.setAfter(page.getNextCursor());
+        SongPage next = playlistService.getAllSongs(pageRequest);
+        assertThat(next.getSongs().get(0).getId()).isGreaterThan(page.getNextCursor());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testGetSongsPageWithInvalidSize() {
+        SongPageRequest pageRequest = new SongPageRequest();
+        pageRequest.setSize(SongPageRequest.MAX_SIZE + 1);
+        playlistService.getAllSongs(pageRequest);
+    }
+
+    @Test
+    public void testCreateSongsRejectsValuesLongerThanTheStoredColumns() {
+        List<SongBatchResult> results = playlistService.createSongs(Arrays.asList(
+                mySong.toBuilder().artistName(StringUtils.repeat('a', 256)).build(),
+                mySong.toBuilder().duration(StringUtils.repeat('1', 33)).build()));
+
+        assertThat(results).extracting(SongBatchResult::getStatus).containsExactly(BatchItemStatus.INVALID, BatchItemStatus.INVALID);
+    }
+
+    @Test
+    public void testUpdateSongsDoesNotUndoConcurrentWrites() {
+        SongCatalog catalog = new SongCatalog();
+        SongServiceImpl service = new SongServiceImpl(catalog, Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+        Song deleted = service.createSong(mySong);
+        Song updated = service.createSong(mySong.toBuilder().title("test Song #2").build());
+        SongCatalog racing = new SongCatalog() {
+            @Override
+            public List<SongChange> saveAll(List<Song> songs, List<Long> expectedVersions) {
+                // the writes of other requests land between the check of the batch and its save
+                catalog.remove(deleted.getId());
+                catalog.save(updated.toBuilder().duration("4:00").build());
+                return catalog.saveAll(songs, expectedVersions);
+            }
+
+            @Override
+            public Song findById(int id) {
+                return catalog.findById(id);
+            }
+        };
+        SongServiceImpl batchService = new SongServiceImpl(racing, Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+
+        List<SongBatchResult> results = batchService.updateSongs(Arrays.asList(
+                deleted.toBuilder().duration("5:00").build(),
+                updated.toBuilder().duration("5:00").build()));
+
+        assertThat(results).extracting(SongBatchResult::getStatus).containsExactly(BatchItemStatus.NOT_FOUND, BatchItemStatus.CONFLICT);
+        assertThat(catalog.findById(deleted.getId())).isNull();
+        assertThat(catalog.findById(updated.getId()).getDuration()).isEqualTo("4:00");
+    }
+
     @Test
     public void testGetSongById() {
-        List<Song> songs = playlistService.getAllSongs();
-        mySong.setId(1000);
-        songs.add(mySong);
+        Song created = playlistService.createSong(mySong);
 
-        Song foundedSong = playlistService.getSongById(mySong.getId());
+        Song foundedSong = playlistService.getSongById(created.getId());
 
         assertThat(foundedSong.getId()).isNotNull();
         assertThat(foundedSong.getCategory().toString()).isEqualTo(mySong.getCategory().toString());
@@ -102,7 +191,8 @@ public class SongServiceTest {
 
         Song savedSong = playlistService.createSong(mySong);
         assertThat(savedSong).isNotNull();
-        assertThat(savedSong.getId()).isNotNull();
+        assertThat(mySong.getId()).isZero();
+        assertThat(savedSong.getId()).isPositive();
         assertThat(savedSong.getTitle()).isEqualTo(mySong.getTitle());
         assertThat(savedSong.getDescription()).isEqualTo(mySong.getDescription());
         assertThat(savedSong.getCategory()).isEqualTo(mySong.getCategory());
@@ -111,6 +201,7 @@ public class SongServiceTest {
 
     }
 
+    @Test
     public void testCreateExistingSongs() {
         Song savedSong = playlistService.createSong(mySong);
         assertThat(savedSong).isNotNull();
@@ -121,8 +212,10 @@ public class SongServiceTest {
         assertThat(savedSong.getDuration()).isEqualTo(mySong.getDuration());
         assertThat(savedSong.getArtistName()).isEqualTo(mySong.getArtistName());
 
-        AlreadyExistException ex = assertThrows(AlreadyExistException.class, () -> playlistService.createSong(mySong));
+        Song sameKey = mySong.toBuilder().title(" TEST song #1").build();
+        AlreadyExistException ex = assertThrows(AlreadyExistException.class, () -> playlistService.createSong(sameKey));
         assertThat(ex.getMessage()).isEqualTo("Song Already Exists.");
+        assertThat(ex.getStackTrace()).isEmpty();
 
 
     }
@@ -131,16 +224,21 @@ public class SongServiceTest {
     @Test
     public void testUpdateSong() {
 
-        Song songToUpdate = playlistService.createSong(mySong);
-        mySong.setTitle("test Song #2");
-        mySong.setDescription("test description Song #2");
-        mySong.setCategory(SongCategory.POP);
-        mySong.setDuration("5:05");
-        mySong.setArtistName("Sam Smith");
+        Song createdSong = playlistService.createSong(mySong);
+        Song songToUpdate = createdSong.toBuilder()
+                .title("test Song #2")
+                .description("test description Song #2")
+                .category(SongCategory.POP)
+                .duration("5:05")
+                .artistName("Sam Smith")
+                .build();
 
-        playlistService.updateSong(songToUpdate);
+        songToUpdate = playlistService.updateSong(songToUpdate);
 
         assertThat(songToUpdate).isNotNull();
+        assertThat(songToUpdate.getVersion()).isEqualTo(2);
+        assertThat(createdSong.getTitle()).isEqualTo(mySong.getTitle());
+        assertThat(playlistService.getSongById(songToUpdate.getId())).isSameAs(songToUpdate);
         assertThat(songToUpdate.getId()).isNotNull();
         assertThat(songToUpdate.getTitle()).isEqualTo("test Song #2");
         assertThat(songToUpdate.getDescription()).isEqualTo("test description Song #2");
@@ -150,16 +248,200 @@ public class SongServiceTest {
 
     }
 
+    @Test
+    public void testUpdateSongWithExpectedVersion() {
+        Song created = playlistService.createSong(mySong);
+        assertThat(created.getVersion()).isEqualTo(1);
+
+        Song update = created.toBuilder()
+                .description("test description Song #2")
+                .duration("5:05")
+                .build();
+        playlistService.updateSong(update, 1);
+        assertThat(playlistService.getSongById(created.getId()).getVersion()).isEqualTo(2);
+
+        assertThrows(PreconditionFailedException.class, () -> playlistService.updateSong(update, 1));
+        assertThat(playlistService.getSongById(created.getId()).getVersion()).isEqualTo(2);
+    }
+
     @Test
     public void testDeleteSongById() {
 
         Song songToDelete = playlistService.createSong(mySong);
-        List<Song> playlistList = playlistService.getAllSongs();
-
-        int sizeBeforeDelete = playlistList.size();
+        int sizeBeforeDelete = playlistService.getAllSongs().size();
 
         playlistService.deleteSongById(songToDelete.getId());
 
-        assertThat(playlistList.size()).isEqualTo(sizeBeforeDelete - 1);
+        assertThat(playlistService.getAllSongs().size()).isEqualTo(sizeBeforeDelete - 1);
+        assertThrows(ResourceNotFoundException.class, () -> playlistService.getSongById(songToDelete.getId()));
+    }
+
+    @Test
+    public void testCreateSongs() {
+        Song duplicateInBatch = Song.builder()
+                .title(mySong.getTitle())
+                .description("another description")
+                .category(mySong.getCategory())
+                .duration("2:00")
+                .artistName("test artist2")
+                .build();
+        Song alreadyExisting = Song.builder()
+                .title("Oblivion")
+                .description("Album musical d'Astor Piazzolla")
+                .category(SongCategory.CLASSICAL)
+                .duration("6:05")
+                .artistName("Piazzolla")
+                .build();
+        Song invalid = Song.builder()
+                .title("S")
+                .description("test description")
+                .category(SongCategory.POP)
+                .duration("2:00")
+                .artistName("test artist3")
+                .build();
+        int sizeBeforeCreate = playlistService.getAllSongs().size();
+
+        List<SongBatchResult> results = playlistService.createSongs(Arrays.asList(mySong, duplicateInBatch, alreadyExisting, invalid, null));
+
+        assertThat(results).extracting(SongBatchResult::getStatus).containsExactly(
+                BatchItemStatus.CREATED, BatchItemStatus.CONFLICT, BatchItemStatus.CONFLICT, BatchItemStatus.INVALID, BatchItemStatus.INVALID);
+        assertThat(results.get(3).getMessage()).isEqualTo("title: titre doit être compris entre 3 et 50 caractères");
+        assertThat(results).extracting(SongBatchResult::getId).containsExactly(results.get(0).getId(), null, null, null, null);
+        assertThat(playlistService.getAllSongs()).hasSize(sizeBeforeCreate + 1);
+        assertThat(playlistService.getSongById(results.get(0).getId()).getTitle()).isEqualTo(mySong.getTitle());
+        assertThat(playlistService.getSongById(results.get(0).getId()).getVersion()).isEqualTo(1);
+    }
+
+    @Test(timeout = 5000)
+    public void testCreateSongIgnoresClientId() {
+        Song existing = playlistService.getAllSongs().get(0);
+
+        Song created = playlistService.createSong(mySong.toBuilder().id(Integer.MAX_VALUE).build());
+        Song other = playlistService.createSong(mySong.toBuilder().id(existing.getId()).title("test Song #2").build());
+
+        assertThat(created.getId()).isNotEqualTo(Integer.MAX_VALUE).isPositive();
+        assertThat(other.getId()).isNotEqualTo(existing.getId());
+        assertThat(playlistService.getSongById(existing.getId())).isSameAs(existing);
+    }
+
+    @Test
+    public void testCreateSongsIgnoresClientIds() {
+        Song existing = playlistService.getAllSongs().get(0);
+        Song withExistingId = mySong.toBuilder().id(existing.getId()).build();
+        Song withMaxId = mySong.toBuilder().id(Integer.MAX_VALUE).title("test Song #2").build();
+
+        List<SongBatchResult> results = playlistService.createSongs(Arrays.asList(withExistingId, withMaxId));
+
+        assertThat(results).extracting(SongBatchResult::getStatus).containsExactly(BatchItemStatus.CREATED, BatchItemStatus.CREATED);
+        assertThat(results).extracting(SongBatchResult::getId).doesNotContain(existing.getId(), Integer.MAX_VALUE);
+        assertThat(playlistService.getSongById(existing.getId())).isSameAs(existing);
+        assertThat(playlistService.getSongById(results.get(0).getId()).getTitle()).isEqualTo(mySong.getTitle());
+    }
+
+    @Test
+    public void testUpdateAndDeleteSongs() {
+        Song created = playlistService.createSong(mySong);
+        Song missing = Song.builder()
+                .id(created.getId() + 1)
+                .title("missing song")
+                .description("test description")
+                .category(SongCategory.POP)
+                .duration("2:00")
+                .artistName("test artist2")
+                .build();
+        Song changed = created.toBuilder().duration("4:04").build();
+
+        List<SongBatchResult> updated = playlistService.updateSongs(Arrays.asList(changed, missing));
+        assertThat(updated).extracting(SongBatchResult::getStatus).containsExactly(BatchItemStatus.UPDATED, BatchItemStatus.NOT_FOUND);
+        assertThat(playlistService.getSongById(created.getId()).getDuration()).isEqualTo("4:04");
+
+        List<SongBatchResult> deleted = playlistService.deleteSongsById(Arrays.asList(created.getId(), missing.getId()));
+        assertThat(deleted).extracting(SongBatchResult::getStatus).containsExactly(BatchItemStatus.DELETED, BatchItemStatus.NOT_FOUND);
+        assertThrows(ResourceNotFoundException.class, () -> playlistService.getSongById(created.getId()));
+    }
+
+    @Test
+    public void testSongsDelta() {
+        SongDelta initial = playlistService.getSongsDelta(0, null, 1000);
+        assertThat(initial.isReset()).isTrue();
+        assertThat(initial.isMore()).isFalse();
+        assertThat(initial.getSongs()).hasSize(playlistService.getAllSongs().size());
+
+        Song created = playlistService.createSong(mySong);
+        Song other = playlistService.createSong(mySong.toBuilder().title("test Song #2").build());
+        Song updated = playlistService.updateSong(created.toBuilder().duration("4:04").build());
+        playlistService.deleteSongById(other.getId());
+
+        SongDelta delta = playlistService.getSongsDelta(initial.getRevision(), null, 1000);
+        assertThat(delta.isReset()).isFalse();
+        assertThat(delta.getSongs()).extracting(Song::getVersion).containsExactly(updated.getVersion());
+        assertThat(delta.getDeletedIds()).containsExactly(other.getId());
+        assertThat(delta.getRevision()).isGreaterThan(initial.getRevision());
+
+        SongDelta first = playlistService.getSongsDelta(initial.getRevision(), null, 1);
+        assertThat(first.isMore()).isTrue();
+        assertThat(first.getSongs()).extracting(Song::getId).containsExactly(created.getId());
+        SongDelta rest = playlistService.getSongsDelta(first.getRevision(), null, 1);
+        assertThat(rest.isMore()).isFalse();
+        assertThat(rest.getDeletedIds()).containsExactly(other.getId());
+        assertThat(rest.getRevision()).isEqualTo(delta.getRevision());
+
+        assertThat(playlistService.getSongsDelta(delta.getRevision(), null, 1000).getSongs()).isEmpty();
+        assertThrows(BadRequestException.class, () -> playlistService.getSongsDelta(0, null, 0));
+    }
+
+    @Test
+    public void testSongsDeltaResetIsListedPageByPage() {
+        int songs = playlistService.getAllSongs().size();
+        SongDelta first = playlistService.getSongsDelta(0, null, 2);
+        assertThat(first.isReset()).isTrue();
+        assertThat(first.isMore()).isTrue();
+        assertThat(first.getSongs()).hasSize(2);
+        assertThat(first.getNextCursor()).isEqualTo(first.getSongs().get(1).getId());
+
+        Song created = playlistService.createSong(mySong);
+        SongDelta rest = playlistService.getSongsDelta(first.getRevision(), first.getNextCursor(), 1000);
+        assertThat(rest.isReset()).isFalse();
+        assertThat(rest.isMore()).isFalse();
+        assertThat(rest.getNextCursor()).isNull();
+        assertThat(rest.getRevision()).isEqualTo(first.getRevision());
+        assertThat(rest.getSongs()).hasSize(songs - 1).extracting(Song::getId).contains(created.getId());
+
+        // the changes made while the reset was listed follow it
+        assertThat(playlistService.getSongsDelta(rest.getRevision(), null, 1000).getSongs())
+                .extracting(Song::getId).containsExactly(created.getId());
+        // a cursor from a previous run starts the reset over
+        assertThat(playlistService.getSongsDelta(1, first.getNextCursor(), 1000).isReset()).isTrue();
+    }
+
+    @Test
+    public void testSongsDeltaBehindCompactedTombstonesIsAReset() {
+        playlistService = new SongServiceImpl(new SongCatalog(), Validation.buildDefaultValidatorFactory().getValidator(), event -> { }, 2, 1000);
+        long revision = playlistService.getSongsDelta(0, null, 1000).getRevision();
+        for (int i = 0; i < 3; i++) {
+            playlistService.deleteSongById(playlistService.createSong(mySong.toBuilder().title("song " + i).build()).getId());
+        }
+
+        SongDelta delta = playlistService.getSongsDelta(revision, null, 1000);
+        assertThat(delta.isReset()).isTrue();
+        assertThat(delta.getDeletedIds()).isEmpty();
+        assertThat(delta.getSongs()).hasSize(playlistService.getAllSongs().size());
+        assertThat(playlistService.getSongsDelta(delta.getRevision(), null, 1000).isReset()).isFalse();
+        assertThat(playlistService.getSongsDelta(Long.MAX_VALUE, null, 1000).isReset()).isTrue();
+    }
+
+    @Test
+    public void testSongsDeltaBehindDroppedChangesIsAReset() {
+        playlistService = new SongServiceImpl(new SongCatalog(), Validation.buildDefaultValidatorFactory().getValidator(), event -> { }, 1000, 2);
+        long revision = playlistService.getSongsDelta(0, null, 1000).getRevision();
+        Song first = playlistService.createSong(mySong.toBuilder().title("song 0").build());
+        long afterFirst = playlistService.getSongsDelta(revision, null, 1000).getRevision();
+        playlistService.createSong(mySong.toBuilder().title("song 1").build());
+        Song last = playlistService.createSong(mySong.toBuilder().title("song 2").build());
+
+        assertThat(playlistService.getSongsDelta(revision, null, 1000).isReset()).isTrue();
+        SongDelta delta = playlistService.getSongsDelta(afterFirst, null, 1000);
+        assertThat(delta.isReset()).isFalse();
+        assertThat(delta.getSongs()).extracting(Song::getId).hasSize(2).contains(last.getId()).doesNotContain(first.getId());
     }
 }
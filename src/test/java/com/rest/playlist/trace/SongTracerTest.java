@@ -0,0 +1,139 @@
+package com.rest.playlist.trace;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SongTracerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<List<Span>> traces = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        SongTracer.configure(0, SpanExporter.NONE);
+    }
+
+    @Test
+    public void testUnsampledRequestsOnlyFillTheQueryProbe() {
+        SongTracer.configure(0, traces::add);
+
+        QueryProbe probe = SongTracer.startQuery();
+        try (Span root = SongTracer.startTrace("GET /api/songs")) {
+            assertThat(root.isSampled()).isFalse();
+            assertThat(SongTracer.startSpan("ISongService.getAllSongs")).isSameAs(Span.NOOP);
+            SongTracer.count("rows", 2);
+            SongTracer.count("rows", 3);
+        }
+
+        assertThat(probe.get("rows")).isEqualTo(5);
+        assertThat(probe.toString()).isEqualTo("rows=5");
+        assertThat(traces).isEmpty();
+    }
+
+    @Test
+    public void testSpansNestAndAreExportedWithTheRoot() {
+        SongTracer.configure(1, traces::add);
+
+        Span root = SongTracer.startTrace("GET /api/songs/artist/{artistName}");
+        Span child;
+        try (Span service = SongTracer.startSpan("ISongService.getSongsByArtistName")) {
+            try (Span index = SongTracer.startSpan("ArtistNameIndex.find")) {
+                child = index;
+                SongTracer.count("artist.candidates", 3);
+            }
+            assertThat(SongTracer.current()).isSameAs(service);
+        }
+        assertThat(traces).isEmpty();
+        root.close();
+
+        assertThat(SongTracer.current()).isSameAs(Span.NOOP);
+        assertThat(traces).hasSize(1);
+        List<Span> spans = traces.get(0);
+        assertThat(spans).extracting(Span::getName).containsExactly("ArtistNameIndex.find",
+                "ISongService.getSongsByArtistName", "GET /api/songs/artist/{artistName}");
+        assertThat(child.getParent().getParent()).isSameAs(root);
+        assertThat(child.getTraceId()).hasSize(32).isEqualTo(root.getTraceId());
+        assertThat(child.getAttributes()).containsEntry("artist.candidates", 3L);
+        assertThat(root.getDurationNanos()).isGreaterThanOrEqualTo(child.getDurationNanos());
+    }
+
+    @Test
+    public void testResumeCarriesTheSpanToAnotherThread() throws InterruptedException {
+        SongTracer.configure(1, traces::add);
+
+        Span root = SongTracer.startTrace("GET /api/songs");
+        Thread worker = new Thread(() -> {
+            Span previous = SongTracer.resume(root);
+            try (Span span = SongTracer.startSpan("ISongService.getAllSongs")) {
+                span.attribute("results", 1);
+            } finally {
+                SongTracer.restore(previous);
+            }
+        });
+        worker.start();
+        worker.join();
+        root.close();
+
+        assertThat(traces.get(0)).extracting(Span::getName).containsExactly("ISongService.getAllSongs", "GET /api/songs");
+        assertThat(traces.get(0).get(0).getParent()).isSameAs(root);
+    }
+
+    @Test
+    public void testFileExporterWritesOtlpJsonLines() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("traces/traces.jsonl");
+        OtlpFileSpanExporter exporter = new OtlpFileSpanExporter(file, Long.MAX_VALUE, "playlist", 10);
+        SongTracer.configure(1, exporter);
+
+        for (int i = 0; i < 2; i++) {
+            try (Span root = SongTracer.startTrace("GET /api/songs/{id}")) {
+                root.attribute("http.status_code", 200);
+                SongTracer.startSpan("ISongService.getSongById").close();
+            }
+        }
+        exporter.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(2);
+        JsonNode resourceSpans = new ObjectMapper().readTree(lines.get(0)).path("resourceSpans").get(0);
+        assertThat(resourceSpans.path("resource").path("attributes").get(0).path("value").path("stringValue").asText())
+                .isEqualTo("playlist");
+        JsonNode spans = resourceSpans.path("scopeSpans").get(0).path("spans");
+        assertThat(spans).hasSize(2);
+        assertThat(spans.get(0).path("parentSpanId").asText()).isEqualTo(spans.get(1).path("spanId").asText());
+        assertThat(spans.get(1).path("parentSpanId").asText()).isEmpty();
+        assertThat(spans.get(1).path("kind").asInt()).isEqualTo(2);
+        assertThat(spans.get(1).path("attributes").get(0).path("value").path("intValue").asText()).isEqualTo("200");
+        assertThat(Long.parseLong(spans.get(1).path("endTimeUnixNano").asText()))
+                .isGreaterThanOrEqualTo(Long.parseLong(spans.get(1).path("startTimeUnixNano").asText()));
+        assertThat(SongTracer.startTrace("GET /api/songs")).isSameAs(Span.NOOP);
+    }
+
+    @Test
+    public void testFileExporterRotatesTheFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("traces.jsonl");
+        OtlpFileSpanExporter exporter = new OtlpFileSpanExporter(file, 1, "playlist", 10);
+        SongTracer.configure(1, exporter);
+
+        for (int i = 0; i < 3; i++) {
+            SongTracer.startTrace("GET /api/songs").close();
+        }
+        exporter.close();
+
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8)).hasSize(1);
+        assertThat(Files.readAllLines(file.resolveSibling("traces.jsonl.1"), StandardCharsets.UTF_8)).hasSize(1);
+    }
+}